@@ -0,0 +1,111 @@
+package com.mark.discordbot.bench;
+
+import com.mark.discordbot.ScheduledEventIndex;
+import net.dv8tion.jda.api.entities.ScheduledEvent;
+import net.dv8tion.jda.api.entities.channel.unions.GuildChannelUnion;
+
+import java.lang.reflect.Proxy;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Offline stand-ins for the JDA entities the bot reads, so benchmarks never touch Discord.
+ * <p>
+ *     Each fake is a dynamic proxy that answers only the methods the bot calls and throws for anything else, which makes
+ *     it obvious if the bot starts depending on something new.
+ * </p>
+ */
+public final class Fakes {
+
+    /**
+     * ID of the fake movie theatre voice channel.
+     */
+    public static final long MOVIE_CHANNEL_ID = 2;
+
+    /**
+     * ID of the fake bot user, which creates every fake event.
+     */
+    public static final long BOT_USER_ID = 1;
+
+    /**
+     * Not instantiable; all methods are static.
+     */
+    private Fakes() {
+    }
+
+    /**
+     * Creates a scheduled event in the movie theatre channel.
+     * @param id the event ID
+     * @param name the event name
+     * @param start the start time
+     * @param end the end time
+     * @return the fake event
+     */
+    public static ScheduledEvent event(long id, String name, OffsetDateTime start, OffsetDateTime end) {
+        GuildChannelUnion channel = fake(GuildChannelUnion.class, Map.of("getIdLong", MOVIE_CHANNEL_ID));
+
+        return fake(ScheduledEvent.class, Map.of(
+                "getIdLong", id,
+                "getName", name,
+                "getChannel", channel,
+                "getStartTime", start,
+                "getEndTime", end,
+                "getStatus", ScheduledEvent.Status.SCHEDULED,
+                "getCreatorIdLong", BOT_USER_ID));
+    }
+
+    /**
+     * Creates a busy calendar: {@code count} two-hour events every six hours starting a day from {@code now}.
+     * @param count the number of events
+     * @param now the time to start from
+     * @return the events
+     */
+    public static List<ScheduledEvent> busyEvents(int count, OffsetDateTime now) {
+        List<ScheduledEvent> events = new ArrayList<>(count);
+        OffsetDateTime start = now.plusDays(1);
+
+        for (int i = 0; i < count; i++) {
+            events.add(event(1000 + i, "Event " + i, start, start.plusHours(2)));
+            start = start.plusHours(6);
+        }
+
+        return events;
+    }
+
+    /**
+     * Converts fake events to the index's form.
+     * @param events the events
+     * @return the event details
+     */
+    public static List<ScheduledEventIndex.EventInfo> infos(List<ScheduledEvent> events) {
+        return events.stream().map(ScheduledEventIndex.EventInfo::of).toList();
+    }
+
+    /**
+     * Creates a proxy that returns fixed values by method name.
+     * @param type the interface to implement
+     * @param answers return values keyed by method name
+     * @param <T> the interface type
+     * @return the proxy
+     */
+    private static <T> T fake(Class<T> type, Map<String, Object> answers) {
+        Object proxy = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (self, method, args) -> {
+            String name = method.getName();
+
+            if (answers.containsKey(name)) {
+                return answers.get(name);
+            }
+
+            return switch (name) {
+                case "hashCode" -> System.identityHashCode(self);
+                case "equals" -> self == args[0];
+                case "toString" -> "Fake" + type.getSimpleName();
+                default -> throw new UnsupportedOperationException(type.getSimpleName() + "." + name);
+            };
+        });
+
+        return type.cast(proxy);
+    }
+}
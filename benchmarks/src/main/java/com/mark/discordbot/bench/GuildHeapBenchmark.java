@@ -0,0 +1,372 @@
+package com.mark.discordbot.bench;
+
+import com.mark.discordbot.JdaProfile;
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import net.dv8tion.jda.api.JDABuilder;
+import net.dv8tion.jda.api.requests.GatewayIntent;
+import net.dv8tion.jda.api.utils.MemberCachePolicy;
+import net.dv8tion.jda.api.utils.data.DataArray;
+import net.dv8tion.jda.api.utils.data.DataObject;
+import net.dv8tion.jda.internal.JDAImpl;
+import net.dv8tion.jda.internal.utils.config.AuthorizationConfig;
+import net.dv8tion.jda.internal.utils.config.MetaConfig;
+import net.dv8tion.jda.internal.utils.config.SessionConfig;
+import net.dv8tion.jda.internal.utils.config.ThreadingConfig;
+
+import java.lang.reflect.Field;
+import java.util.EnumSet;
+import java.util.Locale;
+
+/**
+ * Measures the heap JDA keeps per guild under each {@link JdaProfile}.
+ * <p>
+ *     This is a plain program rather than a JMH benchmark, since it measures memory held rather than time. For each
+ *     profile it builds an offline JDA instance with that profile's cache settings, then feeds it synthetic guild payloads
+ *     shaped like Discord's: channels with permission overrides, roles, emojis, stickers, and members in voice. Voice
+ *     states and their members are only sent when the profile subscribes to them, as Discord does. The heap is measured
+ *     after a full GC before and after the guilds are loaded. The JDA instance is built from JDA internals because a
+ *     real one would log in; the numbers are estimates for comparing the profiles, not exact sizes.
+ * </p>
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar com.mark.discordbot.bench.GuildHeapBenchmark [guilds] [voiceMembers]
+ * </pre>
+ */
+public final class GuildHeapBenchmark {
+
+    /**
+     * ID of the bot's own user, which is a member of every guild.
+     */
+    private static final long SELF_ID = 1;
+
+    /**
+     * Channels per guild; the last few are voice channels.
+     */
+    private static final int CHANNELS = 25;
+
+    /**
+     * Voice channels among {@link #CHANNELS}.
+     */
+    private static final int VOICE_CHANNELS = 5;
+
+    /**
+     * Roles per guild, including {@code @everyone}.
+     */
+    private static final int ROLES = 15;
+
+    /**
+     * Custom emojis per guild.
+     */
+    private static final int EMOJIS = 30;
+
+    /**
+     * Custom stickers per guild.
+     */
+    private static final int STICKERS = 5;
+
+    /**
+     * Not instantiable; all methods are static.
+     */
+    private GuildHeapBenchmark() {
+    }
+
+    /**
+     * Runs the comparison.
+     * @param args optionally the number of guilds (default 5000) and voice members per guild (default 10)
+     * @throws Exception if the offline JDA instance cannot be built
+     */
+    public static void main(String[] args) throws Exception {
+        int guilds = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int voiceMembers = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        System.out.printf("%d guilds, %d voice members each%n", guilds, voiceMembers);
+        for (JdaProfile profile : JdaProfile.values()) {
+            measure(profile, guilds, voiceMembers);
+        }
+    }
+
+    /**
+     * Loads synthetic guilds under one profile and prints the heap they hold.
+     * @param profile the profile
+     * @param guilds the number of guilds
+     * @param voiceMembers members in voice per guild
+     * @throws Exception if the offline JDA instance cannot be built
+     */
+    private static void measure(JdaProfile profile, int guilds, int voiceMembers) throws Exception {
+        JDABuilder builder = profile.builder("heap-benchmark");
+        boolean voiceStates = (intents(builder) & GatewayIntent.GUILD_VOICE_STATES.getRawValue()) != 0;
+        JDAImpl jda = offline(builder);
+
+        long before = usedHeap();
+        for (int i = 0; i < guilds; i++) {
+            long guildId = 1_000_000L * (i + 1);
+            TLongObjectMap<DataObject> members = new TLongObjectHashMap<>();
+            members.put(SELF_ID, member(SELF_ID));
+
+            DataArray voice = DataArray.empty();
+            if (voiceStates) {
+                for (int m = 0; m < voiceMembers; m++) {
+                    long userId = memberId(guildId, m);
+                    members.put(userId, member(userId));
+                    voice.add(voiceState(userId, guildId + 100 + CHANNELS - 1));
+                }
+            }
+
+            jda.getEntityBuilder().createGuild(guildId, guild(guildId, i, voice), members, 500);
+        }
+        long after = usedHeap();
+
+        long cachedMembers = jda.getGuildCache().stream().mapToLong(guild -> guild.getMemberCache().size()).sum();
+        System.out.printf("%-8s %,10d bytes/guild  %,12d bytes total  %,8d cached members%n",
+                profile.name().toLowerCase(Locale.ROOT), (after - before) / guilds, after - before, cachedMembers);
+        //the instance never started its requester, so it is simply dropped rather than shut down
+    }
+
+    /**
+     * Builds a JDA instance with a builder's cache settings that never connects.
+     * @param builder the configured builder
+     * @return the offline instance, with its self user set
+     * @throws ReflectiveOperationException if the builder's fields have changed
+     */
+    @SuppressWarnings("unchecked")
+    private static JDAImpl offline(JDABuilder builder) throws ReflectiveOperationException {
+        EnumSet flags = (EnumSet) field(builder, "flags");
+        EnumSet cacheFlags = (EnumSet) field(builder, "cacheFlags");
+
+        JDAImpl jda = new JDAImpl(new AuthorizationConfig("heap-benchmark"),
+                new SessionConfig(null, null, null, null, flags, 900, 250),
+                new ThreadingConfig(), new MetaConfig(2048, null, cacheFlags, flags), null);
+        jda.setMemberCachePolicy((MemberCachePolicy) field(builder, "memberCachePolicy"));
+        jda.setSelfUser(jda.getEntityBuilder().createSelfUser(user(SELF_ID)
+                .put("bot", true)
+                .put("verified", true)
+                .put("mfa_enabled", false)
+                .put("flags", 0)));
+        return jda;
+    }
+
+    /**
+     * Returns a builder's raw gateway intents.
+     * @param builder the builder
+     * @return the intents bitmask
+     * @throws ReflectiveOperationException if the builder's fields have changed
+     */
+    private static int intents(JDABuilder builder) throws ReflectiveOperationException {
+        return (int) field(builder, "intents");
+    }
+
+    /**
+     * Reads one of a builder's private fields.
+     * @param builder the builder
+     * @param name the field name
+     * @return the value
+     * @throws ReflectiveOperationException if there is no such field
+     */
+    private static Object field(JDABuilder builder, String name) throws ReflectiveOperationException {
+        Field field = JDABuilder.class.getDeclaredField(name);
+        field.setAccessible(true);
+        return field.get(builder);
+    }
+
+    /**
+     * Builds a guild create payload.
+     * @param guildId the guild ID; its channels, roles, and so on get IDs just above it
+     * @param index the guild's number, for its name
+     * @param voiceStates the guild's voice states
+     * @return the payload
+     */
+    private static DataObject guild(long guildId, int index, DataArray voiceStates) {
+        DataArray roles = DataArray.empty();
+        for (int r = 0; r < ROLES; r++) {
+            //the @everyone role shares the guild's ID
+            roles.add(role(r == 0 ? guildId : guildId + 10 + r, r == 0 ? "@everyone" : "role " + r, r));
+        }
+
+        DataArray channels = DataArray.empty();
+        for (int c = 0; c < CHANNELS; c++) {
+            channels.add(channel(guildId, guildId + 100 + c, c, c >= CHANNELS - VOICE_CHANNELS));
+        }
+
+        DataArray emojis = DataArray.empty();
+        for (int e = 0; e < EMOJIS; e++) {
+            emojis.add(DataObject.empty()
+                    .put("id", Long.toString(guildId + 200 + e))
+                    .put("name", "emoji_" + e)
+                    .put("animated", false)
+                    .put("managed", false)
+                    .put("available", true)
+                    .put("roles", DataArray.empty()));
+        }
+
+        DataArray stickers = DataArray.empty();
+        for (int s = 0; s < STICKERS; s++) {
+            stickers.add(DataObject.empty()
+                    .put("id", Long.toString(guildId + 300 + s))
+                    .put("name", "sticker " + s)
+                    .put("description", "A sticker")
+                    .put("tags", "popcorn")
+                    .put("type", 2)
+                    .put("format_type", 1)
+                    .put("available", true)
+                    .put("guild_id", Long.toString(guildId)));
+        }
+
+        return DataObject.empty()
+                .put("id", Long.toString(guildId))
+                .put("name", "Guild " + index)
+                .put("owner_id", Long.toString(memberId(guildId, 0)))
+                .put("member_count", 500)
+                .put("preferred_locale", "en-US")
+                .put("afk_timeout", 300)
+                .put("verification_level", 1)
+                .put("default_message_notifications", 1)
+                .put("mfa_level", 0)
+                .put("explicit_content_filter", 0)
+                .put("premium_tier", 0)
+                .put("nsfw_level", 0)
+                .put("features", DataArray.empty())
+                .put("roles", roles)
+                .put("channels", channels)
+                .put("emojis", emojis)
+                .put("stickers", stickers)
+                .put("voice_states", voiceStates)
+                .put("threads", DataArray.empty())
+                .put("guild_scheduled_events", DataArray.empty());
+    }
+
+    /**
+     * Builds a role.
+     * @param id the role ID
+     * @param name the role name
+     * @param position the role position
+     * @return the role payload
+     */
+    private static DataObject role(long id, String name, int position) {
+        return DataObject.empty()
+                .put("id", Long.toString(id))
+                .put("name", name)
+                .put("permissions", "0")
+                .put("position", position)
+                .put("color", 0)
+                .put("colors", DataObject.empty()
+                        .put("primary_color", 0)
+                        .put("secondary_color", null)
+                        .put("tertiary_color", null))
+                .put("hoist", false)
+                .put("managed", false)
+                .put("mentionable", false);
+    }
+
+    /**
+     * Builds a channel. Every fifth channel also has overrides for three members.
+     * @param guildId the guild ID, which is also the {@code @everyone} role ID
+     * @param id the channel ID
+     * @param position the channel position
+     * @param voice whether it is a voice channel
+     * @return the channel payload
+     */
+    private static DataObject channel(long guildId, long id, int position, boolean voice) {
+        DataArray overrides = DataArray.empty();
+        overrides.add(override(guildId, 0, 0, 1024));
+        if (position % 5 == 0) {
+            for (int m = 0; m < 3; m++) {
+                overrides.add(override(memberId(guildId, m), 1, 1024, 0));
+            }
+        }
+
+        return DataObject.empty()
+                .put("id", Long.toString(id))
+                .put("type", voice ? 2 : 0)
+                .put("name", voice ? "voice-" + position : "text-" + position)
+                .put("position", position)
+                .put("topic", "Channel " + position)
+                .put("bitrate", 64000)
+                .put("user_limit", 0)
+                .put("permission_overwrites", overrides);
+    }
+
+    /**
+     * Builds a permission override.
+     * @param id the role or member ID
+     * @param type {@code 0} for a role, {@code 1} for a member
+     * @param allow the allowed permissions
+     * @param deny the denied permissions
+     * @return the override payload
+     */
+    private static DataObject override(long id, int type, long allow, long deny) {
+        return DataObject.empty()
+                .put("id", Long.toString(id))
+                .put("type", type)
+                .put("allow", Long.toString(allow))
+                .put("deny", Long.toString(deny));
+    }
+
+    /**
+     * Builds a guild member.
+     * @param userId the user ID
+     * @return the member payload
+     */
+    private static DataObject member(long userId) {
+        return DataObject.empty()
+                .put("user", user(userId))
+                .put("roles", DataArray.empty())
+                .put("joined_at", "2020-01-01T00:00:00+00:00")
+                .put("deaf", false)
+                .put("mute", false);
+    }
+
+    /**
+     * Builds a user.
+     * @param userId the user ID
+     * @return the user payload
+     */
+    private static DataObject user(long userId) {
+        return DataObject.empty()
+                .put("id", Long.toString(userId))
+                .put("username", "user" + userId)
+                .put("discriminator", "0000")
+                .put("avatar", null);
+    }
+
+    /**
+     * Builds the voice state of a member in a voice channel.
+     * @param userId the member's user ID
+     * @param channelId the voice channel ID
+     * @return the voice state payload
+     */
+    private static DataObject voiceState(long userId, long channelId) {
+        return DataObject.empty()
+                .put("user_id", Long.toString(userId))
+                .put("channel_id", Long.toString(channelId))
+                .put("session_id", "session")
+                .put("deaf", false)
+                .put("mute", false)
+                .put("self_deaf", false)
+                .put("self_mute", false)
+                .put("suppress", false);
+    }
+
+    /**
+     * Returns the ID of one of a guild's synthetic members.
+     * @param guildId the guild ID
+     * @param index the member's number
+     * @return the user ID
+     */
+    private static long memberId(long guildId, int index) {
+        return guildId + 500 + index;
+    }
+
+    /**
+     * Returns the heap in use after a full collection.
+     * @return the used heap in bytes
+     * @throws InterruptedException if interrupted while letting the collector settle
+     */
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
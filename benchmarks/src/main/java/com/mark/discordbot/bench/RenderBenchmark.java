@@ -0,0 +1,110 @@
+package com.mark.discordbot.bench;
+
+import com.mark.discordbot.Movie;
+import com.mark.discordbot.MovieListPageCache;
+import com.mark.discordbot.MovieListRenderer;
+import com.mark.discordbot.MovieStorage;
+import net.dv8tion.jda.api.components.buttons.Button;
+import net.dv8tion.jda.api.entities.MessageEmbed;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Measures rendering pages of the /movielist embed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RenderBenchmark {
+
+    /**
+     * Number of movies in the list.
+     */
+    @Param({"10", "100", "1000"})
+    public int listSize;
+
+    /**
+     * The list being rendered.
+     */
+    private MovieStorage.Snapshot snapshot;
+
+    /**
+     * A page in the middle of the list.
+     */
+    private int middlePage;
+
+    /**
+     * Page cache holding the middle page.
+     */
+    private MovieListPageCache pageCache;
+
+    /**
+     * Builds the list.
+     */
+    @Setup(Level.Trial)
+    public void setup() {
+        List<Movie> movies = IntStream.range(0, listSize)
+                .mapToObj(i -> new Movie("Movie " + i, 1950 + i % 70, "https://image.tmdb.org/t/p/w500/" + i + ".jpg",
+                        80 + i % 100))
+                .toList();
+
+        snapshot = new MovieStorage.Snapshot(1, movies);
+        middlePage = MovieListRenderer.computeTotalPages(movies) / 2;
+
+        pageCache = new MovieListPageCache();
+        pageCache.get(1L, snapshot, middlePage);
+    }
+
+    /**
+     * The first page, showing the next movie and its poster.
+     * @return the embed
+     */
+    @Benchmark
+    public MessageEmbed firstPage() {
+        return MovieListRenderer.buildMovieListEmbed(snapshot, 0);
+    }
+
+    /**
+     * A page listing several movies.
+     * @return the embed
+     */
+    @Benchmark
+    public MessageEmbed listPage() {
+        return MovieListRenderer.buildMovieListEmbed(snapshot, middlePage);
+    }
+
+    /**
+     * The previous and next buttons for a page.
+     * @return the buttons
+     */
+    @Benchmark
+    public List<Button> pageButtons() {
+        return MovieListRenderer.buildPageButtons(snapshot, middlePage);
+    }
+
+    /**
+     * A page and its buttons served from the page cache, as a repeated page button press is.
+     * @return the cached page
+     */
+    @Benchmark
+    public MovieListPageCache.Page cachedPage() {
+        return pageCache.get(1L, snapshot, middlePage);
+    }
+}
@@ -0,0 +1,158 @@
+package com.mark.discordbot.bench;
+
+import com.mark.discordbot.EventCalendar;
+import com.mark.discordbot.Movie;
+import com.mark.discordbot.MovieScheduler;
+import com.mark.discordbot.ScheduledEventIndex;
+import net.dv8tion.jda.api.entities.ScheduledEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures overlap checks and queue planning against synthetic calendars.
+ * <p>
+ *     The calendar is {@link Fakes#busyEvents} events in the movie channel, so a long movie has to skip every Sunday
+ *     covered by them before it finds a free slot. Larger calendars therefore mean longer searches, not just bigger
+ *     indexes.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SchedulerBenchmark {
+
+    /**
+     * Number of existing events in the movie channel.
+     */
+    @Param({"10", "100", "1000"})
+    public int eventCount;
+
+    /**
+     * A long movie, so only the Sunday 18:30 slot is usable.
+     */
+    private final Movie movie = new Movie("Benchmark", 2000, null, 170);
+
+    /**
+     * The scheduler under test. Planning reads no events from its index, so the index stays empty.
+     */
+    private MovieScheduler scheduler;
+
+    /**
+     * The calendar's events.
+     */
+    private List<ScheduledEventIndex.EventInfo> infos;
+
+    /**
+     * Overlap calendar built from {@link #infos}.
+     */
+    private EventCalendar calendar;
+
+    /**
+     * Ten movies of increasing length for queue planning.
+     */
+    private List<Movie> queue;
+
+    /**
+     * A start time inside the calendar's busiest stretch.
+     */
+    private OffsetDateTime probeStart;
+
+    /**
+     * Standard output, restored after the trial.
+     */
+    private PrintStream stdout;
+
+    /**
+     * Builds the calendar and the queues.
+     */
+    @Setup(Level.Trial)
+    public void setup() {
+        //the scheduler logs every blocked slot; keep that out of the JMH output
+        stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        OffsetDateTime now = ZonedDateTime.now(ZoneId.of("America/Toronto")).toOffsetDateTime();
+        List<ScheduledEvent> events = Fakes.busyEvents(eventCount, now);
+
+        scheduler = new MovieScheduler(new ScheduledEventIndex());
+
+        infos = Fakes.infos(events);
+        calendar = new EventCalendar(infos, 3);
+
+        queue = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            queue.add(new Movie("Queued " + i, 2000, null, 90 + i * 10));
+        }
+
+        //the middle of the calendar, which always overlaps an event
+        probeStart = infos.get(eventCount / 2).start().plusMinutes(30);
+    }
+
+    /**
+     * Restores standard output.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setOut(stdout);
+    }
+
+    /**
+     * Planning a single long movie, which has to skip every Sunday the calendar covers.
+     * @return the planned actions
+     */
+    @Benchmark
+    public List<MovieScheduler.ScheduleAction> planLongMovie() {
+        return scheduler.planQueue(List.of(movie), infos, Fakes.BOT_USER_ID,
+                ZonedDateTime.now(ZoneId.of("America/Toronto")));
+    }
+
+    /**
+     * Building the overlap calendar, which happens once per queue plan.
+     * @return the calendar
+     */
+    @Benchmark
+    public EventCalendar buildCalendar() {
+        return new EventCalendar(infos, 3);
+    }
+
+    /**
+     * A single overlap check against a busy time.
+     * @return the blocking event name
+     */
+    @Benchmark
+    public String conflictCheck() {
+        return calendar.findOverlap(probeStart, probeStart.plusMinutes(120));
+    }
+
+    /**
+     * Planning a ten-movie queue around the calendar.
+     * @return the planned actions
+     */
+    @Benchmark
+    public List<MovieScheduler.ScheduleAction> planQueue() {
+        return scheduler.planQueue(queue, infos, Fakes.BOT_USER_ID, ZonedDateTime.now(ZoneId.of("America/Toronto")));
+    }
+}
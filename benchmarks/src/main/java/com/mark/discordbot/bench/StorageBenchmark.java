@@ -0,0 +1,184 @@
+package com.mark.discordbot.bench;
+
+import com.mark.discordbot.Movie;
+import com.mark.discordbot.MovieJournal;
+import com.mark.discordbot.MovieStorage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Measures loading and saving movie lists of various sizes.
+ * <p>
+ *     The journal benchmarks include the real disk writes and fsyncs, so their numbers depend on the machine's storage.
+ *     The storage benchmarks measure what a command handler waits for: a reload after eviction, and a change that is
+ *     handed to the background writer.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StorageBenchmark {
+
+    /**
+     * Number of movies in the list.
+     */
+    @Param({"10", "100", "1000"})
+    public int listSize;
+
+    /**
+     * Temporary directory holding the benchmark's files.
+     */
+    private Path dir;
+
+    /**
+     * Journal over a list of {@link #listSize} movies.
+     */
+    private MovieJournal journal;
+
+    /**
+     * Storage that keeps only one guild in memory, so alternating guilds forces a reload every time.
+     */
+    private MovieStorage storage;
+
+    /**
+     * Which guild the next reload uses.
+     */
+    private long nextGuild;
+
+    /**
+     * Change recorded by the append benchmark.
+     */
+    private MovieJournal.Record update;
+
+    /**
+     * Standard output, restored after the trial.
+     */
+    private PrintStream stdout;
+
+    /**
+     * Writes the list to disk for the journal and for two guilds.
+     * @throws IOException if the temporary directory cannot be created
+     */
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        //storage logs every eviction; keep that out of the JMH output
+        stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        dir = Files.createTempDirectory("movie-bench");
+        List<Movie> movies = movies(listSize);
+
+        journal = new MovieJournal(dir.resolve("journal.json"));
+        journal.load();
+        for (Movie movie : movies) {
+            journal.append(List.of(new MovieJournal.Record(MovieJournal.Op.ADD, 0, movie)));
+        }
+        journal.compact();
+
+        storage = new MovieStorage(dir.resolve("guilds"), 1);
+        for (long guild = 1; guild <= 2; guild++) {
+            for (Movie movie : movies) {
+                storage.addMovie(guild, movie);
+            }
+        }
+
+        update = new MovieJournal.Record(MovieJournal.Op.UPDATE, listSize / 2,
+                new Movie("Updated", 2001, null, 120, 42L));
+    }
+
+    /**
+     * Deletes the temporary directory and restores standard output.
+     * @throws IOException if a file cannot be deleted
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        journal.close();
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+        System.setOut(stdout);
+    }
+
+    /**
+     * Reading the snapshot and journal, then compacting them, as happens when a guild's list is first used.
+     * @return the loaded list
+     */
+    @Benchmark
+    public List<Movie> journalLoad() {
+        return journal.load();
+    }
+
+    /**
+     * Appending and fsyncing one change, with a compaction every fifty changes.
+     */
+    @Benchmark
+    public void journalAppend() {
+        journal.append(List.of(update));
+    }
+
+    /**
+     * Rewriting the whole list.
+     */
+    @Benchmark
+    public void journalCompact() {
+        journal.compact();
+    }
+
+    /**
+     * Dropping one guild's list and loading the other's.
+     * @return the loaded snapshot
+     */
+    @Benchmark
+    public MovieStorage.Snapshot storageReload() {
+        nextGuild = nextGuild == 1 ? 2 : 1;
+        return storage.getSnapshot(nextGuild);
+    }
+
+    /**
+     * Changing one movie in a resident list; the disk write happens later on the writer thread.
+     */
+    @Benchmark
+    public void storageUpdate() {
+        Movie current = storage.getMovies(1).get(listSize / 2);
+        storage.updateMovie(1, current, current.withScheduledEventId(current.getScheduledEventId() == null ? 1L : null));
+    }
+
+    /**
+     * Creates a list of distinct movies.
+     * @param count the number of movies
+     * @return the movies
+     */
+    private static List<Movie> movies(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> new Movie("Movie " + i, 1950 + i % 70, "https://image.tmdb.org/t/p/w500/" + i + ".jpg",
+                        80 + i % 100))
+                .toList();
+    }
+}
@@ -0,0 +1,68 @@
+package com.mark.discordbot;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Training run for the AppCDS archive, started with {@code --cds-training}.
+ * <p>
+ *     A class data sharing archive holds the classes a JVM loaded, already parsed and verified, so the next start can
+ *     map them instead of loading them from the jar again. The archive is only as good as the run that recorded it, so
+ *     this touches the code a boot and the first commands go through: command registration, JDA setup, TMDb decoding,
+ *     title matching, and list rendering. It never connects to Discord or TMDb and writes nothing to disk.
+ * </p>
+ */
+public class CdsTraining {
+
+    /**
+     * A search response in TMDb's shape, with a field the decoder skips.
+     */
+    private static final String SEARCH_RESPONSE = "{\"page\":1,\"results\":[{\"id\":348,\"title\":\"Alien\","
+            + "\"release_date\":\"1979-05-25\",\"poster_path\":\"/alien.jpg\",\"genre_ids\":[27,878]}],\"total_results\":1}";
+
+    /**
+     * A details response in TMDb's shape.
+     */
+    private static final String DETAILS_RESPONSE = "{\"id\":348,\"title\":\"Alien\",\"release_date\":\"1979-05-25\","
+            + "\"poster_path\":\"/alien.jpg\",\"runtime\":117,\"genres\":[{\"id\":27,\"name\":\"Horror\"}]}";
+
+    /**
+     * Not instantiable; all methods are static.
+     */
+    private CdsTraining() {
+    }
+
+    /**
+     * Loads the classes a normal boot would, then returns.
+     * @throws IOException if the sample responses cannot be decoded
+     */
+    public static void run() throws IOException {
+        CommandRegistrar.hash(CommandRegistrar.definitions());
+
+        //configured but never built, so nothing connects
+        for (JdaProfile profile : JdaProfile.values()) {
+            profile.builder("cds-training");
+        }
+
+        List<TMDb.SearchResult> results = TMDbJson.decode(TMDbJson.SEARCH, SEARCH_RESPONSE);
+        TMDbJson.decode(TMDbJson.SEARCH, TMDbJson.encode(TMDbJson.SEARCH, results));
+        TMDb.MovieDetails details = TMDbJson.decode(TMDbJson.DETAILS, DETAILS_RESPONSE);
+        TMDbJson.decode(TMDbJson.DETAILS, TMDbJson.encode(TMDbJson.DETAILS, details));
+
+        Movie movie = MovieBot.buildMovieFromTmdb(details);
+        List<Movie> movies = new ArrayList<>();
+        for (int i = 0; i < MovieListRenderer.PAGE_SIZE * 2; i++) {
+            movies.add(new Movie(movie.getTitle() + " " + i, movie.getYear(), movie.getPosterURL(), movie.getRuntimeMinutes()));
+        }
+        new TitleIndex(movies).search("alein", 5);
+
+        MovieStorage.Snapshot snapshot = new MovieStorage.Snapshot(1, movies);
+        MovieListPageCache pages = new MovieListPageCache();
+        for (int page = 0; page < MovieListRenderer.computeTotalPages(movies); page++) {
+            pages.get(0, snapshot, page);
+        }
+
+        System.out.println("CDS training run complete");
+    }
+}
@@ -0,0 +1,124 @@
+package com.mark.discordbot;
+
+/**
+ * Circuit breaker for a remote service.
+ * <p>
+ *     While the breaker is closed, requests go out as normal. After a run of consecutive failures it opens, and requests
+ *     are refused straight away instead of each waiting on a service that is down. Once the cool-down has passed, a
+ *     single trial request is let through: if it succeeds the breaker closes, and if it fails the breaker opens again.
+ * </p>
+ */
+public class CircuitBreaker {
+
+    /**
+     * Breaker states.
+     */
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    /**
+     * Name of the service, for logging.
+     */
+    private final String name;
+
+    /**
+     * Consecutive failures that open the breaker.
+     */
+    private final int failureThreshold;
+
+    /**
+     * How long the breaker stays open before a trial request, in nanoseconds.
+     */
+    private final long coolDownNanos;
+
+    /**
+     * Current state. Guarded by {@code this}.
+     */
+    private State state = State.CLOSED;
+
+    /**
+     * Consecutive failures while closed. Guarded by {@code this}.
+     */
+    private int failures;
+
+    /**
+     * When the breaker last opened, in {@link System#nanoTime()} units. Guarded by {@code this}.
+     */
+    private long openedAt;
+
+    /**
+     * Constructs a closed breaker.
+     * @param name the name of the service, for logging
+     * @param failureThreshold consecutive failures that open the breaker
+     * @param coolDownMillis how long the breaker stays open before a trial request
+     */
+    public CircuitBreaker(String name, int failureThreshold, long coolDownMillis) {
+        if (failureThreshold <= 0 || coolDownMillis <= 0) {
+            throw new IllegalArgumentException("Failure threshold and cool-down must be positive");
+        }
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.coolDownNanos = coolDownMillis * 1_000_000;
+    }
+
+    /**
+     * Asks to send a request. A caller that is allowed must report the outcome with {@link #onSuccess()},
+     * {@link #onFailure()}, or {@link #onAbandoned()}.
+     * @return whether the request may be sent
+     */
+    public synchronized boolean tryAcquire() {
+        return switch (state) {
+            case CLOSED -> true;
+            case HALF_OPEN -> false; //the trial request is still out
+            case OPEN -> {
+                if (System.nanoTime() - openedAt < coolDownNanos) {
+                    yield false;
+                }
+                state = State.HALF_OPEN;
+                yield true;
+            }
+        };
+    }
+
+    /**
+     * Reports a request that reached the service.
+     */
+    public synchronized void onSuccess() {
+        if (state != State.CLOSED) {
+            System.out.println(name + " is answering again; circuit closed");
+        }
+        state = State.CLOSED;
+        failures = 0;
+    }
+
+    /**
+     * Reports a request that failed because of the service.
+     */
+    public synchronized void onFailure() {
+        if (state == State.HALF_OPEN || ++failures >= failureThreshold) {
+            if (state != State.OPEN) {
+                System.err.println(name + " is failing; circuit open for " + coolDownNanos / 1_000_000 + " ms");
+            }
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+            failures = 0;
+        }
+    }
+
+    /**
+     * Reports a request that ended without saying anything about the service, such as one that was cancelled. If it
+     * was the trial request, the next request becomes the trial instead.
+     */
+    public synchronized void onAbandoned() {
+        if (state == State.HALF_OPEN) {
+            state = State.OPEN; //openedAt is unchanged, so the cool-down has already passed
+        }
+    }
+
+    /**
+     * Returns the current state.
+     * @return the state
+     */
+    public synchronized State getState() {
+        return state;
+    }
+}
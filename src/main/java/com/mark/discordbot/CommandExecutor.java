@@ -0,0 +1,173 @@
+package com.mark.discordbot;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Runs interaction handlers off JDA's event threads.
+ * <p>
+ *     Each command runs on its own virtual thread, so a handler that blocks on TMDb or Discord never holds up the
+ *     gateway. Commands from the same guild run one at a time in the order they arrived, so two adds or an add and a
+ *     remove can never interleave. Commands from different guilds run in parallel, up to a cap on how many run at once.
+ * </p>
+ * <p>
+ *     A command that starts asynchronous work can return a future for it; the next command in that guild waits for the
+ *     future as well, not just for the handler to return.
+ * </p>
+ * <p>
+ *     A command is given a fixed time (30 seconds by default) from the moment it starts, handler and future together. If it
+ *     takes longer, its timeout callback tells the user, its permit is returned, and the guild's next command starts;
+ *     the handler is left to finish in the background. Since every command ends within that time, a command never
+ *     waits on the one before it for longer than the line ahead of it takes.
+ * </p>
+ */
+public class CommandExecutor {
+
+    /**
+     * Default number of commands allowed to run at once across all guilds.
+     */
+    private static final int DEFAULT_MAX_IN_FLIGHT = 32;
+
+    /**
+     * Default time a command may run, in milliseconds, before its guild's next command is allowed to start.
+     */
+    private static final long DEFAULT_TIMEOUT_MS = 30_000;
+
+    /**
+     * Future returned for commands that finish when their handler returns.
+     */
+    private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+
+    /**
+     * One virtual thread per command.
+     */
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("movie-command-", 0).factory());
+
+    /**
+     * Limits how many commands run at once. A command only takes a permit once it is at the front of its guild's line.
+     */
+    private final Semaphore inFlight;
+
+    /**
+     * How long a command may run, in milliseconds.
+     */
+    private final long timeoutMillis;
+
+    /**
+     * Completion of the latest command submitted for each guild that has commands pending.
+     */
+    private final Map<Long, CompletableFuture<Void>> tails = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs an executor.
+     * <p>
+     *     The in-flight cap can be set with the {@code MOVIE_MAX_IN_FLIGHT_COMMANDS} environment variable.
+     * </p>
+     */
+    public CommandExecutor() {
+        this(readMaxInFlight());
+    }
+
+    /**
+     * Constructs an executor with the given in-flight cap.
+     * @param maxInFlight the maximum number of commands running at once
+     */
+    public CommandExecutor(int maxInFlight) {
+        this(maxInFlight, DEFAULT_TIMEOUT_MS);
+    }
+
+    /**
+     * Constructs an executor with the given in-flight cap and command timeout.
+     * @param maxInFlight the maximum number of commands running at once
+     * @param timeoutMillis how long a command may run before the guild's next command starts
+     */
+    CommandExecutor(int maxInFlight, long timeoutMillis) {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("In-flight cap must be positive");
+        }
+        this.inFlight = new Semaphore(maxInFlight);
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Runs a command after every earlier command for the same guild has finished.
+     * @param guildId the guild ID, or {@code 0} for interactions outside a guild
+     * @param command the handler to run
+     * @param onTimeout called if the handler takes longer than the timeout, to tell the user
+     */
+    public void execute(long guildId, Runnable command, Runnable onTimeout) {
+        executeAsync(guildId, () -> {
+            command.run();
+            return DONE;
+        }, onTimeout);
+    }
+
+    /**
+     * Runs a command after every earlier command for the same guild has finished. The guild's next command waits for
+     * the returned future too.
+     * @param guildId the guild ID, or {@code 0} for interactions outside a guild
+     * @param command the handler to run, returning a future for any work it leaves running
+     * @param onTimeout called if the handler and its future take longer than the timeout, to tell the user
+     */
+    public void executeAsync(long guildId, Supplier<CompletableFuture<?>> command, Runnable onTimeout) {
+        long started = System.nanoTime();
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        CompletableFuture<Void> previous = tails.put(guildId, done);
+
+        executor.execute(() -> {
+            try {
+                if (previous != null) {
+                    previous.join(); //always completes, since every command ends within its timeout
+                }
+
+                inFlight.acquireUninterruptibly();
+                try {
+                    //the handler gets a thread of its own so a handler that hangs is cut off too, not just its future
+                    CompletableFuture<Void> work = CompletableFuture.supplyAsync(command, executor)
+                            .thenCompose(f -> f == null ? DONE : f.thenApply(result -> (Void) null));
+                    work.get(timeoutMillis, TimeUnit.MILLISECONDS);
+                } finally {
+                    inFlight.release();
+                }
+            } catch (TimeoutException e) {
+                Metrics.COMMAND_FAILURES.increment();
+                System.err.println("Command timed out after " + timeoutMillis + " ms for guild " + guildId);
+                onTimeout.run();
+            } catch (Throwable e) {
+                Metrics.COMMAND_FAILURES.increment();
+                System.err.println("Command failed for guild " + guildId);
+                e.printStackTrace();
+            } finally {
+                Metrics.COMMAND.recordSince(started);
+                done.complete(null);
+                tails.remove(guildId, done);
+            }
+        });
+    }
+
+    /**
+     * Reads the in-flight cap from the environment.
+     * @return the configured cap, or the default if unset or invalid
+     */
+    private static int readMaxInFlight() {
+        String value = System.getenv("MOVIE_MAX_IN_FLIGHT_COMMANDS");
+        if (value == null) {
+            return DEFAULT_MAX_IN_FLIGHT;
+        }
+
+        try {
+            return Math.max(1, Integer.parseInt(value.trim()));
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid MOVIE_MAX_IN_FLIGHT_COMMANDS: " + value);
+            return DEFAULT_MAX_IN_FLIGHT;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.mark.discordbot;
+
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.Permission;
+import net.dv8tion.jda.api.interactions.commands.DefaultMemberPermissions;
+import net.dv8tion.jda.api.interactions.commands.OptionType;
+import net.dv8tion.jda.api.interactions.commands.build.CommandData;
+import net.dv8tion.jda.api.interactions.commands.build.Commands;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Registers the bot's slash commands with Discord, but only when they have changed.
+ * <p>
+ *     Replacing the global command set is rate limited and takes a while to reach every client, so pushing it on every
+ *     boot slows restarts for nothing. Instead the command definitions are hashed, and the hash of the last set Discord
+ *     accepted is kept in a small file next to the bot. The commands are only pushed when the two differ, or when the
+ *     bot runs as a different application.
+ * </p>
+ */
+public class CommandRegistrar {
+
+    /**
+     * File holding the application ID and command hash of the last successful update.
+     */
+    private static final String STATE_FILE = "slash-commands.sha256";
+
+    /**
+     * Not instantiable; all methods are static.
+     */
+    private CommandRegistrar() {
+    }
+
+    /**
+     * Returns the bot's slash commands.
+     * @return the command definitions
+     */
+    public static List<CommandData> definitions() {
+        return List.of(
+                //add movie slash command
+                Commands.slash("addmovie", "Adds a movie to the list")
+                        .addOption(OptionType.STRING, "name", "Movie title", true, true)
+                        .addOption(OptionType.INTEGER, "year", "Release year", false),
+
+                //remove movie slash command
+                Commands.slash("removemovie", "Removes a movie from the list")
+                        .addOption(OptionType.STRING, "query", "Part of the movie name", true, true),
+
+                //show list slash command
+                Commands.slash("movielist", "Shows the movie list"),
+
+                //add help command
+                Commands.slash("moviehelp", "Displays command help for the Movie Bot."),
+
+                //admin only stats command
+                Commands.slash("moviestats", "Shows MovieBot performance stats.")
+                        .setDefaultPermissions(DefaultMemberPermissions.enabledFor(Permission.ADMINISTRATOR))
+        );
+    }
+
+    /**
+     * Hashes command definitions as Discord would receive them.
+     * @param commands the commands
+     * @return the SHA-256 of their JSON, in hex
+     */
+    public static String hash(List<CommandData> commands) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (CommandData command : commands) {
+                digest.update(command.toData().toJson());
+                digest.update((byte) '\n');
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is always available", e);
+        }
+    }
+
+    /**
+     * Pushes the slash commands to Discord if they differ from the last set pushed.
+     * <p>
+     *     The update is queued, so this returns straight away. The stored hash is only replaced once Discord has
+     *     accepted the update, so a failed push is retried on the next boot.
+     * </p>
+     * @param jda the connected JDA instance
+     */
+    public static void sync(JDA jda) {
+        List<CommandData> commands = definitions();
+        String state = jda.getSelfUser().getApplicationId() + " " + hash(commands);
+        Path file = Path.of(STATE_FILE);
+
+        if (state.equals(readState(file))) {
+            System.out.println("Slash commands unchanged; skipping update");
+            return;
+        }
+
+        jda.updateCommands()
+                .addCommands(commands)
+                .queue(registered -> {
+                    writeState(file, state);
+                    System.out.println("Updated " + registered.size() + " slash commands");
+                });
+    }
+
+    /**
+     * Reads the stored state.
+     * @param file the state file
+     * @return the stored application ID and hash, or {@code null} if there is none
+     */
+    private static String readState(Path file) {
+        try {
+            return Files.readString(file, StandardCharsets.UTF_8).trim();
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            System.err.println("Could not read " + file + "; updating slash commands");
+            return null;
+        }
+    }
+
+    /**
+     * Stores the state of a successful update.
+     * @param file the state file
+     * @param state the application ID and hash
+     */
+    private static void writeState(Path file, String state) {
+        try {
+            Files.writeString(file, state + "\n", StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            System.err.println("Could not write " + file + "; slash commands will be updated again next boot");
+        }
+    }
+}
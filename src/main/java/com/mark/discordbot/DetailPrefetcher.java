@@ -0,0 +1,227 @@
+package com.mark.discordbot;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Speculatively fetches TMDb movie details for the results shown in a selection menu.
+ * <p>
+ *     When a menu is sent, details for its top results are queued for download in the background, a few at a time.
+ *     The results are held in a short-lived cache keyed by menu and TMDb ID so that picking from the dropdown does not
+ *     have to wait on the network. Menus showing the same movie each hold their own prefetch, so one being abandoned
+ *     never takes another's away; the TMDb client shares the request between them. If the menu is abandoned (it
+ *     expires, or the same user opens another one) its queued prefetches are dropped. Prefetches already running are
+ *     left to finish, holding their slot until then, and their result is thrown away; the request may be shared with
+ *     other callers, so it cannot be aborted, and the response still lands in the TMDb client's cache.
+ * </p>
+ */
+public class DetailPrefetcher {
+
+    /**
+     * Number of results at the top of a menu to prefetch.
+     */
+    private static final int PREFETCH_COUNT = 5;
+
+    /**
+     * Maximum number of prefetches running at once across all menus.
+     */
+    private static final int MAX_IN_FLIGHT = 8;
+
+    /**
+     * How long a menu (and its prefetched details) are kept before being treated as abandoned.
+     */
+    private static final long MENU_TTL_SECONDS = 120;
+
+    /**
+     * Identifies one movie's prefetch for one menu.
+     * @param menuKey the menu that requested it
+     * @param movieId the TMDb movie ID
+     */
+    private record Key(String menuKey, String movieId) {}
+
+    /**
+     * A prefetched (or still downloading) details response.
+     * @param details the details future
+     * @param expiresAt expiry time in epoch milliseconds
+     */
+    private record Entry(CompletableFuture<TMDb.MovieDetails> details, long expiresAt) {}
+
+    /**
+     * A queued prefetch that has not started yet.
+     * @param menuKey the menu that requested it
+     * @param movieId the TMDb movie ID
+     * @param result the future handed out for this prefetch
+     */
+    private record Task(String menuKey, String movieId, CompletableFuture<TMDb.MovieDetails> result) {}
+
+    /**
+     * Client used to fetch details.
+     */
+    private final TMDb tmdb;
+
+    /**
+     * Short-lived details cache keyed by menu and TMDb ID.
+     */
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Open menus keyed by the user who opened them, used to abandon a user's previous menu.
+     */
+    private final Map<Long, String> menusByUser = new ConcurrentHashMap<>();
+
+    /**
+     * Prefetches waiting for a free slot.
+     */
+    private final Deque<Task> queue = new ArrayDeque<>();
+
+    /**
+     * Number of prefetches currently running. Guarded by {@link #queue}.
+     */
+    private int inFlight;
+
+    /**
+     * Timer used to expire abandoned menus.
+     */
+    private final ScheduledExecutorService expiry = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "tmdb-prefetch-expiry");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Constructs a prefetcher backed by a TMDb client.
+     * @param tmdb the client to fetch details with
+     */
+    public DetailPrefetcher(TMDb tmdb) {
+        this.tmdb = tmdb;
+    }
+
+    /**
+     * Starts prefetching details for the top results of a newly sent menu.
+     * <p>
+     *     Any menu the same user still has open is abandoned first.
+     * </p>
+     * @param menuKey a key unique to the menu
+     * @param userId the user the menu was sent to
+     * @param movieIds the TMDb IDs shown in the menu, in display order
+     */
+    public void prefetch(String menuKey, long userId, List<String> movieIds) {
+        String previous = menusByUser.put(userId, menuKey);
+        if (previous != null) {
+            abandon(previous);
+        }
+
+        long expiresAt = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(MENU_TTL_SECONDS);
+
+        synchronized (queue) {
+            for (String id : movieIds.subList(0, Math.min(PREFETCH_COUNT, movieIds.size()))) {
+                Key key = new Key(menuKey, id);
+                if (entries.containsKey(key)) {
+                    continue;
+                }
+
+                CompletableFuture<TMDb.MovieDetails> result = new CompletableFuture<>();
+                entries.put(key, new Entry(result, expiresAt));
+                queue.add(new Task(menuKey, id, result));
+            }
+        }
+
+        pump();
+
+        expiry.schedule(() -> {
+            menusByUser.remove(userId, menuKey);
+            abandon(menuKey);
+        }, MENU_TTL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Returns the details for a movie picked from a menu, using the prefetched result when there is one.
+     * <p>
+     *     The menu is closed afterwards, so its other prefetches are abandoned.
+     * </p>
+     * @param menuKey the menu the movie was picked from
+     * @param userId the user who picked it
+     * @param movieId the TMDb movie ID
+     * @return a future completing with the details, or failing with a {@link TMDbException}
+     */
+    public CompletableFuture<TMDb.MovieDetails> take(String menuKey, long userId, String movieId) {
+        Entry entry = entries.remove(new Key(menuKey, movieId));
+
+        //a prefetch still waiting for a slot would never start once the menu is abandoned, so it is fetched directly
+        boolean queued;
+        synchronized (queue) {
+            queued = queue.removeIf(task -> task.menuKey().equals(menuKey) && task.movieId().equals(movieId));
+        }
+
+        menusByUser.remove(userId, menuKey);
+        abandon(menuKey);
+
+        //a prefetch that failed is tried again rather than handed back
+        if (entry != null && !queued && !entry.details().isCancelled() && !entry.details().isCompletedExceptionally()
+                && entry.expiresAt() > System.currentTimeMillis()) {
+            return entry.details();
+        }
+
+        return tmdb.getMovieById(movieId);
+    }
+
+    /**
+     * Drops queued prefetches for a menu and discards the results of any that are still running.
+     * @param menuKey the abandoned menu
+     */
+    private void abandon(String menuKey) {
+        List<CompletableFuture<TMDb.MovieDetails>> dropped = new ArrayList<>();
+
+        synchronized (queue) {
+            queue.removeIf(task -> task.menuKey().equals(menuKey));
+        }
+
+        entries.entrySet().removeIf(entry -> {
+            if (!entry.getKey().menuKey().equals(menuKey)) {
+                return false;
+            }
+            dropped.add(entry.getValue().details());
+            return true;
+        });
+
+        //only the handed-out future; a running fetch completes it later as a no-op and then frees its slot
+        dropped.forEach(f -> f.cancel(false));
+    }
+
+    /**
+     * Starts queued prefetches while there are free slots.
+     */
+    private void pump() {
+        while (true) {
+            Task task;
+            synchronized (queue) {
+                if (inFlight >= MAX_IN_FLIGHT || queue.isEmpty()) {
+                    return;
+                }
+                task = queue.poll();
+                inFlight++;
+            }
+
+            tmdb.getMovieById(task.movieId()).whenComplete((details, error) -> {
+                if (error != null) {
+                    task.result().completeExceptionally(error);
+                } else {
+                    task.result().complete(details);
+                }
+
+                synchronized (queue) {
+                    inFlight--;
+                }
+                pump();
+            });
+        }
+    }
+}
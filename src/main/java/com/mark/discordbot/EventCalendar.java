@@ -0,0 +1,88 @@
+package com.mark.discordbot;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable overlap index over the scheduled events in one voice channel.
+ * <p>
+ *     Event time ranges are merged into disjoint intervals held in a sorted map, so checking a proposed slot for an
+ *     overlap is a single {@code O(log n)} floor lookup instead of a scan of every event. A calendar is built once per
+ *     queue plan, from the events that plan must work around, and answers every slot check in it.
+ * </p>
+ */
+public class EventCalendar {
+
+    /**
+     * A merged block of busy time.
+     * @param end the end of the block in epoch milliseconds (inclusive)
+     * @param firstEventName the name of the earliest event in the block, for logging
+     */
+    private record Busy(long end, String firstEventName) {}
+
+    /**
+     * Merged busy blocks keyed by their start in epoch milliseconds (inclusive).
+     */
+    private final TreeMap<Long, Busy> busy = new TreeMap<>();
+
+    /**
+     * Builds a calendar from the events in one channel.
+     * @param events the channel's events
+     * @param defaultDurationHours duration assumed for events that have no end time
+     */
+    public EventCalendar(Collection<ScheduledEventIndex.EventInfo> events, int defaultDurationHours) {
+        List<ScheduledEventIndex.EventInfo> sorted = new ArrayList<>(events);
+        sorted.sort(Comparator.comparing(ScheduledEventIndex.EventInfo::start));
+
+        long blockStart = 0;
+        long blockEnd = Long.MIN_VALUE;
+        String blockName = null;
+
+        for (ScheduledEventIndex.EventInfo event : sorted) {
+            long start = event.start().toInstant().toEpochMilli();
+            OffsetDateTime endTime = event.end() != null
+                    ? event.end()
+                    : event.start().plusHours(defaultDurationHours); //assume a default length if dc has no end time
+            long end = endTime.toInstant().toEpochMilli();
+
+            //touching or overlapping events join the current block, since touching ranges count as overlapping
+            if (blockName != null && start <= blockEnd) {
+                blockEnd = Math.max(blockEnd, end);
+                continue;
+            }
+
+            if (blockName != null) {
+                busy.put(blockStart, new Busy(blockEnd, blockName));
+            }
+            blockStart = start;
+            blockEnd = end;
+            blockName = event.name();
+        }
+
+        if (blockName != null) {
+            busy.put(blockStart, new Busy(blockEnd, blockName));
+        }
+    }
+
+    /**
+     * Finds an event overlapping a proposed time range. Ranges that only touch at an endpoint count as overlapping.
+     * @param start proposed start time
+     * @param end proposed end time
+     * @return the name of the first event in the overlapping block, or {@code null} if the range is free
+     */
+    public String findOverlap(OffsetDateTime start, OffsetDateTime end) {
+        //blocks are disjoint, so only the last block starting at or before the proposed end can reach the proposed start
+        Map.Entry<Long, Busy> block = busy.floorEntry(end.toInstant().toEpochMilli());
+
+        if (block != null && block.getValue().end() >= start.toInstant().toEpochMilli()) {
+            return block.getValue().firstEventName();
+        }
+
+        return null;
+    }
+}
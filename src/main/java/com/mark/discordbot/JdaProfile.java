@@ -0,0 +1,73 @@
+package com.mark.discordbot;
+
+import net.dv8tion.jda.api.JDABuilder;
+import net.dv8tion.jda.api.requests.GatewayIntent;
+import net.dv8tion.jda.api.utils.MemberCachePolicy;
+import net.dv8tion.jda.api.utils.cache.CacheFlag;
+
+import java.util.Locale;
+
+/**
+ * How much of Discord's state JDA subscribes to and keeps in memory.
+ * <p>
+ *     JDA's defaults cache emojis, stickers, voice states, members and more for every guild, none of which the bot reads.
+ *     What it does use is small: the guild's voice channels and roles, which JDA always caches; scheduled events; and
+ *     interactions, which carry their own member and need no intent. The lean profile keeps only that, so each guild
+ *     costs less memory. Anything else a future feature needs should be fetched when it is needed rather than cached.
+ * </p>
+ * <p>
+ *     The profile is chosen with the {@code MOVIE_JDA_PROFILE} environment variable, {@code lean} (the default) or
+ *     {@code default} for JDA's usual caching.
+ * </p>
+ */
+public enum JdaProfile {
+
+    /**
+     * Only the scheduled events intent and cache, and no member cache.
+     */
+    LEAN {
+        @Override
+        public JDABuilder builder(String token) {
+            return JDABuilder.createLight(token, GatewayIntent.SCHEDULED_EVENTS)
+                    //JDA drops scheduled event gateway events, which the event index needs, without this cache
+                    .enableCache(CacheFlag.SCHEDULED_EVENTS)
+                    .setMemberCachePolicy(MemberCachePolicy.NONE);
+        }
+    },
+
+    /**
+     * JDA's default intents and caches, plus scheduled events.
+     */
+    DEFAULT {
+        @Override
+        public JDABuilder builder(String token) {
+            return JDABuilder.createDefault(token)
+                    .enableIntents(GatewayIntent.SCHEDULED_EVENTS);
+        }
+    };
+
+    /**
+     * Creates a builder configured for this profile.
+     * @param token the bot token
+     * @return the builder, ready for listeners and presence
+     */
+    public abstract JDABuilder builder(String token);
+
+    /**
+     * Reads the profile from the {@code MOVIE_JDA_PROFILE} environment variable.
+     * @return the configured profile, or {@link #LEAN} if unset or unknown
+     */
+    public static JdaProfile fromEnvironment() {
+        String value = System.getenv("MOVIE_JDA_PROFILE");
+        if (value == null) {
+            return LEAN;
+        }
+
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown MOVIE_JDA_PROFILE '" + value + "', using lean");
+            return LEAN;
+        }
+    }
+}
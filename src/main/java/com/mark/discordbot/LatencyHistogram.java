@@ -0,0 +1,166 @@
+package com.mark.discordbot;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-bucket latency histogram.
+ * <p>
+ *     Recording a value is a short scan of the bucket bounds and two {@link LongAdder} increments, with no allocation
+ *     and no lock, so it is cheap enough to call on every request. Bucket counts are kept per bucket (not cumulative);
+ *     the cumulative form Prometheus expects is built when the histogram is read.
+ * </p>
+ */
+public class LatencyHistogram {
+
+    /**
+     * Upper bucket bounds in milliseconds. Values above the last bound go in a final overflow bucket.
+     */
+    private static final long[] BOUNDS_MS = {1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000};
+
+    /**
+     * The same bounds in nanoseconds, for comparing without converting each value.
+     */
+    private static final long[] BOUNDS_NANOS = new long[BOUNDS_MS.length];
+
+    static {
+        for (int i = 0; i < BOUNDS_MS.length; i++) {
+            BOUNDS_NANOS[i] = BOUNDS_MS[i] * 1_000_000L;
+        }
+    }
+
+    /**
+     * Metric name, without the {@code _bucket}/{@code _sum}/{@code _count} suffix.
+     */
+    private final String name;
+
+    /**
+     * Prometheus label pairs, such as {@code endpoint="search"}, or an empty string.
+     */
+    private final String labels;
+
+    /**
+     * Count per bucket, with one extra for the overflow bucket.
+     */
+    private final LongAdder[] buckets = new LongAdder[BOUNDS_NANOS.length + 1];
+
+    /**
+     * Total of all recorded values in nanoseconds.
+     */
+    private final LongAdder sumNanos = new LongAdder();
+
+    /**
+     * Constructs a histogram. Use {@link Metrics#histogram} so it is included in the exported metrics.
+     * @param name the metric name
+     * @param labels the label pairs, or an empty string
+     */
+    LatencyHistogram(String name, String labels) {
+        this.name = name;
+        this.labels = labels;
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records the time elapsed since a {@link System#nanoTime()} reading.
+     * @param startNanos the reading taken when the timed work started
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Records one value.
+     * @param nanos the latency in nanoseconds
+     */
+    public void record(long nanos) {
+        int i = 0;
+        while (i < BOUNDS_NANOS.length && nanos > BOUNDS_NANOS[i]) {
+            i++;
+        }
+        buckets[i].increment();
+        sumNanos.add(nanos);
+    }
+
+    /**
+     * Returns the number of values recorded.
+     * @return the count
+     */
+    public long count() {
+        long count = 0;
+        for (LongAdder bucket : buckets) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    /**
+     * Estimates a percentile as the upper bound of the bucket it falls in.
+     * @param percentile the percentile, between 0 and 100
+     * @return the bucket bound in milliseconds, {@code -1} if nothing has been recorded, or {@link Long#MAX_VALUE} if
+     * the percentile falls in the overflow bucket
+     */
+    public long percentileMillis(double percentile) {
+        long[] counts = snapshot();
+        long total = 0;
+        for (long c : counts) {
+            total += c;
+        }
+
+        if (total == 0) {
+            return -1;
+        }
+
+        long rank = (long) Math.ceil(total * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return i < BOUNDS_MS.length ? BOUNDS_MS[i] : Long.MAX_VALUE;
+            }
+        }
+
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Writes the histogram in the Prometheus text format.
+     * @param out the output to append to
+     */
+    void writePrometheus(StringBuilder out) {
+        long[] counts = snapshot();
+        String prefix = labels.isEmpty() ? "" : labels + ",";
+        long cumulative = 0;
+
+        for (int i = 0; i < counts.length; i++) {
+            cumulative += counts[i];
+            String le = i < BOUNDS_MS.length ? Double.toString(BOUNDS_MS[i] / 1000.0) : "+Inf";
+            out.append(name).append("_bucket{").append(prefix).append("le=\"").append(le).append("\"} ")
+                    .append(cumulative).append('\n');
+        }
+
+        String suffix = labels.isEmpty() ? "" : "{" + labels + "}";
+        out.append(name).append("_sum").append(suffix).append(' ').append(sumNanos.sum() / 1e9).append('\n');
+        out.append(name).append("_count").append(suffix).append(' ').append(cumulative).append('\n');
+    }
+
+    /**
+     * Returns the metric name.
+     * @return the name
+     */
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Reads every bucket once, so one report uses a consistent set of counts.
+     * @return the per-bucket counts
+     */
+    private long[] snapshot() {
+        long[] counts = new long[buckets.length];
+        for (int i = 0; i < buckets.length; i++) {
+            counts[i] = buckets[i].sum();
+        }
+        return counts;
+    }
+}
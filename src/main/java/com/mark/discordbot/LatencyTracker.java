@@ -0,0 +1,138 @@
+package com.mark.discordbot;
+
+import java.util.Arrays;
+
+/**
+ * Recent latencies of one kind of request, used to pick its timeout and when to hedge it.
+ * <p>
+ *     Unlike a {@link LatencyHistogram}, which counts everything since startup, this only keeps a window of the most
+ *     recent samples, so the timeout follows TMDb as it speeds up or slows down. Percentiles are recomputed every few
+ *     samples rather than on every read.
+ * </p>
+ * <p>
+ *     Requests that time out are recorded too, at the time they waited, and each one also doubles the timeout straight
+ *     away. Otherwise a service that slowed past the current timeout would never produce a sample, and the timeout
+ *     would never grow to fit it.
+ * </p>
+ */
+public class LatencyTracker {
+
+    /**
+     * Number of recent samples kept.
+     */
+    private static final int WINDOW = 256;
+
+    /**
+     * Samples needed before the percentiles are trusted; until then the defaults are used.
+     */
+    private static final int MIN_SAMPLES = 20;
+
+    /**
+     * How many new samples arrive between percentile updates.
+     */
+    private static final int RECOMPUTE_EVERY = 16;
+
+    /**
+     * Timeout as a multiple of the recent p99.
+     */
+    private static final int TIMEOUT_P99_MULTIPLIER = 3;
+
+    /**
+     * Shortest hedge delay, so a fast endpoint is not hedged on every small hiccup.
+     */
+    private static final long MIN_HEDGE_DELAY_MS = 50;
+
+    /**
+     * Recent samples in milliseconds, used as a ring. Guarded by {@code this}.
+     */
+    private final long[] samples = new long[WINDOW];
+
+    /**
+     * Total samples recorded. Guarded by {@code this}.
+     */
+    private long recorded;
+
+    /**
+     * Shortest timeout handed out.
+     */
+    private final long minTimeoutMs;
+
+    /**
+     * Longest timeout handed out, also used until there are enough samples.
+     */
+    private final long maxTimeoutMs;
+
+    /**
+     * The current timeout in milliseconds.
+     */
+    private volatile long timeoutMs;
+
+    /**
+     * The current hedge delay in milliseconds, or {@code -1} while there are too few samples to hedge.
+     */
+    private volatile long hedgeDelayMs = -1;
+
+    /**
+     * Constructs a tracker.
+     * @param minTimeoutMs the shortest timeout handed out
+     * @param maxTimeoutMs the longest timeout handed out, and the one used until there are enough samples
+     */
+    public LatencyTracker(long minTimeoutMs, long maxTimeoutMs) {
+        if (minTimeoutMs <= 0 || maxTimeoutMs < minTimeoutMs) {
+            throw new IllegalArgumentException("Timeout bounds must be positive and ordered");
+        }
+        this.minTimeoutMs = minTimeoutMs;
+        this.maxTimeoutMs = maxTimeoutMs;
+        this.timeoutMs = maxTimeoutMs;
+    }
+
+    /**
+     * Records the latency of a request that got a response.
+     * @param nanos the latency in nanoseconds
+     */
+    public void record(long nanos) {
+        long[] window;
+        synchronized (this) {
+            samples[(int) (recorded % WINDOW)] = nanos / 1_000_000;
+            recorded++;
+
+            if (recorded < MIN_SAMPLES || recorded % RECOMPUTE_EVERY != 0) {
+                return;
+            }
+            window = Arrays.copyOf(samples, (int) Math.min(recorded, WINDOW));
+        }
+
+        //sorted outside the lock; a stale update racing a newer one only lasts until the next recompute
+        Arrays.sort(window);
+        long p95 = window[(int) Math.ceil(window.length * 0.95) - 1];
+        long p99 = window[(int) Math.ceil(window.length * 0.99) - 1];
+
+        timeoutMs = Math.max(minTimeoutMs, Math.min(maxTimeoutMs, p99 * TIMEOUT_P99_MULTIPLIER));
+        hedgeDelayMs = Math.max(MIN_HEDGE_DELAY_MS, p95);
+    }
+
+    /**
+     * Records a request that timed out, and doubles the timeout up to the configured maximum.
+     * @param nanos how long the request waited in nanoseconds
+     */
+    public void recordTimeout(long nanos) {
+        record(nanos);
+        timeoutMs = Math.min(maxTimeoutMs, timeoutMs * 2);
+    }
+
+    /**
+     * Returns the timeout to use for the next request: a multiple of the recent p99, within the configured bounds.
+     * @return the timeout in milliseconds
+     */
+    public long timeoutMillis() {
+        return timeoutMs;
+    }
+
+    /**
+     * Returns how long to wait for a response before sending a hedged copy of the request: the recent p95.
+     * @return the delay in milliseconds, or {@code -1} if there are too few samples to hedge yet
+     */
+    public long hedgeDelayMillis() {
+        return hedgeDelayMs;
+    }
+}
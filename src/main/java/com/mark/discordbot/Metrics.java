@@ -0,0 +1,206 @@
+package com.mark.discordbot;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Process-wide latency histograms and counters.
+ * <p>
+ *     The metrics the bot records are created once as constants, so recording on a hot path is a field read plus a
+ *     {@link LongAdder} update. Counters kept elsewhere (such as the TMDb cache hit count) are registered as suppliers and
+ *     read only when the metrics are exported. Everything here can be read through {@code /moviestats} or as Prometheus
+ *     text from the {@link MetricsServer}.
+ * </p>
+ */
+public final class Metrics {
+
+    /**
+     * A named counter.
+     * @param name the metric name
+     * @param help the metric description
+     * @param value reads the current value
+     */
+    private record Counter(String name, String help, LongSupplier value) {}
+
+    /**
+     * Descriptions of the histogram metrics, keyed by name.
+     */
+    private static final Map<String, String> HISTOGRAM_HELP = new ConcurrentHashMap<>();
+
+    /**
+     * Every histogram, in registration order.
+     */
+    private static final List<LatencyHistogram> HISTOGRAMS = new CopyOnWriteArrayList<>();
+
+    /**
+     * Every counter, in registration order.
+     */
+    private static final List<Counter> COUNTERS = new CopyOnWriteArrayList<>();
+
+    /** Latency of TMDb search requests that went to the network. */
+    public static final LatencyHistogram TMDB_SEARCH = histogram("movie_tmdb_request_seconds", "endpoint=\"search\"",
+            "Latency of TMDb requests that went to the network");
+
+    /** Latency of TMDb movie details requests that went to the network. */
+    public static final LatencyHistogram TMDB_DETAILS = histogram("movie_tmdb_request_seconds", "endpoint=\"details\"",
+            "Latency of TMDb requests that went to the network");
+
+    /** Latency of searches answered from the offline title index. */
+    public static final LatencyHistogram OFFLINE_SEARCH = histogram("movie_tmdb_offline_search_seconds", "",
+            "Latency of movie searches answered from the offline title index");
+
+    /** Latency of writing a batch of changes to one guild's movie journal. */
+    public static final LatencyHistogram STORAGE_SAVE = histogram("movie_storage_save_seconds", "",
+            "Latency of writing a batch of movie list changes to disk");
+
+    /** Latency of planning a guild's whole queue. */
+    public static final LatencyHistogram QUEUE_PLAN = histogram("movie_queue_plan_seconds", "",
+            "Latency of planning the movie night slots for a guild's whole queue");
+
+    /**
+     * Time from a command arriving to its handler finishing, including time spent waiting behind the guild's other
+     * commands.
+     */
+    public static final LatencyHistogram COMMAND = histogram("movie_command_seconds", "",
+            "Time from an interaction arriving to its handling finishing");
+
+    /** TMDb requests that returned an error status or failed to complete. */
+    public static final LongAdder TMDB_FAILURES = counter("movie_tmdb_failures_total",
+            "TMDb requests that returned an error status or failed");
+
+    /** TMDb request attempts retried after a transient failure. */
+    public static final LongAdder TMDB_RETRIES = counter("movie_tmdb_retries_total",
+            "TMDb request attempts retried after a transient failure");
+
+    /** TMDb requests that joined an identical request already in flight instead of making their own call. */
+    public static final LongAdder TMDB_COALESCED = counter("movie_tmdb_coalesced_total",
+            "TMDb requests that shared an identical request already in flight");
+
+    /** Second copies of slow TMDb requests sent to cut tail latency. */
+    public static final LongAdder TMDB_HEDGES = counter("movie_tmdb_hedged_requests_total",
+            "Second copies of slow TMDb requests sent to cut tail latency");
+
+    /** Failed TMDb requests answered with an expired cached response. */
+    public static final LongAdder TMDB_STALE_SERVED = counter("movie_tmdb_stale_served_total",
+            "Failed TMDb requests answered with an expired cached response");
+
+    /** Movie journal writes that failed. */
+    public static final LongAdder STORAGE_FAILURES = counter("movie_storage_save_failures_total",
+            "Movie list writes that failed");
+
+    /** Command handlers that threw. */
+    public static final LongAdder COMMAND_FAILURES = counter("movie_command_failures_total",
+            "Interaction handlers that failed");
+
+    /** Discord REST requests that failed. */
+    public static final LongAdder DISCORD_REST_ERRORS = counter("movie_discord_rest_errors_total",
+            "Discord REST requests that failed");
+
+    /** Title autocomplete lookups answered from the prefix cache. */
+    public static final LongAdder AUTOCOMPLETE_HITS = counter("movie_autocomplete_cache_hits_total",
+            "Title autocomplete lookups answered from the prefix cache");
+
+    /** Title autocomplete lookups that needed a TMDb search. */
+    public static final LongAdder AUTOCOMPLETE_MISSES = counter("movie_autocomplete_cache_misses_total",
+            "Title autocomplete lookups that needed a TMDb search");
+
+    /** Title autocomplete lookups that ran out of time and used cached suggestions. */
+    public static final LongAdder AUTOCOMPLETE_FALLBACKS = counter("movie_autocomplete_fallbacks_total",
+            "Title autocomplete lookups answered from a shorter cached prefix after running out of time");
+
+    /** /movielist pages served from the rendered page cache. */
+    public static final LongAdder LIST_PAGE_HITS = counter("movie_list_page_cache_hits_total",
+            "Movie list pages served from the rendered page cache");
+
+    /** /movielist pages that had to be rendered. */
+    public static final LongAdder LIST_PAGE_MISSES = counter("movie_list_page_cache_misses_total",
+            "Movie list pages that had to be rendered");
+
+    /**
+     * Not instantiable; all members are static.
+     */
+    private Metrics() {
+    }
+
+    /**
+     * Creates and registers a histogram.
+     * @param name the metric name
+     * @param labels the label pairs, or an empty string
+     * @param help the metric description
+     * @return the histogram
+     */
+    public static LatencyHistogram histogram(String name, String labels, String help) {
+        LatencyHistogram histogram = new LatencyHistogram(name, labels);
+        HISTOGRAM_HELP.putIfAbsent(name, help);
+        HISTOGRAMS.add(histogram);
+        return histogram;
+    }
+
+    /**
+     * Creates and registers a counter.
+     * @param name the metric name
+     * @param help the metric description
+     * @return the counter
+     */
+    public static LongAdder counter(String name, String help) {
+        LongAdder adder = new LongAdder();
+        COUNTERS.add(new Counter(name, help, adder::sum));
+        return adder;
+    }
+
+    /**
+     * Registers a counter kept by another class.
+     * @param name the metric name
+     * @param help the metric description
+     * @param value reads the current value
+     */
+    public static void counter(String name, String help, LongSupplier value) {
+        COUNTERS.add(new Counter(name, help, value));
+    }
+
+    /**
+     * Returns the current value of a registered counter.
+     * @param name the metric name
+     * @return the summed value of every counter with that name
+     */
+    public static long counterValue(String name) {
+        long total = 0;
+        for (Counter counter : COUNTERS) {
+            if (counter.name().equals(name)) {
+                total += counter.value().getAsLong();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Writes every metric in the Prometheus text exposition format.
+     * @return the exported metrics
+     */
+    public static String toPrometheus() {
+        StringBuilder out = new StringBuilder(4096);
+        String previous = null;
+
+        for (LatencyHistogram histogram : HISTOGRAMS) {
+            //one header per metric name, even when it has several label sets
+            if (!histogram.getName().equals(previous)) {
+                previous = histogram.getName();
+                out.append("# HELP ").append(previous).append(' ').append(HISTOGRAM_HELP.get(previous)).append('\n');
+                out.append("# TYPE ").append(previous).append(" histogram\n");
+            }
+            histogram.writePrometheus(out);
+        }
+
+        for (Counter counter : COUNTERS) {
+            out.append("# HELP ").append(counter.name()).append(' ').append(counter.help()).append('\n');
+            out.append("# TYPE ").append(counter.name()).append(" counter\n");
+            out.append(counter.name()).append(' ').append(counter.value().getAsLong()).append('\n');
+        }
+
+        return out.toString();
+    }
+}
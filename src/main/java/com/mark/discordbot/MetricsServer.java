@@ -0,0 +1,94 @@
+package com.mark.discordbot;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Serves {@link Metrics} as Prometheus text at {@code /metrics} on the loopback interface.
+ * <p>
+ *     Built on the JDK's own HTTP server, so it adds no dependencies. It only listens on localhost; a scraper on the same
+ *     machine (or a tunnel) is expected to read it.
+ * </p>
+ */
+public class MetricsServer {
+
+    /**
+     * Port used when {@code MOVIE_METRICS_PORT} is not set.
+     */
+    private static final int DEFAULT_PORT = 9464;
+
+    /**
+     * Not instantiable; all methods are static.
+     */
+    private MetricsServer() {
+    }
+
+    /**
+     * Starts the server on the port from the {@code MOVIE_METRICS_PORT} environment variable, or the default port.
+     * Setting the variable to {@code 0} disables the server.
+     * <p>
+     *     A failure to bind is logged and the bot carries on without the endpoint.
+     * </p>
+     */
+    public static void start() {
+        int port = readPort();
+        if (port == 0) {
+            return;
+        }
+
+        try {
+            HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+            server.createContext("/metrics", MetricsServer::handle);
+            server.start(); //runs on the server's own dispatcher thread
+            System.out.println("Metrics available at http://localhost:" + port + "/metrics");
+        } catch (IOException e) {
+            System.err.println("Could not start metrics server on port " + port);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes the current metrics in response to a scrape.
+     * @param exchange the HTTP exchange
+     * @throws IOException if the response cannot be written
+     */
+    private static void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            byte[] body = Metrics.toPrometheus().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    /**
+     * Reads the metrics port from the environment.
+     * @return the configured port, or the default if unset or invalid
+     */
+    private static int readPort() {
+        String value = System.getenv("MOVIE_METRICS_PORT");
+        if (value == null) {
+            return DEFAULT_PORT;
+        }
+
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid MOVIE_METRICS_PORT: " + value);
+            return DEFAULT_PORT;
+        }
+    }
+}
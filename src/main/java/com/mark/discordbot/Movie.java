@@ -3,6 +3,9 @@ package com.mark.discordbot;
 /**
  * Stores data related to a movie into a {@code Movie}.
  * Stores the movie's title, release year, poster URL, and runtime in minutes.
+ * <p>
+ * A {@code Movie} is immutable so it can be shared freely between threads; changes produce a new instance.
+ * </p>
  */
 public class Movie {
 
@@ -29,7 +32,13 @@ public class Movie {
     /**
      * The Discord scheduled event ID for this movie.
      */
-    private Long scheduledEventId;
+    private final Long scheduledEventId;
+
+    /**
+     * Identifies this entry in its guild's list, so it can still be found after it is updated, even when another entry
+     * has the same title and year. {@code 0} until the movie is added to a list.
+     */
+    private final long entryId;
 
     /**
      * Constructor to make a {@code Movie}.
@@ -39,11 +48,37 @@ public class Movie {
      * @param runtimeMinutes the movies runtime in minutes
      */
     public Movie(String title, int year, String posterURL, int runtimeMinutes){
+        this(title, year, posterURL, runtimeMinutes, null);
+    }
+
+    /**
+     * Constructor to make a {@code Movie} that already has a scheduled event.
+     * @param title the movies title
+     * @param year the movies release year
+     * @param posterURL the URl to the movies poster
+     * @param runtimeMinutes the movies runtime in minutes
+     * @param scheduledEventId the Discord scheduled event ID, or {@code null} if none exists
+     */
+    public Movie(String title, int year, String posterURL, int runtimeMinutes, Long scheduledEventId){
+        this(title, year, posterURL, runtimeMinutes, scheduledEventId, 0);
+    }
+
+    /**
+     * Constructor used by the copy methods, carrying every field.
+     * @param title the movies title
+     * @param year the movies release year
+     * @param posterURL the URl to the movies poster
+     * @param runtimeMinutes the movies runtime in minutes
+     * @param scheduledEventId the Discord scheduled event ID, or {@code null} if none exists
+     * @param entryId the entry ID, or {@code 0} if the movie has not been added to a list
+     */
+    private Movie(String title, int year, String posterURL, int runtimeMinutes, Long scheduledEventId, long entryId){
         this.title = title;
         this.year = year;
         this.posterURL = posterURL;
         this.runtimeMinutes = runtimeMinutes;
-
+        this.scheduledEventId = scheduledEventId;
+        this.entryId = entryId;
     }
 
     /**
@@ -87,10 +122,28 @@ public class Movie {
     }
 
     /**
-     * Sets the Discord scheduled event ID for this movie.
-     * @param id the scheduled event
+     * Returns a copy of this movie with a different Discord scheduled event ID.
+     * @param id the scheduled event ID, or {@code null} to clear it
+     * @return the updated copy
+     */
+    public Movie withScheduledEventId(Long id){
+        return new Movie(title, year, posterURL, runtimeMinutes, id, entryId);
+    }
+
+    /**
+     * Returns the ID of this entry in its guild's list.
+     * @return the entry ID, or {@code 0} if the movie has not been added to a list
+     */
+    public long getEntryId(){
+        return entryId;
+    }
+
+    /**
+     * Returns a copy of this movie with a different entry ID.
+     * @param id the entry ID
+     * @return the updated copy
      */
-    public void setScheduledEventId(Long id){
-        this.scheduledEventId = id;
+    public Movie withEntryId(long id){
+        return new Movie(title, year, posterURL, runtimeMinutes, scheduledEventId, id);
     }
 }
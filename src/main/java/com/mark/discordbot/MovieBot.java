@@ -1,26 +1,32 @@
 package com.mark.discordbot;
 
-import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
 import net.dv8tion.jda.api.JDA;
-import net.dv8tion.jda.api.JDABuilder;
+import net.dv8tion.jda.api.Permission;
 import net.dv8tion.jda.api.components.selections.StringSelectMenu;
 import net.dv8tion.jda.api.entities.Activity;
 import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.events.session.ReadyEvent;
+import net.dv8tion.jda.api.events.interaction.command.CommandAutoCompleteInteractionEvent;
 import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
 import net.dv8tion.jda.api.events.interaction.component.StringSelectInteractionEvent;
 import net.dv8tion.jda.api.hooks.ListenerAdapter;
-import net.dv8tion.jda.api.interactions.commands.OptionType;
-import net.dv8tion.jda.api.interactions.commands.build.Commands;
+import net.dv8tion.jda.api.interactions.callbacks.IDeferrableCallback;
+import net.dv8tion.jda.api.interactions.commands.Command;
+import net.dv8tion.jda.api.requests.RestAction;
 import net.dv8tion.jda.api.components.actionrow.ActionRow;
-import net.dv8tion.jda.api.components.buttons.Button;
 import net.dv8tion.jda.api.EmbedBuilder;
-import net.dv8tion.jda.api.entities.MessageEmbed;
 
 
-import java.time.OffsetDateTime;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 /**
  * Main entry point and event handler for MovieBot.
@@ -31,11 +37,6 @@ import java.util.List;
  */
 public class MovieBot extends ListenerAdapter
 {
-    /**
-     * Number of movies displayed per page in the movie list.
-     */
-    private static final int PAGE_SIZE = 5;
-
     /**
      * Persistent storage for the movie list.
      */
@@ -52,25 +53,108 @@ public class MovieBot extends ListenerAdapter
     private final MovieScheduler scheduler;
 
     /**
-     * The amount of minutes to add as a buffer to scheduled events.
+     * Index of each guild's scheduled events, fed by gateway events.
+     */
+    private final ScheduledEventIndex eventIndex;
+
+    /**
+     * Prefetches details for the results shown in selection menus.
+     */
+    private final DetailPrefetcher prefetcher;
+
+    /**
+     * Suggests titles for the /addmovie {@code name} option.
+     */
+    private final TitleAutocomplete titleAutocomplete;
+
+    /**
+     * Rendered /movielist pages, dropped whenever a guild's list changes.
      */
-    private static final int EVENT_BUFFER_MINUTES = 15;
+    private final MovieListPageCache listPages = new MovieListPageCache();
 
+    /**
+     * Prefix of autocomplete choice values, followed by the TMDb movie ID.
+     */
+    private static final String AUTOCOMPLETE_PREFIX = "tmdb:";
 
-    public MovieBot(String tmdbKey) {
-        this.tmdb = new TMDb(tmdbKey);
+    /**
+     * Most choices Discord accepts in an autocomplete reply or a select menu.
+     */
+    private static final int MAX_CHOICES = 25;
+
+    /**
+     * Runs interaction handlers off the gateway thread, in order per guild.
+     */
+    private final CommandExecutor commands;
+
+    /**
+     * Number of movies added since startup, logged next to the TMDb details request count so the two can be compared.
+     */
+    private final AtomicLong moviesAdded = new AtomicLong();
+
+    /**
+     * File the TMDb response cache is persisted to between restarts.
+     */
+    private static final String TMDB_CACHE_FILE = "tmdb-cache.json";
+
+    /**
+     * Maximum number of TMDb responses kept in the cache.
+     */
+    private static final int TMDB_CACHE_SIZE = 2000;
+
+
+    /**
+     * Runs startup work on virtual threads so independent pieces load side by side.
+     */
+    private static final Executor STARTUP = command -> Thread.ofVirtual().name("movie-startup").start(command);
+
+    /**
+     * Set once the bot has registered its commands and warmed its caches.
+     */
+    private final AtomicBoolean started = new AtomicBoolean();
+
+    /**
+     * Constructs the bot, loading the TMDb cache and the offline title index side by side.
+     * @param tmdbKey the TMDb API key
+     * @param eventIndex the scheduled event index, already registered with JDA
+     */
+    public MovieBot(String tmdbKey, ScheduledEventIndex eventIndex) {
+        String titleIndexFile = System.getenv("MOVIE_TITLE_INDEX");
+        CompletableFuture<OfflineTitleIndex> titleIndex = CompletableFuture.supplyAsync(() ->
+                OfflineTitleIndex.open(Path.of(titleIndexFile != null ? titleIndexFile : TMDb.DEFAULT_TITLE_INDEX_FILE)), STARTUP);
+
+        TMDbCache cache = new TMDbCache(Path.of(TMDB_CACHE_FILE), TMDB_CACHE_SIZE);
+        Metrics.counter("movie_tmdb_cache_hits_total", "TMDb responses served from the cache", cache::getHits);
+        Metrics.counter("movie_tmdb_cache_misses_total", "TMDb lookups not found in the cache", cache::getMisses);
+
+        this.tmdb = new TMDb(tmdbKey, cache, titleIndex.join());
         this.storage = new MovieStorage();
-        this.scheduler = new MovieScheduler();
+        this.storage.addChangeListener(listPages::invalidate);
+        this.eventIndex = eventIndex;
+        this.scheduler = new MovieScheduler(eventIndex);
+        this.prefetcher = new DetailPrefetcher(tmdb);
+        this.commands = new CommandExecutor();
+        this.titleAutocomplete = new TitleAutocomplete(tmdb);
     }
 
 
     /**
      * Application entry point.
      * <p>
-     * Loads environment variables, initializes JDA, registers slash commands, and starts the bot.
+     * Loads environment variables, initializes JDA, registers slash commands, and starts the bot. The gateway login
+     * starts first, and the bot's local state loads while it is under way.
+     * </p>
+     * <p>
+     * Run with {@code --cds-training} to load the usual classes and exit without connecting, for recording an AppCDS
+     * archive.
      * </p>
      */
-    public static void main(String[] args) throws InterruptedException {
+    public static void main(String[] args) throws InterruptedException, IOException {
+
+        if (args.length > 0 && args[0].equals("--cds-training")) {
+            CdsTraining.run();
+            return;
+        }
 
         // Load .env
         String token = System.getenv("DISCORD_TOKEN");
@@ -86,64 +170,101 @@ public class MovieBot extends ListenerAdapter
         }
 
 
-        // Build JDA bot
-        JDA jda = JDABuilder.createDefault(token)
+        //count every failed Discord request that has no failure callback of its own, then log it as before
+        Consumer<? super Throwable> defaultFailure = RestAction.getDefaultFailure();
+        RestAction.setDefaultFailure(error -> {
+            Metrics.DISCORD_REST_ERRORS.increment();
+            defaultFailure.accept(error);
+        });
+        MetricsServer.start();
+
+        //log in first; the event index must see every guild from the start, the bot is attached once loaded
+        ScheduledEventIndex eventIndex = new ScheduledEventIndex();
+        JdaProfile profile = JdaProfile.fromEnvironment();
+        System.out.println("Using the " + profile.name().toLowerCase(Locale.ROOT) + " JDA profile");
+        JDA jda = profile.builder(token)
                 .setActivity(Activity.watching("/movielist"))
-                .addEventListeners(new MovieBot(tmdbKey))
+                .addEventListeners(eventIndex)
                 .build();
-        try {
-            jda.awaitReady(); // blocks until connected
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            System.err.println("Bot startup interrupted");
-        }
-        jda.updateCommands()
-                .addCommands(
-                        //add movie slash command
-                        Commands.slash("addmovie", "Adds a movie to the list")
-                                .addOption(OptionType.STRING, "name", "Movie title", true)
-                                .addOption(OptionType.INTEGER, "year", "Release year", false),
-
-                        //remove movie slash command
-                        Commands.slash("removemovie", "Removes a movie from the list")
-                                .addOption(OptionType.STRING, "query", "Part of the movie name", true),
-
-                        //show list slash command
-                        Commands.slash("movielist", "Shows the movie list"),
-
-                        //add help command
-                        Commands.slash("moviehelp", "Displays command help for the Movie Bot.")
-                )
-                .queue();
 
-        System.out.println("MovieBot is now running!");
+        MovieBot bot = new MovieBot(tmdbKey, eventIndex);
+        jda.addEventListener(bot);
+        if (jda.getStatus() == JDA.Status.CONNECTED) {
+            bot.start(jda); //ready fired before the listener was attached
+        }
 
         Thread.currentThread().join();
     }
 
+    /**
+     * Finishes startup once the gateway is ready.
+     * @param event the ready event
+     */
+    @Override
+    public void onReady(ReadyEvent event) {
+        start(event.getJDA());
+    }
+
+    /**
+     * Registers the slash commands if they changed, imports the pre-partitioning movie file if there is one, and warms
+     * each guild's movie list and first list page in the background. Runs once, however many times it is called.
+     * @param jda the connected JDA instance
+     */
+    private void start(JDA jda) {
+        if (!started.compareAndSet(false, true)) {
+            return;
+        }
+
+        CommandRegistrar.sync(jda);
+
+        List<Guild> guilds = jda.getGuilds();
+        storage.migrateLegacyFile(guilds.stream().map(Guild::getIdLong).toList());
+
+        int warm = Math.min(guilds.size(), storage.getMaxResidentGuilds());
+        for (Guild guild : guilds.subList(0, warm)) {
+            long guildId = guild.getIdLong();
+            STARTUP.execute(() -> listPages.get(guildId, storage.getSnapshot(guildId), 0));
+        }
+
+        System.out.println("MovieBot is now running!");
+    }
+
     /**
      * Routes incoming slash commands to their respective handlers.
+     * <p>
+     * Commands that touch the movie list are acknowledged here on the gateway thread, well within Discord's 3 second
+     * limit, and then handed to the {@link CommandExecutor} so they run in order per guild.
+     * </p>
      * @param event the slash command interaction event
      */
     @Override
     public void onSlashCommandInteraction(SlashCommandInteractionEvent event){
+        long guildId = guildKey(event.getGuild());
+
         switch (event.getName()){
             case "addmovie":
-                handleAddMovie(event);
+                event.deferReply().setEphemeral(true).queue();
+                commands.executeAsync(guildId, () -> handleAddMovie(event), timedOut(event));
                 break;
 
             case "removemovie":
-                handleRemoveMovie(event);
+                event.deferReply().setEphemeral(true).queue(); // ACKNOWLEDGE ONCE
+                commands.execute(guildId, () -> handleRemoveMovie(event), timedOut(event));
                 break;
 
             case "movielist":
-                handleMovieList(event);
+                event.deferReply().queue();
+                commands.execute(guildId, () -> handleMovieList(event), timedOut(event));
                 break;
 
             case "moviehelp":
                 handleMovieHelp(event);
                 break;
 
+            case "moviestats":
+                handleMovieStats(event);
+                break;
+
             default:
                 event.reply("Unknown command.").setEphemeral(true).queue();
         }
@@ -178,6 +299,10 @@ public class MovieBot extends ListenerAdapter
                 "/movielist", "Shows all movies currently in the list.", false
         );
 
+        embed.addField(
+                "/moviestats", "Shows response times and failure counts. Server administrators only.", false
+        );
+
         embed.addField(
                 "/moviehelp", "Displays this help message.", false
         );
@@ -186,48 +311,224 @@ public class MovieBot extends ListenerAdapter
         event.replyEmbeds(embed.build()).setEphemeral(true).queue();
     }
 
+    /**
+     * Handles the /moviestats slash command.
+     * <p>
+     * Shows latency percentiles and failure counts from {@link Metrics}. Only server administrators may use it; the
+     * command is hidden from everyone else and checked again here in case a server overrides that.
+     * </p>
+     */
+    private void handleMovieStats(SlashCommandInteractionEvent event) {
+        if (event.getMember() == null || !event.getMember().hasPermission(Permission.ADMINISTRATOR)) {
+            event.reply("Only server administrators can view MovieBot stats.").setEphemeral(true).queue();
+            return;
+        }
+
+        EmbedBuilder embed = new EmbedBuilder();
+        embed.setTitle("MovieBot Stats");
+        embed.setColor(0x570000);
+
+        embed.addField("TMDb searches", describe(Metrics.TMDB_SEARCH), true);
+        embed.addField("TMDb details", describe(Metrics.TMDB_DETAILS), true);
+        embed.addField("Storage saves", describe(Metrics.STORAGE_SAVE), true);
+        embed.addField("Queue plans", describe(Metrics.QUEUE_PLAN), true);
+        embed.addField("Commands", describe(Metrics.COMMAND), true);
+
+        embed.addField("TMDb cache", Metrics.counterValue("movie_tmdb_cache_hits_total") + " hits / "
+                + Metrics.counterValue("movie_tmdb_cache_misses_total") + " misses", false);
+        embed.addField("Failures", "TMDb: " + Metrics.TMDB_FAILURES.sum()
+                + "\nStorage: " + Metrics.STORAGE_FAILURES.sum()
+                + "\nCommands: " + Metrics.COMMAND_FAILURES.sum()
+                + "\nDiscord REST: " + Metrics.DISCORD_REST_ERRORS.sum(), false);
+        embed.addField("TMDb health", "Circuit: " + TMDb.getCircuitState()
+                + "\nTimeouts: " + TMDb.describeTimeouts()
+                + "\nRetries: " + Metrics.TMDB_RETRIES.sum()
+                + "\nHedged: " + Metrics.TMDB_HEDGES.sum()
+                + "\nStale answers: " + Metrics.TMDB_STALE_SERVED.sum(), false);
+
+        embed.setFooter("Percentiles are bucket upper bounds");
+        event.replyEmbeds(embed.build()).setEphemeral(true).queue();
+    }
+
+    /**
+     * Summarizes a histogram for the stats embed.
+     * @param histogram the histogram
+     * @return the count and approximate p50, p95 and p99
+     */
+    private static String describe(LatencyHistogram histogram) {
+        long count = histogram.count();
+        if (count == 0) {
+            return "No data";
+        }
+
+        return count + " recorded\np50 ≤ " + formatMillis(histogram.percentileMillis(50))
+                + "\np95 ≤ " + formatMillis(histogram.percentileMillis(95))
+                + "\np99 ≤ " + formatMillis(histogram.percentileMillis(99));
+    }
+
+    /**
+     * Formats a percentile bound from {@link LatencyHistogram#percentileMillis}.
+     * @param millis the bound in milliseconds
+     * @return the formatted bound
+     */
+    private static String formatMillis(long millis) {
+        return millis == Long.MAX_VALUE ? "> 10 s" : millis + " ms";
+    }
+
     /**
      * Handles the /addmovie slash command.
      * <p>
      * Searches TMDb for matching movies, allows the user to select the correct on if multiple results are found,
      * stores the movie, and schedules a Discord event if possible.
      * </p>
+     * @return a future that completes once the movie has been added or a selection menu sent
      */
-    private void handleAddMovie(SlashCommandInteractionEvent event){
+    private CompletableFuture<?> handleAddMovie(SlashCommandInteractionEvent event){
+
+        String name = event.getOption("name").getAsString();
+        Integer year = event.getOption("year") != null ? event.getOption("year").getAsInt() : null;
+
+        if (!requireGuild(event)) return CompletableFuture.completedFuture(null);
 
         //keep number of queued movies under 30.
         int MAX_MOVIE_QUEUE = 30;
-        if(storage.getMovies().size() >= MAX_MOVIE_QUEUE){
+        if(storage.getMovies(event.getGuild().getIdLong()).size() >= MAX_MOVIE_QUEUE){
             event.getHook().sendMessage("Maximum number of movies are scheduled. Please try again later.").setEphemeral(true).queue();
-            return;
+            return CompletableFuture.completedFuture(null);
         }
 
-        String name = event.getOption("name").getAsString();
-        Integer year = event.getOption("year") != null ? event.getOption("year").getAsInt() : null;
+        Guild guild = event.getGuild();
 
-        event.deferReply().setEphemeral(true).queue();
+        //a picked autocomplete suggestion already names the exact movie, so skip the search
+        if (name.startsWith(AUTOCOMPLETE_PREFIX)) {
+            return addMovieById(event, guild, name.substring(AUTOCOMPLETE_PREFIX.length()))
+                    .exceptionally(error -> {
+                        System.err.println("Failed to add movie " + name);
+                        error.printStackTrace();
+                        event.getHook().sendMessage(addFailureMessage(error)).setEphemeral(true).queue();
+                        return null;
+                    });
+        }
 
-        if (!requireGuild(event)) return;
+        //returned so the guild's next command waits until this movie has been added
+        return tmdb.searchMovies(name, year)
+                .thenCompose(results -> {
+                    if (results.isEmpty()){
+                        event.getHook().sendMessage("No movies found with that name.").setEphemeral(true).queue();
+                        return CompletableFuture.completedFuture(null);
+                    }
+
+                    if (results.size() == 1){
+                        //search results carry no runtime, so fetch the details once and build from those
+                        String id = String.valueOf(results.getFirst().id());
+                        return addMovieById(event, guild, id);
+                    }
+
+                    sendMovieSelectionMenu(event, results, name);
+                    return CompletableFuture.completedFuture(null);
+                })
+                .exceptionally(error -> {
+                    System.err.println("Failed to add movie " + name);
+                    error.printStackTrace();
+                    event.getHook().sendMessage(addFailureMessage(error)).setEphemeral(true).queue();
+                    return null;
+                });
+
+    }
 
-        JsonArray results = tmdb.searchMovies(name, year);
+    /**
+     * Fetches a movie's details by TMDb ID, adds it, and confirms to the user.
+     * @param event the /addmovie interaction
+     * @param guild the guild to add the movie to
+     * @param id the TMDb movie ID
+     * @return a future that completes once the movie has been added
+     */
+    private CompletableFuture<Void> addMovieById(SlashCommandInteractionEvent event, Guild guild, String id) {
+        return fetchMovieById(id)
+                .thenAccept(details -> {
+                    if (details == null) {
+                        event.getHook().sendMessage("Could not load movie data.").setEphemeral(true).queue();
+                        return;
+                    }
+
+                    Movie movie = buildMovieFromTmdb(details);
+                    addMovieAndSchedule(movie, guild);
+                    event.getHook().sendMessage("Added **" + movie.getTitle() + "** (" + movie.getYear() + ")").setEphemeral(true).queue();
+                });
+    }
 
-        if (results.isEmpty()){
-            event.getHook().sendMessage("No movies found with that name.").setEphemeral(true).queue();
+    /**
+     * Suggests titles while the /addmovie {@code name} or /removemovie {@code query} option is being typed.
+     * <p>
+     * Each /addmovie choice's value names the exact TMDb movie, so picking one adds that movie without a search or
+     * dropdown. Runs on the gateway thread, but never blocks: cached suggestions are answered at once and anything else
+     * replies when the lookup completes. /removemovie choices come from the guild's own list and are answered at once.
+     * </p>
+     * @param event the autocomplete interaction event
+     */
+    @Override
+    public void onCommandAutoCompleteInteraction(CommandAutoCompleteInteractionEvent event) {
+        if (event.getName().equals("removemovie") && event.getFocusedOption().getName().equals("query")) {
+            suggestListedMovies(event);
             return;
         }
 
-        if (results.size() == 1){
+        if (!event.getName().equals("addmovie") || !event.getFocusedOption().getName().equals("name")) return;
 
-            Movie movie = buildMovieFromTmdb(results.get(0).getAsJsonObject());
-            addMovieAndSchedule(movie, event.getGuild());
+        titleAutocomplete.suggest(event.getUser().getIdLong(), event.getFocusedOption().getValue())
+                .thenAccept(suggestions -> event.replyChoices(suggestions.stream()
+                                .map(s -> new Command.Choice(choiceName(s), AUTOCOMPLETE_PREFIX + s.id()))
+                                .toList())
+                        .queue(null, error -> {})) //a newer keystroke may already have replaced this menu
+                .exceptionally(error -> null); //cancelled by a newer keystroke from the same user
+    }
 
-            event.getHook().sendMessage("Added **" + movie.getTitle() + "** (" + movie.getYear() + ")").setEphemeral(true).queue();
-            return;
+    /**
+     * Builds the label shown for a suggestion, trimmed to Discord's 100 character limit.
+     * @param suggestion the suggestion
+     * @return the label
+     */
+    private static String choiceName(TitleAutocomplete.Suggestion suggestion) {
+        return choiceName(suggestion.title(), suggestion.year());
+    }
+
+    /**
+     * Builds a choice label from a title and year, trimmed to Discord's 100 character limit.
+     * @param title the movie title
+     * @param releaseYear the release year, or {@code 0} if unknown
+     * @return the label
+     */
+    private static String choiceName(String title, int releaseYear) {
+        String year = releaseYear > 0 ? " (" + releaseYear + ")" : "";
+        if (title.length() + year.length() > 100) {
+            title = title.substring(0, 99 - year.length()) + "…";
+        }
+        return title + year;
+    }
 
+    /**
+     * Suggests movies from the guild's list while the /removemovie {@code query} option is being typed.
+     * <p>
+     * Each choice's value is the full title, which /removemovie then matches exactly.
+     * </p>
+     * @param event the autocomplete interaction event
+     */
+    private void suggestListedMovies(CommandAutoCompleteInteractionEvent event) {
+        if (event.getGuild() == null) {
+            event.replyChoices(List.of()).queue(null, error -> {});
+            return;
         }
 
-        sendMovieSelectionMenu(event, results, name);
+        List<Command.Choice> choices = storage.searchTitles(event.getGuild().getIdLong(), event.getFocusedOption().getValue(), MAX_CHOICES)
+                .matches().stream()
+                .map(match -> {
+                    Movie m = match.movie();
+                    String value = m.getTitle().length() > 100 ? m.getTitle().substring(0, 100) : m.getTitle();
+                    return new Command.Choice(choiceName(m.getTitle(), m.getYear()), value);
+                })
+                .toList();
 
+        event.replyChoices(choices).queue(null, error -> {}); //a newer keystroke may already have replaced this menu
     }
 
     /**
@@ -235,35 +536,36 @@ public class MovieBot extends ListenerAdapter
      * <p>
      * Removes a movie from the stored list, prompting the user
      * to disambiguate if multiple matches are found.
+     * A single exact title, or else a single title containing the query,
+     * is removed at once; otherwise the closest titles are offered in a dropdown,
+     * so a typo still finds the movie.
      * </p>
      */
     private void handleRemoveMovie(SlashCommandInteractionEvent event){
         String query = event.getOption("query").getAsString();
-        List<Movie> allMovies = storage.getMovies();
-
-        event.deferReply().setEphemeral(true).queue(); // ACKNOWLEDGE ONCE
 
         if (!requireGuild(event)) return;
 
-        // Search for movies containing the query (case-insensitive)
-        List<Integer> matchingIndexes = new ArrayList<>();
-        for (int i = 0; i < allMovies.size(); i++) {
-            Movie m = allMovies.get(i);
-            if (m.getTitle().toLowerCase().contains(query.toLowerCase())) {
-                matchingIndexes.add(i);
-            }
-        }
+        long guildId = event.getGuild().getIdLong();
+        MovieStorage.TitleMatches result = storage.searchTitles(guildId, query, MAX_CHOICES);
+        List<TitleIndex.Match> matches = result.matches();
 
-        if (matchingIndexes.isEmpty()) {
+        if (matches.isEmpty()) {
             event.getHook().sendMessage("I couldn't find any movies matching **" + query + "**.").setEphemeral(true).queue();
             return;
         }
 
+        long exact = matches.stream().filter(TitleIndex.Match::exact).count();
+        long containing = matches.stream().filter(TitleIndex.Match::contains).count();
+
         // If only one match → delete immediately
-        if (matchingIndexes.size() == 1) {
-            Movie movie = allMovies.get(matchingIndexes.getFirst());
-            deleteScheduledEventIfPresent(movie, event.getGuild()); //remove scheduled event before deleting movie
-            storage.removeMovie(movie);
+        if (exact == 1 || (exact == 0 && containing == 1)) {
+            Movie movie = matches.getFirst().movie();
+            if (!storage.removeMovie(guildId, movie)) {
+                event.getHook().sendMessage("That movie no longer exists.").setEphemeral(true).queue();
+                return;
+            }
+            rescheduleQueue(event.getGuild()); //deletes the movie's event and moves later movies up
 
             event.getHook()
                     .sendMessage("Removed **" + movie.getTitle() + "** from the movie list.").setEphemeral(true)
@@ -274,21 +576,57 @@ public class MovieBot extends ListenerAdapter
         // MULTIPLE MATCHES → build dropdown
         StringSelectMenu.Builder menu = StringSelectMenu.create("remove-movie-select");
 
-        for (int index : matchingIndexes) {
-            Movie m = allMovies.get(index);
+        for (TitleIndex.Match match : matches) {
+            Movie m = match.movie();
             menu.addOption(
-                    m.getTitle() + " (" + m.getYear() + ")",
-                    "remove:" + index
+                    choiceName(m.getTitle(), m.getYear()),
+                    removalValue(m)
             );
         }
 
 
         event.getHook()
-                .editOriginal("I found multiple movies:")
+                .editOriginal(containing == 0 ? "I couldn't find **" + query + "**. Did you mean:" : "I found multiple movies:")
                 .setComponents(ActionRow.of(menu.build()))
                 .queue();
     }
 
+    /**
+     * Builds the option value naming a movie in the /removemovie dropdown.
+     * <p>
+     *     The value identifies the list entry itself, as {@code remove:<entry ID>}, rather than a position in one
+     *     version of the list. The list gets a new version whenever a rebuild saves a movie's event ID, which happens
+     *     right after every add or remove, so a version check would turn away menus that are still accurate. Matching
+     *     by title and year would instead remove the wrong entry when the list holds the same movie twice.
+     * </p>
+     * @param movie the movie
+     * @return the option value
+     */
+    private static String removalValue(Movie movie) {
+        return "remove:" + Long.toHexString(movie.getEntryId());
+    }
+
+    /**
+     * Finds the movie a /removemovie dropdown option names in the current list.
+     * @param movies the current list
+     * @param value the option value from {@link #removalValue}
+     * @return the movie, or {@code null} if it is no longer in the list or the value is not understood
+     */
+    private static Movie findRemoval(List<Movie> movies, String value) {
+        String[] raw = value.split(":");
+        if (raw.length != 2) {
+            return null; //a menu from before option values named the entry
+        }
+
+        long entryId;
+        try {
+            entryId = Long.parseUnsignedLong(raw[1], 16);
+        } catch (NumberFormatException e) {
+            return null; //not a value this bot wrote
+        }
+        return movies.stream().filter(m -> m.getEntryId() == entryId).findFirst().orElse(null);
+    }
+
     /**
      * Handles the /movielist slash command.
      * <p>
@@ -296,48 +634,57 @@ public class MovieBot extends ListenerAdapter
      * </p>
      */
     private void handleMovieList(SlashCommandInteractionEvent event) {
-        List<Movie> movies = storage.getMovies();
-
         if (!requireGuild(event)) return;
 
-        if (movies.isEmpty()) {
-            event.reply("The movie list is currently empty.").queue();
+        MovieStorage.Snapshot snapshot = storage.getSnapshot(event.getGuild().getIdLong());
+
+        if (snapshot.movies().isEmpty()) {
+            event.getHook().sendMessage("The movie list is currently empty.").queue();
             return;
         }
 
         int page = 0; // always start at page 0
 
-        var embed = buildMovieListEmbed(page);
-        var buttons = buildPageButtons(page);
+        MovieListPageCache.Page rendered = listPages.get(event.getGuild().getIdLong(), snapshot, page);
+        var buttons = rendered.buttons();
 
-        event.replyEmbeds(embed)
+        event.getHook().sendMessageEmbeds(rendered.embed())
                 .addComponents(ActionRow.of(buttons.get(0), buttons.get(1)))
                 .queue();
     }
 
-    private void sendMovieSelectionMenu(SlashCommandInteractionEvent event, JsonArray results, String query){
-        StringSelectMenu.Builder menu = StringSelectMenu.create("movie_select").setPlaceholder("Select the correct movie");
+    private void sendMovieSelectionMenu(SlashCommandInteractionEvent event, List<TMDb.SearchResult> results, String query){
+        //each menu gets its own id so its prefetched details can be found (and dropped) again
+        String menuKey = "movie_select:" + event.getId();
+        StringSelectMenu.Builder menu = StringSelectMenu.create(menuKey).setPlaceholder("Select the correct movie");
+        List<String> ids = new ArrayList<>();
 
         for (int i = 0; i < Math.min(results.size(), 25); i++){ //max of 25 options allowed by discord
-            var movie = results.get(i).getAsJsonObject();
+            TMDb.SearchResult movie = results.get(i);
+            String id = String.valueOf(movie.id());
 
-            String title = movie.get("title").getAsString();
-            String releaseDate = movie.has("release_date") && !movie.get("release_date").isJsonNull()
-                    ? movie.get("release_date").getAsString()
-                    : "Unknown";
-
-            int year = releaseDate.length() >=4 ? Integer.parseInt(releaseDate.substring(0,4)) : 0;
-            String id = movie.get("id").getAsString();
-
-            menu.addOption(title + "(" + year + ")", id);
+            menu.addOption(choiceName(movie.title(), movie.year()), id); //offline search results have no year
+            ids.add(id);
         }
 
+        //start fetching the likely picks while the user is still reading the menu
+        prefetcher.prefetch(menuKey, event.getUser().getIdLong(), ids);
+
         event.getHook()
                 .sendMessage("I found multiple results for **" + query + "**:")
                 .addComponents(ActionRow.of(menu.build())).setEphemeral(true)
                 .queue();
     }
 
+    /**
+     * Builds the reply sent when an acknowledged interaction takes too long to handle.
+     * @param event the interaction, already deferred
+     * @return a callback that tells the user
+     */
+    private static Runnable timedOut(IDeferrableCallback event) {
+        return () -> event.getHook().sendMessage("That took too long. Please try again.").setEphemeral(true).queue();
+    }
+
     /**
      * Handles dropdown menu interactions for movie selection
      * and movie removal.
@@ -346,122 +693,70 @@ public class MovieBot extends ListenerAdapter
      */
     @Override
     public void onStringSelectInteraction(StringSelectInteractionEvent event){
-
         event.deferReply().setEphemeral(true).queue();
+        commands.executeAsync(guildKey(event.getGuild()), () -> handleSelection(event), timedOut(event));
+    }
+
+    /**
+     * Applies a dropdown selection, after it has been acknowledged.
+     * @param event the string select interaction event
+     * @return a future that completes once the selection has been applied
+     */
+    private CompletableFuture<?> handleSelection(StringSelectInteractionEvent event){
 
         //failsafe to prevent users from using dms, which would result in null guild.
         Guild guild = event.getGuild();
         if (guild == null){
             event.getHook().sendMessage("This action can only be used inside a server.").setEphemeral(true).queue();
-            return;
+            return CompletableFuture.completedFuture(null);
         }
 
         String id = event.getComponentId();
 
         if (id.equals("remove-movie-select")) {
 
-            // Payload looks like: "remove:7"
-            String raw = event.getValues().getFirst();
-            int index = Integer.parseInt(raw.replace("remove:", ""));
-
-            List<Movie> movies = storage.getMovies();
+            // Payload looks like: "remove:3c6e0b8a91f2d4"
+            Movie movie = findRemoval(storage.getMovies(guild.getIdLong()), event.getValues().getFirst());
 
-            if (index < 0 || index >= movies.size()) {
+            if (movie == null || !storage.removeMovie(guild.getIdLong(), movie)) {
                 event.getHook().sendMessage("That movie no longer exists.").setEphemeral(true).queue();
-                return;
+                return CompletableFuture.completedFuture(null);
             }
 
-            Movie movie = movies.get(index);
-            deleteScheduledEventIfPresent(movie, guild); //remove scheduled event before deleting movie
-            storage.removeMovie(movie);
+            rescheduleQueue(guild); //deletes the movie's event and moves later movies up
 
             event.getHook().sendMessage("🗑Removed **" + movie.getTitle() + "**.").setEphemeral(true).queue();
-            return;
+            return CompletableFuture.completedFuture(null);
         }
 
-        if (!id.equals("movie_select")) return;
+        if (!id.startsWith("movie_select")) return CompletableFuture.completedFuture(null);
 
         String selectedMovieId = event.getValues().getFirst();
 
-        //get selected movie details
-        JsonObject movieJson = fetchMovieById(selectedMovieId);
-
-        if (movieJson == null) {
-            event.getHook().sendMessage("Could not load movie data.").setEphemeral(true).queue();
-            return;
-        }
-
-        Movie m = buildMovieFromTmdb(movieJson);
-        addMovieAndSchedule(m, guild);
-
-        event.getHook().sendMessage("Added **" + m.getTitle() + "** (" + m.getYear() + ") to the list!").setEphemeral(true).queue();
+        //get selected movie details, usually already prefetched when the menu was sent
+        return prefetcher.take(id, event.getUser().getIdLong(), selectedMovieId)
+                .thenAccept(details -> {
+                    if (details == null) {
+                        event.getHook().sendMessage("Could not load movie data.").setEphemeral(true).queue();
+                        return;
+                    }
+
+                    Movie m = buildMovieFromTmdb(details);
+                    addMovieAndSchedule(m, guild);
+                    event.getHook().sendMessage("Added **" + m.getTitle() + "** (" + m.getYear() + ") to the list!").setEphemeral(true).queue();
+                })
+                .exceptionally(error -> {
+                    System.err.println("Failed to add selected movie " + selectedMovieId);
+                    error.printStackTrace();
+                    event.getHook().sendMessage(addFailureMessage(error)).setEphemeral(true).queue();
+                    return null;
+                });
     }
 
-    public JsonObject fetchMovieById(String id) {
+    public CompletableFuture<TMDb.MovieDetails> fetchMovieById(String id) {
         return tmdb.getMovieById(id);
     }
 
-    // Build a MessageEmbed for a page (5 movies per page)
-    private MessageEmbed buildMovieListEmbed(int page) {
-        var movies = storage.getMovies();
-        int totalPages = computeTotalPages(movies);
-
-        EmbedBuilder eb = new EmbedBuilder();
-        eb.setTitle("Movie List");
-        eb.setColor(0x570000);
-        eb.setFooter("Page " + (page + 1) + " of " + totalPages);
-
-        if (movies.isEmpty()) {
-            eb.setDescription("The list is empty.");
-            return eb.build();
-        }
-
-        if(page == 0){
-            Movie next = movies.getFirst();
-
-            eb.setDescription("Next Up: " + next.getTitle() + " (" + next.getYear() + ")");
-            if (next.getPosterURL() != null && !next.getPosterURL().isBlank()){
-                eb.setImage(next.getPosterURL()); //set image
-            }
-
-            return eb.build();
-
-        }
-
-            int start = 1 + (page -1) * PAGE_SIZE;
-            int end = Math.min(start + PAGE_SIZE, movies.size());
-
-            for (int i = start; i < end; i++) {
-
-                Movie m = movies.get(i);
-                String heading = (i + 1) + ". " + m.getTitle();
-                StringBuilder value = new StringBuilder("Year: " + m.getYear());
-
-                if (m.getPosterURL() != null && !m.getPosterURL().isBlank()) {
-                    value.append("\n[Poster](").append(m.getPosterURL()).append(")");
-                    // you could also set the thumbnail to the first movie on page if you like
-                }
-                eb.addField(heading, value.toString(), false);
-            }
-
-
-        return eb.build();
-    }
-
-    // Build prev/next buttons for a given current page. Returns List<Button>
-    private List<Button> buildPageButtons(int currentPage) {
-        var movies = storage.getMovies();
-        int totalPages = computeTotalPages(movies);
-
-        Button prev = Button.primary("movie_page_prev_" + currentPage, "◀ Previous")
-                .withDisabled(currentPage == 0);
-
-        Button next = Button.primary("movie_page_next_" + currentPage, "Next ▶")
-                .withDisabled(currentPage >= totalPages - 1);
-
-        return List.of(prev, next);
-    }
-
     /**
      * Handles pagination button interactions for the movie list.
      *
@@ -474,69 +769,102 @@ public class MovieBot extends ListenerAdapter
         String id = event.getComponentId();
         if (!id.startsWith("movie_page_")) return;
 
+        Guild guild = event.getGuild();
+        if (guild == null) return;
+
+        event.deferEdit().queue();
+        commands.execute(guild.getIdLong(), () -> handlePageButton(event, guild), timedOut(event));
+    }
+
+    /**
+     * Shows the requested page of the movie list, after the button press has been acknowledged.
+     * @param event the button interaction event
+     * @param guild the guild the list belongs to
+     */
+    private void handlePageButton(
+            net.dv8tion.jda.api.events.interaction.component.ButtonInteractionEvent event, Guild guild) {
+
+        String id = event.getComponentId();
+
         // Extract type and page:
         // movie_page_prev_2  → ["movie","page","prev","2"]
         String[] parts = id.split("_");
         String action = parts[2];         // "prev" or "next"
         int currentPage = Integer.parseInt(parts[3]);
 
-        var movies = storage.getMovies();
-        int totalPages = computeTotalPages(movies);
-
-        int newPage = action.equals("prev")
-                ? Math.max(0, currentPage - 1)
-                : Math.min(totalPages - 1, currentPage + 1);
+        //read the list once so the page, embed and buttons all agree
+        MovieStorage.Snapshot snapshot = storage.getSnapshot(guild.getIdLong());
+        int newPage = action.equals("prev") ? currentPage - 1 : currentPage + 1;
 
-        var embed = buildMovieListEmbed(newPage);
-        var buttons = buildPageButtons(newPage);
+        //the cache moves the page back into range if the list has shrunk
+        MovieListPageCache.Page rendered = listPages.get(guild.getIdLong(), snapshot, newPage);
+        var buttons = rendered.buttons();
 
-        event.editMessageEmbeds(embed)
+        event.getHook().editOriginalEmbeds(rendered.embed())
                 .setComponents(ActionRow.of(buttons.get(0), buttons.get(1)))
                 .queue();
     }
 
-    private int computeTotalPages(List<Movie> movies){
-        if (movies.isEmpty()){
-            return  1;
-        }
-        return Math.max(1, (int) Math.ceil((movies.size() -1) / (double) PAGE_SIZE) + 1);
-    }
-
     private void addMovieAndSchedule(Movie movie, Guild guild) {
-        storage.addMovie(movie);
-
-        if (guild == null) {
-            return;
-        }
+        long guildId = guild.getIdLong();
+        storage.addMovie(guildId, movie);
 
-        OffsetDateTime start =
-                scheduler.findNextAvailableSlot(movie.getRuntimeMinutes(), movie, guild);
+        System.out.println("Added " + movie.getTitle() + " (movies added: " + moviesAdded.incrementAndGet()
+                + ", TMDb details requests: " + tmdb.getDetailRequestCount() + ")");
 
-        if (start != null) {
-            OffsetDateTime end =
-                    start.plusMinutes(movie.getRuntimeMinutes() +EVENT_BUFFER_MINUTES);
-            scheduler.createDiscordEvent(guild, movie, start, end);
-        }
+        rescheduleQueue(guild);
     }
 
-    private Movie buildMovieFromTmdb(JsonObject movieJson) {
-        String title = movieJson.get("title").getAsString();
-
-        int year = 0;
-        if (movieJson.has("release_date") && !movieJson.get("release_date").isJsonNull()){
-            String release = movieJson.get("release_date").getAsString();
-            if (release.length() >= 4){
-                year = Integer.parseInt(release.substring(0,4));
-            }
-        }
+    /**
+     * Brings the guild's scheduled events in line with its queue, saving each movie's event ID as it is created or
+     * matched.
+     * @param guild the Discord guild
+     */
+    private void rescheduleQueue(Guild guild) {
+        long guildId = guild.getIdLong();
+        scheduler.rescheduleQueue(guild, () -> storage.getMovies(guildId),
+                (movie, eventId) -> storage.updateMovie(guildId, movie, movie.withScheduledEventId(eventId)));
+    }
 
-        String poster = movieJson.has("poster_path") && !movieJson.get("poster_path").isJsonNull()
-                ? "https://image.tmdb.org/t/p/w500" + movieJson.get("poster_path").getAsString()
+    /**
+     * Builds a {@link Movie} from a single TMDb movie details response.
+     * <p>
+     *     The details response already carries the runtime, so no further TMDb request is made.
+     * </p>
+     * @param details the details from {@link TMDb#getMovieById(String)}
+     * @return the built movie
+     */
+    static Movie buildMovieFromTmdb(TMDb.MovieDetails details) {
+        String poster = details.posterPath() != null
+                ? "https://image.tmdb.org/t/p/w500" + details.posterPath()
                 : null;
 
-        int runtime = tmdb.getRuntime(movieJson.get("id").getAsInt());
+        return new Movie(details.title(), details.year(), poster, details.runtime());
+    }
 
-        return new Movie(title, year, poster, runtime);
+    /**
+     * Builds the message shown when adding a movie fails.
+     * @param error the failure
+     * @return the message
+     */
+    private static String addFailureMessage(Throwable error) {
+        TMDbException failure = TMDbException.from(error, "Adding a movie failed");
+
+        return switch (failure.getKind()) {
+            case NOT_FOUND -> "That movie could not be found on TMDb.";
+            case RATE_LIMITED, UNAVAILABLE, TIMEOUT, NETWORK, CIRCUIT_OPEN ->
+                    "TMDb isn't responding right now. Please try again in a minute.";
+            default -> "Something went wrong while adding that movie.";
+        };
+    }
+
+    /**
+     * Returns the key the {@link CommandExecutor} orders an interaction's commands by.
+     * @param guild the interaction's guild, or {@code null} outside a guild
+     * @return the guild ID, or {@code 0} outside a guild
+     */
+    private static long guildKey(Guild guild) {
+        return guild == null ? 0 : guild.getIdLong();
     }
 
     private boolean requireGuild(SlashCommandInteractionEvent event) {
@@ -549,22 +877,4 @@ public class MovieBot extends ListenerAdapter
         }
         return true;
     }
-
-    /**
-     * Deletes a scheduled event if it exists.
-     * @param movie the movie to remove
-     * @param guild the guild to remove the movie from
-     */
-    private void deleteScheduledEventIfPresent(Movie movie, Guild guild){
-        Long eventId = movie.getScheduledEventId();
-        if(eventId == null) return;
-
-        guild.retrieveScheduledEventById(eventId).queue(
-                event -> event.delete().queue(
-                        success -> System.out.println("Deleted event for " +movie.getTitle()),
-                        error -> System.out.println("Failed to delete event for " + movie.getTitle())
-                ),
-                error -> System.err.println("Scheduled event not found for " + movie.getTitle())
-        );
-    }
 }
@@ -0,0 +1,447 @@
+package com.mark.discordbot;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.reflect.TypeToken;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only persistence for a movie list.
+ * <p>
+ *     The list is stored as a snapshot file plus a journal of the changes made since that snapshot. Each add, remove, or
+ *     update is appended to the journal as one JSON line, so a mutation costs a single small write no matter how long
+ *     the list is. The snapshot is rewritten (compacted) on load if the journal holds any records or is damaged, and
+ *     after every {@link #COMPACT_EVERY} records. Loading a list that has no files yet, or whose journal is empty,
+ *     writes nothing.
+ * </p>
+ * <p>
+ *     The journal keeps its own copy of the list as of the last appended record, so a compaction always writes a
+ *     snapshot that matches the journal exactly. The snapshot is written to a temporary file, fsynced, and renamed over
+ *     the old one, and a torn last journal line is discarded on load, so a crash in the middle of a write never loses
+ *     the list.
+ * </p>
+ * <p>
+ *     Every compaction starts a new generation. The snapshot records its generation, and the journal starts with a
+ *     header line naming the generation its records apply to. A crash after the new snapshot is renamed into place but
+ *     before the journal is reset leaves a journal from the previous generation, which load skips instead of applying
+ *     its records a second time. A journal without a header is skipped the same way.
+ * </p>
+ */
+public class MovieJournal {
+
+    /**
+     * Number of journal records after which the snapshot is rewritten and the journal truncated.
+     */
+    private static final int COMPACT_EVERY = 50;
+
+    /**
+     * Gson instance for the human-readable snapshot.
+     */
+    private static final Gson SNAPSHOT_GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    /**
+     * Gson instance for journal records, which must fit on one line.
+     */
+    private static final Gson RECORD_GSON = new Gson();
+
+    /**
+     * The kind of change a journal record describes.
+     */
+    public enum Op { ADD, REMOVE, UPDATE }
+
+    /**
+     * One change to the movie list.
+     * @param op the kind of change
+     * @param index the list position affected, unused for {@link Op#ADD}
+     * @param movie the added or updated movie, unused for {@link Op#REMOVE}
+     */
+    public record Record(Op op, int index, Movie movie) {}
+
+    /**
+     * The snapshot file's contents.
+     * @param generation the compaction that wrote it
+     * @param movies the list
+     */
+    private record SnapshotFile(long generation, List<Movie> movies) {}
+
+    /**
+     * The journal's first line.
+     * @param generation the snapshot generation the journal's records apply to
+     */
+    private record Header(long generation) {}
+
+    /**
+     * Snapshot of the list as of the last compaction.
+     */
+    private final Path snapshotFile;
+
+    /**
+     * Changes made since the snapshot, one JSON record per line.
+     */
+    private final Path journalFile;
+
+    /**
+     * The list as of the last appended record.
+     */
+    private final List<Movie> state = new ArrayList<>();
+
+    /**
+     * Open handle on the journal, or {@code null} before {@link #load()}.
+     */
+    private FileChannel journal;
+
+    /**
+     * Number of records appended since the last compaction.
+     */
+    private int recordsSinceCompaction;
+
+    /**
+     * Generation of the current snapshot.
+     */
+    private long generation;
+
+    /**
+     * Whether the journal holds a header for the current generation and nothing torn, so records may be appended to it.
+     * When {@code false}, every change is written by compacting instead.
+     */
+    private boolean journalReady;
+
+    /**
+     * Constructs a journal for the given snapshot file. The journal lives next to it with a {@code .journal} suffix.
+     * @param snapshotFile the snapshot file
+     */
+    public MovieJournal(Path snapshotFile) {
+        this.snapshotFile = snapshotFile;
+        this.journalFile = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".journal");
+    }
+
+    /**
+     * Loads the list by reading the snapshot and replaying the journal, then compacts both into a fresh snapshot if the
+     * journal held anything.
+     * <p>
+     *     If the journal ends in a partial record (from a crash mid-append) that record is dropped. An unreadable
+     *     snapshot is kept aside as {@code .corrupt} rather than silently overwritten. When there is no journal yet, no
+     *     file is written until the first change, which then writes the snapshot.
+     * </p>
+     * @return the loaded movie list
+     */
+    public synchronized List<Movie> load() {
+        SnapshotFile snapshot = readSnapshot();
+        List<Movie> movies = new ArrayList<>(snapshot.movies());
+        generation = snapshot.generation();
+
+        int replayed = replayJournal(movies);
+        if (replayed > 0) {
+            System.out.println("Replayed " + replayed + " journal records from " + journalFile);
+        }
+
+        state.clear();
+        state.addAll(movies);
+
+        //a clean, empty journal already matches the snapshot, and a missing one is started by the first append
+        if (replayed > 0 || (!journalReady && Files.exists(journalFile))) {
+            compact();
+        }
+        return movies;
+    }
+
+    /**
+     * Appends a batch of changes to the journal in a single write, compacting instead if enough records have built up.
+     * @param records the changes to append, in order
+     */
+    public synchronized void append(List<Record> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+
+        StringBuilder lines = new StringBuilder();
+        for (Record record : records) {
+            apply(record, state);
+            lines.append(RECORD_GSON.toJson(record)).append('\n');
+        }
+
+        if (!journalReady) {
+            //an earlier write failed and the journal may end in a torn record, so only a full snapshot is safe
+            compact();
+            return;
+        }
+
+        try {
+            openJournal();
+            write(lines.toString());
+            journal.force(false);
+            recordsSinceCompaction += records.size();
+        } catch (IOException e) {
+            //the journal is unusable, so fall back to a full snapshot
+            Metrics.STORAGE_FAILURES.increment();
+            System.err.println("Could not append to " + journalFile);
+            e.printStackTrace();
+            journalReady = false;
+            compact();
+            return;
+        }
+
+        //the records are durable in the journal, so a failed compaction here loses nothing
+        if (recordsSinceCompaction > COMPACT_EVERY) {
+            compact();
+        }
+    }
+
+    /**
+     * Rewrites the snapshot from the journal's copy of the list as a new generation, then starts an empty journal for
+     * that generation.
+     * <p>
+     *     If the snapshot cannot be written, the old snapshot and journal are left as they were. Changes that were
+     *     already in the journal are safe; changes that could not be appended exist only in memory until a later
+     *     compaction succeeds.
+     * </p>
+     */
+    public synchronized void compact() {
+        Path tmp = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+        long next = generation + 1;
+
+        try {
+            try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                SNAPSHOT_GSON.toJson(new SnapshotFile(next, state), writer);
+            }
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            Files.move(tmp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            forceDirectory();
+        } catch (IOException e) {
+            Metrics.STORAGE_FAILURES.increment();
+            System.err.println("Could not compact " + snapshotFile);
+            e.printStackTrace();
+            return;
+        }
+
+        //from here the new snapshot is in place; a crash before the header is written leaves an older journal, skipped on load
+        generation = next;
+        recordsSinceCompaction = 0;
+
+        try {
+            openJournal();
+            journal.truncate(0);
+            write(RECORD_GSON.toJson(new Header(generation)) + "\n");
+            journal.force(true);
+            journalReady = true;
+        } catch (IOException e) {
+            Metrics.STORAGE_FAILURES.increment();
+            System.err.println("Could not reset " + journalFile + "; compacting on every change until it can be");
+            e.printStackTrace();
+            journalReady = false;
+        }
+    }
+
+    /**
+     * Closes the journal file. The journal is reopened if it is appended to again.
+     */
+    public synchronized void close() {
+        if (journal == null) {
+            return;
+        }
+
+        try {
+            journal.close();
+        } catch (IOException e) {
+            System.err.println("Could not close " + journalFile);
+        }
+        journal = null;
+    }
+
+    /**
+     * Reads the snapshot file.
+     * @return the snapshot, or an empty generation 0 snapshot if there is none
+     */
+    private SnapshotFile readSnapshot() {
+        if (!Files.exists(snapshotFile)) {
+            return new SnapshotFile(0, List.of());
+        }
+
+        try (Reader reader = Files.newBufferedReader(snapshotFile, StandardCharsets.UTF_8)) {
+            JsonElement root = JsonParser.parseReader(reader);
+
+            //an empty file parses as JSON null
+            if (root.isJsonNull()) {
+                return new SnapshotFile(0, List.of());
+            }
+
+            JsonObject object = root.getAsJsonObject();
+            JsonElement savedGeneration = object.get("generation");
+            if (savedGeneration == null) {
+                throw new JsonParseException("Snapshot has no generation");
+            }
+            Type listType = new TypeToken<List<Movie>>(){}.getType();
+            List<Movie> movies = SNAPSHOT_GSON.fromJson(object.get("movies"), listType);
+            return new SnapshotFile(savedGeneration.getAsLong(), movies != null ? movies : List.of());
+
+        } catch (IOException | JsonParseException | IllegalStateException | UnsupportedOperationException
+                 | NumberFormatException e) {
+            Path corrupt = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".corrupt");
+            System.err.println("Could not read " + snapshotFile + ", moving it to " + corrupt);
+            try {
+                Files.move(snapshotFile, corrupt, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException moveError) {
+                moveError.printStackTrace();
+            }
+            return new SnapshotFile(0, List.of());
+        }
+    }
+
+    /**
+     * Applies every complete journal record to the list, if the journal belongs to the snapshot's generation.
+     * <p>
+     *     Leaves {@link #journalReady} set only if the journal starts with this generation's header and every line after
+     *     it was read, so that more records can be appended to it as it is.
+     * </p>
+     * @param movies the snapshot list to apply the records to
+     * @return the number of records applied
+     */
+    private int replayJournal(List<Movie> movies) {
+        journalReady = false;
+        if (!Files.exists(journalFile)) {
+            return 0;
+        }
+
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(journalFile);
+        } catch (IOException e) {
+            System.err.println("Could not read " + journalFile);
+            return 0;
+        }
+
+        int applied = 0;
+        int lineStart = 0;
+        boolean first = true;
+        boolean headed = false;
+        boolean damaged = false;
+
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] != '\n') {
+                continue;
+            }
+
+            String line = new String(bytes, lineStart, i - lineStart, StandardCharsets.UTF_8);
+            lineStart = i + 1;
+
+            if (line.isBlank()) {
+                continue;
+            }
+
+            if (first) {
+                first = false;
+                if (!isHeader(line)) {
+                    System.err.println("Skipping " + journalFile + ": it does not start with a header");
+                    return 0;
+                }
+
+                long journalGeneration = RECORD_GSON.fromJson(line, Header.class).generation();
+                if (journalGeneration != generation) {
+                    System.err.println("Skipping " + journalFile + ": it is for generation " + journalGeneration
+                            + " but the snapshot is generation " + generation);
+                    return 0;
+                }
+                headed = true;
+                continue;
+            }
+
+            try {
+                apply(RECORD_GSON.fromJson(line, Record.class), movies);
+                applied++;
+            } catch (JsonParseException | IndexOutOfBoundsException e) {
+                System.err.println("Skipping bad journal record in " + journalFile + ": " + line);
+                damaged = true;
+            }
+        }
+
+        if (lineStart < bytes.length) {
+            //no trailing newline, so the last record was cut off mid-write
+            System.err.println("Discarding partial journal record in " + journalFile);
+            damaged = true;
+        }
+
+        journalReady = headed && !damaged;
+        return applied;
+    }
+
+    /**
+     * Checks whether a journal line is a header rather than a record.
+     * @param line the line
+     * @return whether it is a header
+     */
+    private static boolean isHeader(String line) {
+        try {
+            JsonObject object = JsonParser.parseString(line).getAsJsonObject();
+            return object.has("generation") && !object.has("op");
+        } catch (JsonParseException | IllegalStateException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Writes text to the end of the journal.
+     * @param text the text
+     * @throws IOException if the write fails
+     */
+    private void write(String text) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            journal.write(buffer);
+        }
+    }
+
+    /**
+     * Flushes the snapshot's directory, so the rename of a new snapshot survives a crash. Some platforms cannot open a
+     * directory for this, in which case the rename is only as durable as the file system makes it.
+     */
+    private void forceDirectory() {
+        Path dir = snapshotFile.toAbsolutePath().getParent();
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            //not supported on this platform
+        }
+    }
+
+    /**
+     * Applies one journal record to a list.
+     * @param record the record to apply
+     * @param movies the list to change
+     */
+    private static void apply(Record record, List<Movie> movies) {
+        switch (record.op()) {
+            case ADD -> movies.add(record.movie());
+            case REMOVE -> movies.remove(record.index());
+            case UPDATE -> movies.set(record.index(), record.movie());
+        }
+    }
+
+    /**
+     * Opens the journal for appending if it is not already open.
+     * @throws IOException if the journal cannot be opened
+     */
+    private void openJournal() throws IOException {
+        if (journal == null) {
+            journal = FileChannel.open(journalFile,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+    }
+}
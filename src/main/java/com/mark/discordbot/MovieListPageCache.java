@@ -0,0 +1,125 @@
+package com.mark.discordbot;
+
+import net.dv8tion.jda.api.components.buttons.Button;
+import net.dv8tion.jda.api.entities.MessageEmbed;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cache of rendered /movielist pages.
+ * <p>
+ *     Pages are keyed by guild, snapshot version, and page number, so a page rendered from an older list can never be
+ *     served for a newer one. Paging back and forth through an unchanged list is a map lookup instead of a rebuild.
+ *     {@link MovieStorage} reports every change, and the changed guild's pages are dropped straight away rather than
+ *     waiting to age out. The cache holds a fixed number of pages across all guilds, dropping the least recently used.
+ * </p>
+ */
+public class MovieListPageCache {
+
+    /**
+     * Default number of pages kept across all guilds.
+     */
+    private static final int DEFAULT_MAX_PAGES = 1000;
+
+    /**
+     * A rendered page.
+     * @param page the zero-based page number
+     * @param totalPages the number of pages in the list it was rendered from
+     * @param embed the page embed
+     * @param buttons the previous and next buttons, in that order
+     */
+    public record Page(int page, int totalPages, MessageEmbed embed, List<Button> buttons) {}
+
+    /**
+     * Identifies a rendered page.
+     * @param guildId the guild ID
+     * @param version the snapshot version it was rendered from
+     * @param page the zero-based page number
+     */
+    private record Key(long guildId, long version, int page) {}
+
+    /**
+     * Maximum number of pages kept.
+     */
+    private final int maxPages;
+
+    /**
+     * Rendered pages, least recently used first. Guarded by {@code this}.
+     */
+    private final LinkedHashMap<Key, Page> pages;
+
+    /**
+     * Constructs a cache holding the default number of pages.
+     */
+    public MovieListPageCache() {
+        this(DEFAULT_MAX_PAGES);
+    }
+
+    /**
+     * Constructs a cache.
+     * @param maxPages the maximum number of pages kept across all guilds
+     */
+    public MovieListPageCache(int maxPages) {
+        if (maxPages <= 0) {
+            throw new IllegalArgumentException("Page cache size must be positive");
+        }
+
+        this.maxPages = maxPages;
+        this.pages = new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Page> eldest) {
+                return size() > MovieListPageCache.this.maxPages;
+            }
+        };
+    }
+
+    /**
+     * Returns a rendered page of a guild's list, rendering it on a miss.
+     * @param guildId the guild ID
+     * @param snapshot the list to render
+     * @param page the zero-based page number, moved into range if the list has fewer pages
+     * @return the rendered page
+     */
+    public Page get(long guildId, MovieStorage.Snapshot snapshot, int page) {
+        int totalPages = MovieListRenderer.computeTotalPages(snapshot.movies());
+        int clamped = Math.max(0, Math.min(page, totalPages - 1));
+        Key key = new Key(guildId, snapshot.version(), clamped);
+
+        synchronized (this) {
+            Page cached = pages.get(key);
+            if (cached != null) {
+                Metrics.LIST_PAGE_HITS.increment();
+                return cached;
+            }
+        }
+
+        //rendered outside the lock; two threads racing on the same page build identical copies
+        Metrics.LIST_PAGE_MISSES.increment();
+        Page rendered = new Page(clamped, totalPages,
+                MovieListRenderer.buildMovieListEmbed(snapshot, clamped),
+                MovieListRenderer.buildPageButtons(snapshot, clamped));
+
+        synchronized (this) {
+            pages.put(key, rendered);
+        }
+        return rendered;
+    }
+
+    /**
+     * Drops every page rendered for a guild.
+     * @param guildId the guild ID
+     */
+    public synchronized void invalidate(long guildId) {
+        pages.keySet().removeIf(key -> key.guildId() == guildId);
+    }
+
+    /**
+     * Returns the number of pages held.
+     * @return the cached page count
+     */
+    public synchronized int size() {
+        return pages.size();
+    }
+}
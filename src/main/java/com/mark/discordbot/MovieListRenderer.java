@@ -0,0 +1,112 @@
+package com.mark.discordbot;
+
+import net.dv8tion.jda.api.EmbedBuilder;
+import net.dv8tion.jda.api.components.buttons.Button;
+import net.dv8tion.jda.api.entities.MessageEmbed;
+
+import java.util.List;
+
+/**
+ * Renders pages of a guild's movie list for the /movielist embed.
+ * <p>
+ *     Rendering only reads a {@link MovieStorage.Snapshot}, so the embed, buttons, and page count for one response all
+ *     describe the same list.
+ * </p>
+ */
+public class MovieListRenderer {
+
+    /**
+     * Number of movies displayed per page in the movie list.
+     */
+    public static final int PAGE_SIZE = 5;
+
+    /**
+     * Not instantiable; all methods are static.
+     */
+    private MovieListRenderer() {
+    }
+
+    /**
+     * Builds the embed for one page of the list. The first page shows the next movie with its poster, and later pages
+     * list {@link #PAGE_SIZE} movies each.
+     * @param snapshot the guild's movie list
+     * @param page the zero-based page number
+     * @return the page embed
+     */
+    public static MessageEmbed buildMovieListEmbed(MovieStorage.Snapshot snapshot, int page) {
+        var movies = snapshot.movies();
+        int totalPages = computeTotalPages(movies);
+
+        EmbedBuilder eb = new EmbedBuilder();
+        eb.setTitle("Movie List");
+        eb.setColor(0x570000);
+        eb.setFooter("Page " + (page + 1) + " of " + totalPages);
+
+        if (movies.isEmpty()) {
+            eb.setDescription("The list is empty.");
+            return eb.build();
+        }
+
+        if(page == 0){
+            Movie next = movies.getFirst();
+
+            eb.setDescription("Next Up: " + next.getTitle() + " (" + next.getYear() + ")");
+            if (next.getPosterURL() != null && !next.getPosterURL().isBlank()){
+                eb.setImage(next.getPosterURL()); //set image
+            }
+
+            return eb.build();
+
+        }
+
+            int start = 1 + (page -1) * PAGE_SIZE;
+            int end = Math.min(start + PAGE_SIZE, movies.size());
+
+            for (int i = start; i < end; i++) {
+
+                Movie m = movies.get(i);
+                String heading = (i + 1) + ". " + m.getTitle();
+                StringBuilder value = new StringBuilder("Year: " + m.getYear());
+
+                if (m.getPosterURL() != null && !m.getPosterURL().isBlank()) {
+                    value.append("\n[Poster](").append(m.getPosterURL()).append(")");
+                    // you could also set the thumbnail to the first movie on page if you like
+                }
+                eb.addField(heading, value.toString(), false);
+            }
+
+
+        return eb.build();
+    }
+
+    /**
+     * Builds the previous and next buttons for a page.
+     * @param snapshot the guild's movie list
+     * @param currentPage the zero-based page being shown
+     * @return the previous and next buttons, in that order
+     */
+    public static List<Button> buildPageButtons(MovieStorage.Snapshot snapshot, int currentPage) {
+        var movies = snapshot.movies();
+        int totalPages = computeTotalPages(movies);
+
+        Button prev = Button.primary("movie_page_prev_" + currentPage, "◀ Previous")
+                .withDisabled(currentPage == 0);
+
+        Button next = Button.primary("movie_page_next_" + currentPage, "Next ▶")
+                .withDisabled(currentPage >= totalPages - 1);
+
+        return List.of(prev, next);
+    }
+
+    /**
+     * Returns the number of pages needed to show a list.
+     * @param movies the movies
+     * @return the page count, at least one
+     */
+    public static int computeTotalPages(List<Movie> movies){
+        if (movies.isEmpty()){
+            return  1;
+        }
+        return Math.max(1, (int) Math.ceil((movies.size() -1) / (double) PAGE_SIZE) + 1);
+    }
+}
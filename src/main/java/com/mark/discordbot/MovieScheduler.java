@@ -1,17 +1,21 @@
 package com.mark.discordbot;
 
 import net.dv8tion.jda.api.entities.Guild;
-import net.dv8tion.jda.api.entities.ScheduledEvent;
 import net.dv8tion.jda.api.entities.channel.concrete.VoiceChannel;
 
 import java.time.*;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
 
 /**
  * Handles the creation and scheduling of Discord "Movie Night"  scheduled events.
  * <p>
- *     This class determines the next available weekly timeslot for a movie, ensuring that there are no conflicts with
- *     existing Discord scheduled events and respecting runtime constraints for different days.
+ *     This class plans weekly timeslots for a guild's queue, ensuring that there are no conflicts with existing Discord
+ *     scheduled events and respecting runtime constraints for different days. Existing events are read from a
+ *     {@link ScheduledEventIndex} rather than fetched from Discord on every rebuild.
  * </p>
  */
 public class MovieScheduler {
@@ -40,175 +44,397 @@ public class MovieScheduler {
      * The name of the voice channel where the events are scheduled.
      */
     private static final String MOVIE_CHANNEL_NAME = "🍿movie-theatre";
+
     /**
-     * Represents a recurring weekly movie slot
-     * @param day day of the week the slot occurs
-     * @param time start time of the slot
-     * @param longAllowed whether long movies are allowed in this slot
+     * Prefix of every scheduled event name the bot manages.
      */
-    private record WeeklySlot(DayOfWeek day, LocalTime time, boolean longAllowed) {}
+    private static final String EVENT_NAME_PREFIX = "Movie Night - ";
 
     /**
-     * List of all allowed weekly movie slots.
+     * Default number of weeks ahead to look for a free slot.
      */
-    private final List<WeeklySlot> slots = List.of(
-            new WeeklySlot(DayOfWeek.SUNDAY, LocalTime.of(18, 30), true),
-            new WeeklySlot(DayOfWeek.SUNDAY, LocalTime.of(21, 0), false),
-            new WeeklySlot(DayOfWeek.TUESDAY, LocalTime.of(19, 45), false),
-            new WeeklySlot(DayOfWeek.THURSDAY, LocalTime.of(19, 45), false)
-    );
+    private static final int DEFAULT_HORIZON_WEEKS = 52;
 
     /**
-     * Finds the next available time slot for a movie that does not conflict with existing scheduled Discord events.
-     * @param runtime movie runtime in minutes
-     * @param movie the movie being scheduled
-     * @param guild the Discord guild where the event will be created
-     * @return the start time of the next available slot
+     * The kinds of change the queue planner can ask for.
      */
-    public OffsetDateTime findNextAvailableSlot(int runtime, Movie movie, Guild guild) {
-
-        ZonedDateTime searchBase = ZonedDateTime.now(ZONE);
+    public enum ActionKind {
+        /** Create an event for a movie that has none. */
+        CREATE,
+        /** Move a movie's existing event to a new slot. */
+        MODIFY,
+        /** Delete a movie event whose movie is no longer queued. */
+        DELETE,
+        /** Record an existing, correctly placed event against a movie that did not know its ID. */
+        LINK
+    }
 
-        List<ScheduledEvent> events = guild.retrieveScheduledEvents().complete();
+    /**
+     * One change needed to bring a guild's scheduled events in line with its queue.
+     * @param kind the kind of change
+     * @param movie the movie affected, or {@code null} for {@link ActionKind#DELETE}
+     * @param eventId the existing event ID, or {@code 0} for {@link ActionKind#CREATE}
+     * @param start the planned start time, or {@code null} for {@link ActionKind#DELETE}
+     * @param end the planned end time, or {@code null} for {@link ActionKind#DELETE}
+     */
+    public record ScheduleAction(ActionKind kind, Movie movie, long eventId, OffsetDateTime start, OffsetDateTime end) {}
 
-        while (true) {
 
-            for (WeeklySlot slot : slots) {
+    /**
+     * List of all allowed weekly movie slots.
+     */
+    private static final List<SlotCalendar.WeeklySlot> SLOTS = List.of(
+            new SlotCalendar.WeeklySlot(DayOfWeek.SUNDAY, LocalTime.of(18, 30), true),
+            new SlotCalendar.WeeklySlot(DayOfWeek.SUNDAY, LocalTime.of(21, 0), false),
+            new SlotCalendar.WeeklySlot(DayOfWeek.TUESDAY, LocalTime.of(19, 45), false),
+            new SlotCalendar.WeeklySlot(DayOfWeek.THURSDAY, LocalTime.of(19, 45), false)
+    );
 
-                if (!slot.longAllowed && runtime > MAX_WEEKDAY_RUNTIME)
-                    continue;
+    /**
+     * Occurrences of the weekly slots over the search horizon.
+     */
+    private final SlotCalendar slotCalendar;
 
-                OffsetDateTime start = nextOccurrence(slot.day, slot.time, searchBase);
-                OffsetDateTime end = start.plusMinutes(runtime + BUFFER_MINUTES);
+    /**
+     * Index of each guild's scheduled events, kept current from gateway events.
+     */
+    private final ScheduledEventIndex eventIndex;
 
-                if (!conflicts(events, guild, movie, start, end)) {
-                    return start;
-                }
-            }
+    /**
+     * Constructs a scheduler that reads existing events from the given index.
+     * <p>
+     *     The number of weeks searched for a free slot can be set with the {@code MOVIE_SCHEDULE_HORIZON_WEEKS}
+     *     environment variable.
+     * </p>
+     * @param eventIndex the scheduled event index
+     */
+    public MovieScheduler(ScheduledEventIndex eventIndex) {
+        this(eventIndex, readHorizonWeeks());
+    }
 
-            //move search one week forward
-            searchBase = searchBase.plusWeeks(1);
-        }
+    /**
+     * Constructs a scheduler that reads existing events from the given index and searches a given number of weeks.
+     * @param eventIndex the scheduled event index
+     * @param horizonWeeks how many weeks ahead to look for a free slot
+     */
+    public MovieScheduler(ScheduledEventIndex eventIndex, int horizonWeeks) {
+        this.eventIndex = eventIndex;
+        this.slotCalendar = new SlotCalendar(ZONE, SLOTS, horizonWeeks);
     }
 
     /**
-     * Calculates the next date and time a given weekly slot occurs relative to a base date.
-     * @param day desired day of the week
-     * @param time desired start time
-     * @param base base date and time to search from
-     * @return the next occurrence as an {@link OffsetDateTime}
+     * The latest queue rebuild per guild. A new rebuild waits for the previous one's Discord calls to finish, so it
+     * always plans against the result. A guild's entry is removed once its latest rebuild finishes.
      */
-    private OffsetDateTime nextOccurrence(DayOfWeek day, LocalTime time, ZonedDateTime base) {
+    private final Map<Long, CompletableFuture<Void>> rebuilds = new ConcurrentHashMap<>();
 
+    /**
+     * Rebuilds a guild's movie night events so that their order matches the queue.
+     * <p>
+     *     Slots for the whole queue are assigned in one in-memory pass by {@link #planQueue}, which is then applied as
+     *     the smallest set of create, modify, and delete calls. The calls are queued together and JDA paces them within
+     *     Discord's rate limits. Rebuilds for the same guild run one after another, and a guild whose events are not
+     *     known yet is planned once the index has fetched them.
+     * </p>
+     * @param guild the Discord guild
+     * @param queue supplies the guild's current queue when the rebuild starts
+     * @param onEventLinked called with a movie and its event ID whenever a movie gets, or is matched to, an event
+     * @return a future that completes once every Discord call has finished
+     */
+    public CompletableFuture<Void> rescheduleQueue(Guild guild, Supplier<List<Movie>> queue,
+                                                   BiConsumer<Movie, Long> onEventLinked) {
+        long guildId = guild.getIdLong();
+        CompletableFuture<Void> rebuild = rebuilds.compute(guildId, (id, previous) ->
+                (previous == null ? CompletableFuture.<Void>completedFuture(null) : previous.exceptionally(e -> null))
+                        .thenComposeAsync(v -> eventIndex.getEvents(guild))
+                        .thenCompose(events -> applyPlan(guild, events, queue.get(), onEventLinked)));
+
+        //only drops the entry if no newer rebuild has been chained on since
+        rebuild.whenComplete((v, e) -> rebuilds.remove(guildId, rebuild));
+        return rebuild;
+    }
 
-        LocalDate date = base.toLocalDate();
+    /**
+     * Plans slots for a whole queue and diffs the plan against the movie channel's existing events.
+     * <p>
+     *     Movies keep their queue order: each movie gets the first free slot after the previous movie's event ends,
+     *     long movies only get slots that allow them, and events that are not movie nights are worked around. Events
+     *     that have already started are left where they are. Movie night events the bot created that match no queued
+     *     movie are deleted; ones made by anyone else are never deleted, only worked around like any other event.
+     * </p>
+     * @param queue the guild's queue, in order
+     * @param channelEvents the scheduled events in the movie channel
+     * @param botUserId the bot's own user ID, to tell the events it created
+     * @param now the time to plan from
+     * @return the changes needed, in queue order followed by deletions
+     */
+    public List<ScheduleAction> planQueue(List<Movie> queue, Collection<ScheduledEventIndex.EventInfo> channelEvents,
+                                          long botUserId, ZonedDateTime now) {
+        long started = System.nanoTime();
+        try {
+            return plan(queue, channelEvents, botUserId, now);
+        } finally {
+            Metrics.QUEUE_PLAN.recordSince(started);
+        }
+    }
 
-        while (date.getDayOfWeek() != day) {
-            date = date.plusDays(1);
+    /**
+     * Performs the planning for {@link #planQueue}.
+     * @param queue the guild's queue, in order
+     * @param channelEvents the scheduled events in the movie channel
+     * @param botUserId the bot's own user ID
+     * @param now the time to plan from
+     * @return the changes needed
+     */
+    private List<ScheduleAction> plan(List<Movie> queue, Collection<ScheduledEventIndex.EventInfo> channelEvents,
+                                      long botUserId, ZonedDateTime now) {
+        Map<Long, ScheduledEventIndex.EventInfo> managed = new LinkedHashMap<>();
+        List<ScheduledEventIndex.EventInfo> obstacles = new ArrayList<>();
+
+        for (ScheduledEventIndex.EventInfo event : channelEvents) {
+            if (event.name().startsWith(EVENT_NAME_PREFIX)) {
+                managed.put(event.id(), event);
+            } else {
+                obstacles.add(event);
+            }
         }
 
-        ZonedDateTime candidate = ZonedDateTime.of(date, time, ZONE);
+        //match movies to their events, by ID first and then by name for events made before IDs were saved
+        Map<Movie, ScheduledEventIndex.EventInfo> matched = new IdentityHashMap<>();
+        for (Movie movie : queue) {
+            Long id = movie.getScheduledEventId();
+            if (id != null && managed.containsKey(id)) {
+                matched.put(movie, managed.remove(id));
+            }
+        }
 
-        // If this week's time already passed then use next week
-        if (candidate.isBefore(base)) {
-            candidate = candidate.plusWeeks(1);
+        //events left unmatched by ID, grouped by name so a queue listing a movie twice can claim one each
+        Map<String, Deque<ScheduledEventIndex.EventInfo>> byName = new HashMap<>();
+        for (ScheduledEventIndex.EventInfo event : managed.values()) {
+            byName.computeIfAbsent(event.name(), name -> new ArrayDeque<>()).add(event);
         }
+        for (Movie movie : queue) {
+            if (matched.containsKey(movie)) continue;
 
-        return candidate.toOffsetDateTime();
-    }
+            Deque<ScheduledEventIndex.EventInfo> named = byName.get(eventName(movie));
+            if (named != null && !named.isEmpty()) {
+                ScheduledEventIndex.EventInfo event = named.poll();
+                matched.put(movie, managed.remove(event.id()));
+            }
+        }
 
-    /**
-     * Checks whether a proposed movie event conflicts with existing scheduled events.
-     * <p>
-     *     Conflicts include overlapping time ranges, duplicate movie titles, or missing required Discord channels.
-     * </p>
-     * @param events list of existing scheduled events
-     * @param guild the Discord guild
-     * @param movie the movie being scheduled
-     * @param start proposed start time
-     * @param end proposed end time
-     * @return {@code true} if a conflict exists, {@code false} otherwise
-     */
-    private boolean conflicts(List<ScheduledEvent> events, Guild guild, Movie movie, OffsetDateTime start, OffsetDateTime end) {
+        //movie nights someone else made that match no queued movie are theirs to keep, so they only block their time
+        managed.values().removeIf(e -> {
+            if (e.creatorId() == botUserId) {
+                return false;
+            }
+            obstacles.add(e);
+            return true;
+        });
 
-        var movieChannel = getMovieChannel(guild);
+        //events that have started stay put and block their time
+        OffsetDateTime planStart = now.toOffsetDateTime();
+        matched.values().stream()
+                .filter(e -> !e.start().isAfter(planStart))
+                .forEach(obstacles::add);
 
-        //If the channel does not exist, blocks scheduling to avoid unsafe overlaps.
-        if (movieChannel == null){
-            System.err.println("Error: Could not find " + MOVIE_CHANNEL_NAME + " voice channel.");
-            return true;
-        }
+        EventCalendar calendar = new EventCalendar(obstacles, DEFAULT_EVENT_DURATION_HOURS);
+        List<SlotCalendar.Slot> candidates = slotCalendar.upcoming(now).toList();
 
-        for (ScheduledEvent event : events) {
-            var eventChannel = event.getChannel();
+        List<ScheduleAction> actions = new ArrayList<>();
+        int next = 0;
+        OffsetDateTime previousEnd = null;
 
-            //ignore events for other channels
-            if (eventChannel == null || !event.getChannel().getId().equals(movieChannel.getId()))
+        for (Movie movie : queue) {
+            ScheduledEventIndex.EventInfo existing = matched.get(movie);
+            int runtime = movie.getRuntimeMinutes();
+
+            if (existing != null && !existing.start().isAfter(planStart)) {
+                previousEnd = later(previousEnd, endOf(existing));
+                linkIfNeeded(actions, movie, existing);
                 continue;
+            }
+
+            OffsetDateTime start = null;
+            OffsetDateTime end = null;
+
+            for (; next < candidates.size(); next++) {
+                SlotCalendar.Slot candidate = candidates.get(next);
+
+                if (!candidate.longAllowed() && runtime > MAX_WEEKDAY_RUNTIME)
+                    continue;
+
+                OffsetDateTime candidateEnd = candidate.start().plusMinutes(runtime + BUFFER_MINUTES);
 
-            //prevent duplicate movies
-            if (event.getName().equals("Movie Night - " + movie.getTitle()))
-                return true;
+                //touching counts as overlapping, so the slot must start strictly after the previous movie
+                if (previousEnd != null && !candidate.start().isAfter(previousEnd))
+                    continue;
 
-            OffsetDateTime eStart = event.getStartTime();
-            OffsetDateTime eEnd = event.getEndTime();
+                if (calendar.findOverlap(candidate.start(), candidateEnd) != null)
+                    continue;
 
-            if( eEnd == null){
-                eEnd = eStart.plusHours(DEFAULT_EVENT_DURATION_HOURS); //assume 3 hours if dc has no end time
+                start = candidate.start();
+                end = candidateEnd;
+                next++;
+                break;
             }
 
-            if (overlaps(start, end, eStart, eEnd)) {
-                System.out.println("Slot blocked by existing event: " + event.getName());
-                return true;
+            if (start == null) {
+                System.err.println("No slot within " + slotCalendar.getHorizonWeeks() + " weeks for " + movie.getTitle());
+                if (existing != null) {
+                    linkIfNeeded(actions, movie, existing);
+                }
+                continue;
+            }
+
+            previousEnd = end;
+
+            if (existing == null) {
+                actions.add(new ScheduleAction(ActionKind.CREATE, movie, 0, start, end));
+            } else if (existing.start().isEqual(start) && existing.end() != null && existing.end().isEqual(end)) {
+                linkIfNeeded(actions, movie, existing);
+            } else {
+                actions.add(new ScheduleAction(ActionKind.MODIFY, movie, existing.id(), start, end));
             }
         }
 
-        return false;
+        //movie nights the bot made that are left over belong to movies that are no longer queued
+        for (ScheduledEventIndex.EventInfo orphan : managed.values()) {
+            if (orphan.start().isAfter(planStart)) {
+                actions.add(new ScheduleAction(ActionKind.DELETE, null, orphan.id(), null, null));
+            }
+        }
+
+        return actions;
     }
 
     /**
-     * Determines whether two time intervals overlap.
-     * @param start1 the start of event one
-     * @param end1 the end of event one
-     * @param start2 the start of event two
-     * @param end2 the end of event two
-     * @return {@code true} if the two events overlap, {@code false} otherwise
+     * Plans a guild's queue and issues the resulting Discord calls.
+     * @param guild the Discord guild
+     * @param events the guild's scheduled events
+     * @param queue the guild's queue
+     * @param onEventLinked called with a movie and its event ID whenever a movie gets, or is matched to, an event
+     * @return a future that completes once every call has finished
      */
-    private boolean overlaps(OffsetDateTime start1, OffsetDateTime end1,
-                             OffsetDateTime start2, OffsetDateTime end2) {
-        return !(end1.isBefore(start2) || start1.isAfter(end2));
+    private CompletableFuture<Void> applyPlan(Guild guild, Collection<ScheduledEventIndex.EventInfo> events,
+                                              List<Movie> queue, BiConsumer<Movie, Long> onEventLinked) {
+        var channel = getMovieChannel(guild);
+
+        if (channel == null) {
+            System.err.println("Error: Could not find " + MOVIE_CHANNEL_NAME + " voice channel.");
+            return CompletableFuture.completedFuture(null);
+        }
+
+        long guildId = guild.getIdLong();
+        List<ScheduledEventIndex.EventInfo> channelEvents = events.stream()
+                .filter(e -> e.channelId() == channel.getIdLong())
+                .toList();
+
+        List<ScheduleAction> actions = planQueue(queue, channelEvents, guild.getJDA().getSelfUser().getIdLong(),
+                ZonedDateTime.now(ZONE));
+        List<CompletableFuture<?>> calls = new ArrayList<>();
+
+        for (ScheduleAction action : actions) {
+            Movie movie = action.movie();
+
+            CompletableFuture<?> call = switch (action.kind()) {
+                case CREATE -> guild.createScheduledEvent(eventName(movie), channel, action.start())
+                        .setEndTime(action.end())
+                        .setDescription(eventDescription(movie))
+                        .submit()
+                        .thenAccept(event -> {
+                            eventIndex.put(event);
+                            onEventLinked.accept(movie, event.getIdLong());
+                            System.out.println("Created event for: " + movie.getTitle() + " (eventId=" + event.getId() + ")");
+                        });
+
+                case MODIFY -> guild.retrieveScheduledEventById(action.eventId())
+                        .flatMap(event -> event.getManager()
+                                .setStartTime(action.start())
+                                .setEndTime(action.end())
+                                .map(ignored -> event.getCreatorIdLong()))
+                        .submit()
+                        .thenAccept(creatorId -> {
+                            eventIndex.record(guildId, new ScheduledEventIndex.EventInfo(action.eventId(),
+                                    eventName(movie), channel.getIdLong(), action.start(), action.end(), null,
+                                    creatorId));
+                            onEventLinked.accept(movie, action.eventId());
+                            System.out.println("Moved event for: " + movie.getTitle() + " to " + action.start());
+                        });
+
+                case DELETE -> guild.retrieveScheduledEventById(action.eventId())
+                        .flatMap(event -> event.delete())
+                        .submit()
+                        .thenRun(() -> {
+                            eventIndex.forget(guildId, action.eventId());
+                            System.out.println("Deleted event " + action.eventId());
+                        });
+
+                case LINK -> {
+                    onEventLinked.accept(movie, action.eventId());
+                    yield CompletableFuture.completedFuture(null);
+                }
+            };
+
+            calls.add(call.exceptionally(error -> {
+                Metrics.DISCORD_REST_ERRORS.increment();
+                System.err.println("Failed to " + action.kind().name().toLowerCase(Locale.ROOT) + " event"
+                        + (movie != null ? " for " + movie.getTitle() : " " + action.eventId()));
+                error.printStackTrace();
+                return null;
+            }));
+        }
+
+        return CompletableFuture.allOf(calls.toArray(CompletableFuture[]::new));
     }
 
     /**
-     * Creates a scheduled Discord event for a movie night.
-     * @param guild the Discord guild where the event will be created
-     * @param movie the movie being shown
-     * @param start event start time
-     * @param end event end time
+     * Adds a {@link ActionKind#LINK} action if a movie does not yet know the ID of the event it was matched to.
+     * @param actions the actions being planned
+     * @param movie the movie
+     * @param event the movie's event
      */
-    public void createDiscordEvent(Guild guild, Movie movie, OffsetDateTime start, OffsetDateTime end) {
+    private static void linkIfNeeded(List<ScheduleAction> actions, Movie movie, ScheduledEventIndex.EventInfo event) {
+        if (movie.getScheduledEventId() == null || movie.getScheduledEventId() != event.id()) {
+            actions.add(new ScheduleAction(ActionKind.LINK, movie, event.id(), event.start(), event.end()));
+        }
+    }
 
-        var channel = getMovieChannel(guild);
+    /**
+     * Returns when an event ends, assuming the default duration if it has no end time.
+     * @param event the event
+     * @return the end time
+     */
+    private static OffsetDateTime endOf(ScheduledEventIndex.EventInfo event) {
+        return event.end() != null ? event.end() : event.start().plusHours(DEFAULT_EVENT_DURATION_HOURS);
+    }
 
-        if (channel == null) {
-            System.err.println("Error: Could not find " + MOVIE_CHANNEL_NAME +" voice channel.");
-            return;
-        }
+    /**
+     * Returns the later of two times.
+     * @param a a time, or {@code null}
+     * @param b another time
+     * @return the later time
+     */
+    private static OffsetDateTime later(OffsetDateTime a, OffsetDateTime b) {
+        return a == null || b.isAfter(a) ? b : a;
+    }
 
-        var action = guild.createScheduledEvent("Movie Night - " + movie.getTitle(), channel, start)
-                .setEndTime(end)
-                .setDescription("Movie Night: " + movie.getTitle() + " (" + movie.getYear() + ")");
+    /**
+     * Returns the scheduled event name used for a movie.
+     * @param movie the movie
+     * @return the event name
+     */
+    private static String eventName(Movie movie) {
+        return EVENT_NAME_PREFIX + movie.getTitle();
+    }
 
-                action.queue(
-                        event ->{
-                            movie.setScheduledEventId(event.getIdLong());
-                            System.out.println("Created event for: " + movie.getTitle() + " (eventId=" + event.getId() + ")");
-                        },
-                        error ->{
-                            System.err.println("Failed to create event for " + movie.getTitle());
-                            error.printStackTrace();
-                        }
-                );
+    /**
+     * Returns the scheduled event description used for a movie.
+     * @param movie the movie
+     * @return the event description
+     */
+    private static String eventDescription(Movie movie) {
+        return "Movie Night: " + movie.getTitle() + " (" + movie.getYear() + ")";
     }
 
     /**
@@ -223,4 +449,22 @@ public class MovieScheduler {
                 .findFirst()
                 .orElse(null);
     }
+
+    /**
+     * Reads the slot search horizon from the environment.
+     * @return the configured number of weeks, or the default if unset or invalid
+     */
+    private static int readHorizonWeeks() {
+        String value = System.getenv("MOVIE_SCHEDULE_HORIZON_WEEKS");
+        if (value == null) {
+            return DEFAULT_HORIZON_WEEKS;
+        }
+
+        try {
+            return Math.max(1, Integer.parseInt(value.trim()));
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid MOVIE_SCHEDULE_HORIZON_WEEKS: " + value);
+            return DEFAULT_HORIZON_WEEKS;
+        }
+    }
 }
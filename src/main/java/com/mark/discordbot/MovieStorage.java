@@ -1,104 +1,581 @@
 package com.mark.discordbot;
 
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
 import com.google.gson.reflect.TypeToken;
-import java.io.*;
-import java.lang.reflect.Type;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
 
 /**
- *Handles the storage of {@link Movie} objects using a JSON file.
+ *Handles the storage of {@link Movie} objects using a JSON file per Discord guild.
+ * <p>
+ * Each guild has its own movie list in its own file, loaded lazily the first time the guild is used. Only a bounded
+ * number of guild lists are kept in memory; the least recently used list is dropped once that cap is reached and is
+ * simply loaded again the next time it is needed. A dropped list's journal is closed by the {@link StorageWriter} once
+ * its pending records are written, and the list is not read back until that has happened.
+ * </p>
+ * <p>
+ * Readers get an immutable, versioned {@link Snapshot} of a guild's list without taking any lock. Writers are
+ * serialized per guild and publish a new snapshot after each change, so a slow change in one guild never blocks
+ * another guild or any reader.
+ * </p>
  * <p>
- * Movies are loaded from disk on construction adn written back whenever the collection is modified.
+ * Each change is appended to the guild's {@link MovieJournal} rather than rewriting the whole file, and the JSON file is
+ * compacted from the journal periodically and on load. Writes are handed to a {@link StorageWriter} so callers never
+ * wait on disk.
  * </p>
  */
 public class MovieStorage {
 
     /**
-     * Path to the JSON file used for movie storage.
+     * Directory holding one movie file per guild.
+     */
+    private static final String DATA_DIR = "movies";
+
+    /**
+     * Path to the JSON file used for movie storage before lists were split by guild.
+     */
+    private static final String LEGACY_FILE_PATH = "movies.json";
+
+    /**
+     * Default number of guild lists kept in memory at once.
+     */
+    private static final int DEFAULT_MAX_RESIDENT_GUILDS = 100;
+
+    /**
+     * An immutable view of a guild's movie list at one point in time.
+     * @param version a number that changes every time the list changes; never reused, even across guilds
+     * @param movies the movies, in queue order
+     */
+    public record Snapshot(long version, List<Movie> movies) {}
+
+    /**
+     * The result of a title search.
+     * @param snapshot the snapshot the matches were taken from
+     * @param matches the matching movies from that snapshot, best first
+     */
+    public record TitleMatches(Snapshot snapshot, List<TitleIndex.Match> matches) {}
+
+    /**
+     * A guild's current snapshot and the journal that persists it.
+     */
+    private static final class GuildMovies {
+
+        /**
+         * The guild's journal.
+         */
+        private final MovieJournal journal;
+
+        /**
+         * The current list, replaced (never modified) on each change, or {@code null} until the list has been loaded.
+         */
+        private volatile Snapshot snapshot;
+
+        /**
+         * Title index over the current list, or {@code null} until the list has been loaded. Guarded by {@code this}.
+         */
+        private TitleIndex titles;
+
+        /**
+         * When the list was last used, for choosing which list to drop.
+         */
+        private volatile long lastAccess = System.nanoTime();
+
+        /**
+         * Whether this partition has been dropped from memory. Guarded by {@code this}.
+         */
+        private boolean evicted;
+
+        /**
+         * Constructs a partition whose list has not been loaded yet.
+         * @param journal the guild's journal
+         */
+        private GuildMovies(MovieJournal journal) {
+            this.journal = journal;
+        }
+    }
+
+    /**
+     * Directory holding one movie file per guild.
+     */
+    private final Path dataDir;
+
+    /**
+     * Maximum number of guild lists kept in memory.
+     */
+    private final int maxResidentGuilds;
+
+    /**
+     * Background writer that coalesces journal writes.
+     */
+    private final StorageWriter writer;
+
+    /**
+     * Resident guild lists keyed by guild ID.
      */
-    private static final String FILE_PATH = "movies.json";
+    private final Map<Long, GuildMovies> guilds = new ConcurrentHashMap<>();
 
     /**
-     * Gson instance is configured to be human-readable JSon output.
+     * Journals of dropped guild lists that the writer has not closed yet, keyed by guild ID.
      */
-    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+    private final Map<Long, CompletableFuture<Void>> retiring = new ConcurrentHashMap<>();
 
     /**
-     * In-memory list of stored movies.
+     * Source of snapshot versions.
      */
-    private final List<Movie> movies;
+    private final AtomicLong versions = new AtomicLong();
 
     /**
-     * Constructs a {@code MovieStorage} instance and loads any existing movies from persistent storage.
+     * Called with the guild ID after each change to a guild's list.
+     */
+    private final List<LongConsumer> changeListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Constructs a {@code MovieStorage} in the default data directory.
+     * <p>
+     * The number of resident guild lists can be set with the {@code MOVIE_STORAGE_MAX_GUILDS} environment variable.
+     * </p>
      */
     public MovieStorage() {
-        movies = load();
+        this(Path.of(DATA_DIR), readMaxResidentGuilds());
+    }
+
+    /**
+     * Constructs a {@code MovieStorage} in the given directory.
+     * @param dataDir the directory holding one movie file per guild
+     * @param maxResidentGuilds the maximum number of guild lists kept in memory
+     */
+    public MovieStorage(Path dataDir, int maxResidentGuilds) {
+        if (maxResidentGuilds <= 0) {
+            throw new IllegalArgumentException("Resident guild cap must be positive");
+        }
+
+        this.dataDir = dataDir;
+        this.maxResidentGuilds = maxResidentGuilds;
+        this.writer = new StorageWriter();
+
+        try {
+            Files.createDirectories(dataDir);
+        } catch (IOException e) {
+            System.err.println("Could not create movie storage directory " + dataDir);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Returns the maximum number of guild lists kept in memory.
+     * @return the resident guild cap
+     */
+    public int getMaxResidentGuilds() {
+        return maxResidentGuilds;
+    }
+
+    /**
+     * Returns the current snapshot of a guild's movie list, loading it from disk if needed.
+     * <p>
+     * This never blocks on a writer, and the returned snapshot never changes.
+     * </p>
+     * @param guildId the guild ID
+     * @return the guild's current snapshot
+     */
+    public Snapshot getSnapshot(long guildId) {
+        return partition(guildId).snapshot;
     }
 
     /**
-     * Returns the list of currently stored movies.
-     * @return the list of movies
+     * Returns the list of currently stored movies for a guild, loading it from disk if needed.
+     * @param guildId the guild ID
+     * @return an unmodifiable list of movies
+     */
+    public List<Movie> getMovies(long guildId) {
+        return getSnapshot(guildId).movies();
+    }
+
+    /**
+     * Finds the movies in a guild's list whose titles best match a query, tolerating typos.
+     * <p>
+     * The matches always come from the returned snapshot, even if the list changes while searching.
+     * </p>
+     * @param guildId the guild ID
+     * @param query the text to match
+     * @param limit the maximum number of matches
+     * @return the snapshot searched and its matches
      */
-    public List<Movie> getMovies() {
-        return movies;
+    public TitleMatches searchTitles(long guildId, String query, int limit) {
+        GuildMovies partition = partition(guildId);
+
+        synchronized (partition) {
+            return new TitleMatches(partition.snapshot, partition.titles.search(query, limit));
+        }
     }
 
     /**
-     * Adds a movie to storage and saves the change to disk.
+     * Adds a movie to a guild's storage and saves the change to disk. The stored copy is given a new entry ID.
+     * @param guildId the guild ID
      * @param movie the movie to add
+     * @return the stored copy
+     */
+    public Movie addMovie(long guildId, Movie movie) {
+        Movie[] added = new Movie[1];
+        mutate(guildId, movies -> {
+            added[0] = movie.withEntryId(newEntryId(movies));
+            movies.add(added[0]);
+            return new MovieJournal.Record(MovieJournal.Op.ADD, movies.size() - 1, added[0]);
+        });
+        return added[0];
+    }
+
+    /**
+     * Removes a movie from a guild's storage and saves the change to disk.
+     * @param guildId the guild ID
+     * @param movie the movie to remove, as read from any snapshot
+     * @return {@code true} if it was removed, {@code false} if it is no longer in the list
      */
-    public void addMovie(Movie movie) {
-        movies.add(movie);
-        save();
+    public boolean removeMovie(long guildId, Movie movie) {
+        return mutate(guildId, movies -> {
+            int index = indexOf(movies, movie);
+            if (index < 0) {
+                return null;
+            }
+
+            movies.remove(index);
+            return new MovieJournal.Record(MovieJournal.Op.REMOVE, index, null);
+        });
     }
 
     /**
-     * Removes a movie from storage and saves the change to disk.
-     * @param movie the movie to remove
+     * Replaces a stored movie with an updated copy, such as one carrying its new scheduled event, and saves the change.
+     * @param guildId the guild ID
+     * @param current the movie as read from any snapshot
+     * @param updated the replacement, made from {@code current} so it keeps the same entry ID
+     * @return {@code true} if it was replaced, {@code false} if it is no longer in the list
      */
-    public void removeMovie(Movie movie) {
-        movies.remove(movie);
-        save();
+    public boolean updateMovie(long guildId, Movie current, Movie updated) {
+        return mutate(guildId, movies -> {
+            int index = indexOf(movies, current);
+            if (index < 0) {
+                return null;
+            }
+
+            movies.set(index, updated);
+            return new MovieJournal.Record(MovieJournal.Op.UPDATE, index, updated);
+        });
     }
 
     /**
-     * Loads the movie list from the JSON file.
+     * Registers a callback run with the guild ID after every change to a guild's list, once the new snapshot is
+     * visible. Callbacks run on the thread that made the change and should return quickly.
+     * @param listener the callback
+     */
+    public void addChangeListener(LongConsumer listener) {
+        changeListeners.add(listener);
+    }
+
+    /**
+     * Returns the number of guild lists currently held in memory.
+     * @return the resident guild count
+     */
+    public int residentGuildCount() {
+        return guilds.size();
+    }
+
+    /**
+     * Applies a change to a copy of a guild's list under that guild's lock, then publishes it as a new snapshot, updates
+     * the title index, queues its journal record, and notifies the change listeners.
+     * @param guildId the guild ID
+     * @param change edits the copy and returns the matching journal record, or {@code null} if nothing changed
+     * @return {@code true} if the list changed
+     */
+    private boolean mutate(long guildId, Function<List<Movie>, MovieJournal.Record> change) {
+        while (true) {
+            GuildMovies partition = partition(guildId);
+
+            synchronized (partition) {
+                //dropped from memory between lookup and lock, so load it again
+                if (partition.evicted) {
+                    continue;
+                }
+
+                List<Movie> before = partition.snapshot.movies();
+                List<Movie> movies = new ArrayList<>(before);
+                MovieJournal.Record record = change.apply(movies);
+                if (record == null) {
+                    return false;
+                }
+
+                switch (record.op()) {
+                    case ADD -> partition.titles.add(record.movie());
+                    case REMOVE -> partition.titles.remove(before.get(record.index()));
+                    case UPDATE -> partition.titles.replace(before.get(record.index()), record.movie());
+                }
+
+                partition.snapshot = new Snapshot(versions.incrementAndGet(), List.copyOf(movies));
+                writer.submit(partition.journal, record);
+            }
+
+            for (LongConsumer listener : changeListeners) {
+                listener.accept(guildId);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Finds a movie in a list, first by identity and then by entry ID, so that a movie read from an older snapshot
+     * still matches after it has been updated. Another entry with the same title and year never matches.
+     * @param movies the list to search
+     * @param movie the movie to find
+     * @return the movie's index, or {@code -1} if it is not in the list
+     */
+    private static int indexOf(List<Movie> movies, Movie movie) {
+        for (int i = 0; i < movies.size(); i++) {
+            if (movies.get(i) == movie) {
+                return i;
+            }
+        }
+
+        if (movie.getEntryId() == 0) {
+            return -1; //never stored, so it cannot be in the list
+        }
+
+        for (int i = 0; i < movies.size(); i++) {
+            if (movies.get(i).getEntryId() == movie.getEntryId()) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Picks an entry ID not used by any movie in a list. IDs are random rather than counted, so one freed by a removal
+     * is not handed to the next movie added, where a stale reference to the old entry could find it.
+     * @param movies the list the ID is for
+     * @return the new entry ID, never {@code 0}
+     */
+    private static long newEntryId(List<Movie> movies) {
+        while (true) {
+            long id = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+            if (movies.stream().noneMatch(m -> m.getEntryId() == id)) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * Returns a guild's partition, loading it from disk on first use.
      * <p>
-     *     If the file does not exist or cannot be read, an empty list is returned.
+     * Only an empty partition is put into the map, so no file is touched while the map is locked. The list is then read
+     * under the partition's own lock, which only callers for the same guild wait on.
      * </p>
-     * @return a list of loaded movies, or an empty list on failure
+     * @param guildId the guild ID
+     * @return the guild's partition
      */
-    private List<Movie> load() {
-        File file = new File(FILE_PATH);
+    private GuildMovies partition(long guildId) {
+        GuildMovies partition = guilds.get(guildId);
 
-        if (!file.exists()) {
-            return new ArrayList<>();
+        if (partition == null) {
+            partition = guilds.computeIfAbsent(guildId,
+                    id -> new GuildMovies(new MovieJournal(dataDir.resolve(id + ".json"))));
         }
 
-        try (Reader reader = new FileReader(file)) {
-            Type listType = new TypeToken<List<Movie>>(){}.getType();
-            List<Movie> loaded = GSON.fromJson(reader, listType);
+        if (partition.snapshot == null) {
+            boolean loadedHere = false;
+            synchronized (partition) {
+                if (partition.snapshot == null) {
+                    load(guildId, partition);
+                    loadedHere = true;
+                }
+            }
+            if (loadedHere) {
+                evictIdle();
+            }
+        }
 
-            //gson may return null of the file is empty or broken
-            return loaded != null ? loaded : new ArrayList<>();
+        partition.lastAccess = System.nanoTime();
+        return partition;
+    }
 
-        } catch (IOException e) {
-            e.printStackTrace();
-            return new ArrayList<>();
+    /**
+     * Loads a guild's list from disk into its partition. Called with the partition locked.
+     * @param guildId the guild ID
+     * @param partition the guild's partition, not yet loaded
+     */
+    private void load(long guildId, GuildMovies partition) {
+        //a list dropped moments ago may still have records on their way to disk
+        CompletableFuture<Void> closing = retiring.get(guildId);
+        if (closing != null) {
+            closing.join();
         }
+
+        List<Movie> movies = new ArrayList<>(partition.journal.load());
+
+        //lists saved before movies had entry IDs get them once, and keep them from then on
+        for (int i = 0; i < movies.size(); i++) {
+            if (movies.get(i).getEntryId() == 0) {
+                Movie stored = movies.get(i).withEntryId(newEntryId(movies));
+                movies.set(i, stored);
+                writer.submit(partition.journal, new MovieJournal.Record(MovieJournal.Op.UPDATE, i, stored));
+            }
+        }
+
+        movies = List.copyOf(movies);
+        partition.titles = new TitleIndex(movies);
+        partition.snapshot = new Snapshot(versions.incrementAndGet(), movies); //published last, once titles is set
     }
 
     /**
-     * Saves the current movie list to the JSON file.
+     * Drops the least recently used guild lists while more than the cap are resident. Their journals are handed to the
+     * writer to close once anything still pending for them is written.
      */
-    private void save() {
-        try (Writer writer = new FileWriter(FILE_PATH)) {
-            GSON.toJson(movies, writer);
-        } catch (IOException e) {
+    private void evictIdle() {
+        while (guilds.size() > maxResidentGuilds) {
+            Map.Entry<Long, GuildMovies> eldest = null;
+            for (Map.Entry<Long, GuildMovies> entry : guilds.entrySet()) {
+                //a list still being loaded is in use, so it is never the one dropped
+                if (entry.getValue().snapshot != null
+                        && (eldest == null || entry.getValue().lastAccess < eldest.getValue().lastAccess)) {
+                    eldest = entry;
+                }
+            }
+
+            if (eldest == null) {
+                return;
+            }
+
+            long guildId = eldest.getKey();
+            GuildMovies partition = eldest.getValue();
+            synchronized (partition) {
+                if (partition.evicted) {
+                    continue;
+                }
+                partition.evicted = true;
+
+                //registered before the partition leaves the map, so a reload that follows always finds it and waits
+                CompletableFuture<Void> closing = writer.retire(partition.journal);
+                retiring.put(guildId, closing);
+                closing.whenComplete((ignored, error) -> retiring.remove(guildId, closing));
+
+                guilds.remove(guildId, partition);
+            }
+            System.out.println("Evicted idle movie list for guild " + guildId);
+        }
+    }
+
+    /**
+     * Imports the single pre-partitioning {@code movies.json} into one guild's list, so an existing list is not lost on
+     * upgrade.
+     * <p>
+     *     The old file does not say which guild it belonged to. It is imported into the guild named by the
+     *     {@code MOVIE_LEGACY_GUILD_ID} environment variable, or else into the only guild the bot is in. With several
+     *     guilds and no ID configured, the file is left where it is. Call this once at startup, before any list is
+     *     loaded; each decision is logged.
+     * </p>
+     * @param guildIds the guilds the bot is in
+     */
+    public synchronized void migrateLegacyFile(List<Long> guildIds) {
+        Path legacy = Path.of(LEGACY_FILE_PATH);
+
+        if (!Files.exists(legacy)) {
+            return;
+        }
+
+        Long guildId = readLegacyGuildId();
+        if (guildId == null) {
+            if (guildIds.size() != 1) {
+                System.err.println("Not migrating " + legacy + ": the bot is in " + guildIds.size()
+                        + " guilds, so set MOVIE_LEGACY_GUILD_ID to the guild it belongs to");
+                return;
+            }
+            guildId = guildIds.getFirst();
+            System.out.println("Migrating " + legacy + " into guild " + guildId + ", the only guild the bot is in");
+        } else {
+            System.out.println("Migrating " + legacy + " into guild " + guildId + " from MOVIE_LEGACY_GUILD_ID");
+        }
+
+        Path target = dataDir.resolve(guildId + ".json");
+
+        //never replace a list the guild already has
+        if (guilds.containsKey(guildId) || Files.exists(target)) {
+            System.err.println("Not migrating " + legacy + ": guild " + guildId + " already has a movie list");
+            return;
+        }
+
+        //the old file is a plain JSON list, so it is written out again as the guild's first snapshot
+        try (Reader reader = Files.newBufferedReader(legacy, StandardCharsets.UTF_8)) {
+            List<Movie> movies = new Gson().fromJson(reader, new TypeToken<List<Movie>>(){}.getType());
+
+            List<MovieJournal.Record> records = new ArrayList<>();
+            if (movies != null) {
+                for (Movie movie : movies) {
+                    records.add(new MovieJournal.Record(MovieJournal.Op.ADD, records.size(), movie));
+                }
+            }
+
+            MovieJournal journal = new MovieJournal(target);
+            journal.load();
+            journal.append(records);
+            journal.close();
+
+            //compaction reports its own failures, so make sure the list really reached the new file
+            if (!records.isEmpty() && !Files.exists(target)) {
+                throw new IOException("Could not write " + target);
+            }
+            Files.delete(legacy);
+            System.out.println("Migrated " + records.size() + " movies from " + legacy + " to " + target);
+        } catch (IOException | JsonParseException e) {
+            System.err.println("Could not migrate " + legacy + " to " + target);
             e.printStackTrace();
         }
     }
+
+    /**
+     * Reads the guild the legacy movie file belongs to from the environment.
+     * @return the configured guild ID, or {@code null} if unset or invalid
+     */
+    private static Long readLegacyGuildId() {
+        String value = System.getenv("MOVIE_LEGACY_GUILD_ID");
+        if (value == null) {
+            return null;
+        }
+
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid MOVIE_LEGACY_GUILD_ID: " + value);
+            return null;
+        }
+    }
+
+    /**
+     * Reads the resident guild cap from the environment.
+     * @return the configured cap, or the default if unset or invalid
+     */
+    private static int readMaxResidentGuilds() {
+        String value = System.getenv("MOVIE_STORAGE_MAX_GUILDS");
+        if (value == null) {
+            return DEFAULT_MAX_RESIDENT_GUILDS;
+        }
+
+        try {
+            return Math.max(1, Integer.parseInt(value.trim()));
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid MOVIE_STORAGE_MAX_GUILDS: " + value);
+            return DEFAULT_MAX_RESIDENT_GUILDS;
+        }
+    }
 }
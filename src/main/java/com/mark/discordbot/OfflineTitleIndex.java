@@ -0,0 +1,429 @@
+package com.mark.discordbot;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Read-only, memory-mapped index of movie titles built from TMDb's daily ID export by {@link TitleExportImporter}.
+ * <p>
+ *     Lets {@link TMDb#searchMovies(String, Integer)} keep answering, from disk, while TMDb is down or failing. The file
+ *     is mapped rather than loaded, so only the pages a search touches are read into memory.
+ * </p>
+ * <p>
+ *     The file holds, after a fixed header:
+ * </p>
+ * <ul>
+ *     <li>the movies, most popular first, as {@code id, popularity, title offset, title length};</li>
+ *     <li>every normalized title word in unsigned UTF-8 byte order, as {@code word offset, word length, first posting,
+ *     posting count};</li>
+ *     <li>the postings: for each word, the positions of the movies whose title contains it, in ascending (so most
+ *     popular first) order;</li>
+ *     <li>the UTF-8 bytes of every title and word.</li>
+ * </ul>
+ * <p>
+ *     Every search matches whole words, except the last word of the query which may be a prefix, so partly typed titles
+ *     still match. Results come back most popular first, with exact title matches moved to the front.
+ * </p>
+ */
+public class OfflineTitleIndex {
+
+    /**
+     * Marks a title index file ("MVIX").
+     */
+    static final int MAGIC = 0x4D564958;
+
+    /**
+     * File format version, bumped whenever the layout changes.
+     */
+    static final int FORMAT_VERSION = 1;
+
+    /**
+     * Size of the header: magic, version, movie count, word count, posting count, and string bytes.
+     */
+    static final int HEADER_BYTES = 24;
+
+    /**
+     * Size of one movie record.
+     */
+    static final int MOVIE_BYTES = 16;
+
+    /**
+     * Size of one word record.
+     */
+    static final int WORD_BYTES = 16;
+
+    /**
+     * Most candidate movies looked at for one search, so a query made only of very common words stays fast.
+     */
+    private static final int MAX_CANDIDATES = 5000;
+
+    /**
+     * One matching movie.
+     * @param id the TMDb movie ID
+     * @param title the movie's original title
+     * @param popularity TMDb's popularity score at export time
+     */
+    public record Hit(int id, String title, float popularity) {}
+
+    /**
+     * The mapped file.
+     */
+    private final MappedByteBuffer buffer;
+
+    /**
+     * Number of movies in the index.
+     */
+    private final int movieCount;
+
+    /**
+     * Number of distinct words in the index.
+     */
+    private final int wordCount;
+
+    /**
+     * Start of the word records.
+     */
+    private final int wordsStart;
+
+    /**
+     * Start of the postings.
+     */
+    private final int postingsStart;
+
+    /**
+     * Start of the title and word bytes.
+     */
+    private final int stringsStart;
+
+    /**
+     * Maps an index file.
+     * @param file the index file
+     * @throws IOException if the file cannot be read or is not a title index
+     */
+    public OfflineTitleIndex(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file)) {
+            //the mapping stays valid after the channel is closed
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a title index: " + file);
+        }
+        if (buffer.getInt(4) != FORMAT_VERSION) {
+            throw new IOException("Unsupported title index version " + buffer.getInt(4) + ": " + file);
+        }
+
+        this.movieCount = buffer.getInt(8);
+        this.wordCount = buffer.getInt(12);
+        int postingCount = buffer.getInt(16);
+        int stringBytes = buffer.getInt(20);
+
+        this.wordsStart = HEADER_BYTES + movieCount * MOVIE_BYTES;
+        this.postingsStart = wordsStart + wordCount * WORD_BYTES;
+        this.stringsStart = postingsStart + postingCount * 4;
+
+        if ((long) stringsStart + stringBytes != buffer.capacity()) {
+            throw new IOException("Truncated title index: " + file);
+        }
+    }
+
+    /**
+     * Opens the index file if it exists.
+     * @param file the index file
+     * @return the index, or {@code null} if the file is missing or unreadable
+     */
+    public static OfflineTitleIndex open(Path file) {
+        if (!Files.exists(file)) {
+            return null;
+        }
+
+        try {
+            OfflineTitleIndex index = new OfflineTitleIndex(file);
+            System.out.println("Loaded offline title index with " + index.size() + " movies");
+            return index;
+        } catch (IOException e) {
+            System.err.println("Could not open offline title index " + file);
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Returns the number of movies in the index.
+     * @return the movie count
+     */
+    public int size() {
+        return movieCount;
+    }
+
+    /**
+     * Finds the movies whose titles contain every word of a query, treating the last word as a prefix.
+     * @param query the text to match
+     * @param limit the maximum number of results
+     * @return the matches, exact titles first and then by popularity, or an empty list if none
+     */
+    public List<Hit> search(String query, int limit) {
+        String normalized = TitleIndex.normalize(query);
+        if (normalized.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+
+        String[] words = normalized.split(" ");
+        String prefix = words[words.length - 1];
+
+        //the smallest posting list drives the search, so pick it up front
+        int[] driver = null;
+        int driverSize = Integer.MAX_VALUE;
+        for (int i = 0; i < words.length - 1; i++) {
+            int word = findWord(words[i].getBytes(StandardCharsets.UTF_8));
+            if (word < 0) {
+                return List.of();
+            }
+            if (postingCount(word) < driverSize) {
+                driver = new int[] {word, word + 1};
+                driverSize = postingCount(word);
+            }
+        }
+
+        byte[] prefixBytes = prefix.getBytes(StandardCharsets.UTF_8);
+        int from = lowerBound(prefixBytes);
+        int to = from;
+        long prefixSize = 0;
+        while (to < wordCount && startsWith(to, prefixBytes)) {
+            prefixSize += postingCount(to);
+            to++;
+        }
+        if (from == to) {
+            return List.of();
+        }
+        if (prefixSize < driverSize) {
+            driver = new int[] {from, to};
+        }
+
+        List<Hit> exact = new ArrayList<>();
+        List<Hit> others = new ArrayList<>(limit);
+        PostingCursor candidates = new PostingCursor(driver[0], driver[1]);
+        int scanned = 0;
+
+        for (int movie = candidates.next(); movie >= 0 && exact.size() + others.size() < limit && scanned < MAX_CANDIDATES; movie = candidates.next()) {
+            scanned++;
+            String title = title(movie);
+            String normalizedTitle = TitleIndex.normalize(title);
+
+            if (matches(normalizedTitle.split(" "), words)) {
+                Hit hit = new Hit(buffer.getInt(movieOffset(movie)), title, buffer.getFloat(movieOffset(movie) + 4));
+                (normalizedTitle.equals(normalized) ? exact : others).add(hit);
+            }
+        }
+
+        exact.addAll(others);
+        return exact;
+    }
+
+    /**
+     * Checks whether a title contains every query word, with the last query word matching any title word it begins.
+     * @param titleWords the normalized title's words
+     * @param queryWords the normalized query's words
+     * @return whether the title matches
+     */
+    private static boolean matches(String[] titleWords, String[] queryWords) {
+        for (int i = 0; i < queryWords.length; i++) {
+            boolean last = i == queryWords.length - 1;
+            boolean found = false;
+
+            for (String word : titleWords) {
+                if (last ? word.startsWith(queryWords[i]) : word.equals(queryWords[i])) {
+                    found = true;
+                    break;
+                }
+            }
+
+            if (!found) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Walks the postings of a range of words in ascending movie order, merging them when there are several.
+     */
+    private final class PostingCursor {
+
+        /**
+         * Cursors into each word's postings as {@code next posting, end}, ordered by the movie at the next posting.
+         */
+        private final PriorityQueue<int[]> heads;
+
+        /**
+         * The last movie returned, so a movie listed under several words is only returned once.
+         */
+        private int last = -1;
+
+        /**
+         * Constructs a cursor over words {@code from} (inclusive) to {@code to} (exclusive).
+         * @param from the first word
+         * @param to the word after the last
+         */
+        private PostingCursor(int from, int to) {
+            this.heads = new PriorityQueue<>(Math.max(1, to - from),
+                    (a, b) -> Integer.compare(posting(a[0]), posting(b[0])));
+
+            for (int word = from; word < to; word++) {
+                int first = buffer.getInt(wordOffset(word) + 8);
+                heads.add(new int[] {first, first + postingCount(word)});
+            }
+        }
+
+        /**
+         * Returns the next movie.
+         * @return the movie's position, or {@code -1} when done
+         */
+        private int next() {
+            while (!heads.isEmpty()) {
+                int[] head = heads.poll();
+                int movie = posting(head[0]);
+
+                if (++head[0] < head[1]) {
+                    heads.add(head);
+                }
+
+                if (movie != last) {
+                    last = movie;
+                    return movie;
+                }
+            }
+
+            return -1;
+        }
+    }
+
+    /**
+     * Finds a word by binary search.
+     * @param word the word's UTF-8 bytes
+     * @return the word's position, or {@code -1} if absent
+     */
+    private int findWord(byte[] word) {
+        int at = lowerBound(word);
+        return at < wordCount && compareWord(at, word) == 0 ? at : -1;
+    }
+
+    /**
+     * Finds the first word not ordered before the given bytes.
+     * @param key the UTF-8 bytes to look for
+     * @return the first word's position, or the word count if every word is ordered before the key
+     */
+    private int lowerBound(byte[] key) {
+        int low = 0;
+        int high = wordCount;
+
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compareWord(mid, key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Compares a stored word with a key in unsigned byte order.
+     * @param word the word's position
+     * @param key the key's UTF-8 bytes
+     * @return negative, zero, or positive as the word orders before, equal to, or after the key
+     */
+    private int compareWord(int word, byte[] key) {
+        return Arrays.compareUnsigned(wordBytes(word), key);
+    }
+
+    /**
+     * Checks whether a stored word begins with a key.
+     * @param word the word's position
+     * @param key the key's UTF-8 bytes
+     * @return whether the word starts with the key
+     */
+    private boolean startsWith(int word, byte[] key) {
+        byte[] bytes = wordBytes(word);
+        return bytes.length >= key.length && Arrays.equals(bytes, 0, key.length, key, 0, key.length);
+    }
+
+    /**
+     * Reads a stored word.
+     * @param word the word's position
+     * @return the word's UTF-8 bytes
+     */
+    private byte[] wordBytes(int word) {
+        int offset = wordOffset(word);
+        return bytes(buffer.getInt(offset), buffer.getInt(offset + 4));
+    }
+
+    /**
+     * Reads a movie's title.
+     * @param movie the movie's position
+     * @return the title
+     */
+    private String title(int movie) {
+        int offset = movieOffset(movie);
+        return new String(bytes(buffer.getInt(offset + 8), buffer.getInt(offset + 12)), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads bytes from the string section.
+     * @param offset the offset within the string section
+     * @param length the number of bytes
+     * @return the bytes
+     */
+    private byte[] bytes(int offset, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(stringsStart + offset, bytes);
+        return bytes;
+    }
+
+    /**
+     * Returns the number of movies listed under a word.
+     * @param word the word's position
+     * @return the posting count
+     */
+    private int postingCount(int word) {
+        return buffer.getInt(wordOffset(word) + 12);
+    }
+
+    /**
+     * Reads one posting.
+     * @param posting the posting's position
+     * @return the movie's position
+     */
+    private int posting(int posting) {
+        return buffer.getInt(postingsStart + posting * 4);
+    }
+
+    /**
+     * Returns where a movie's record starts.
+     * @param movie the movie's position
+     * @return the byte offset
+     */
+    private static int movieOffset(int movie) {
+        return HEADER_BYTES + movie * MOVIE_BYTES;
+    }
+
+    /**
+     * Returns where a word's record starts.
+     * @param word the word's position
+     * @return the byte offset
+     */
+    private int wordOffset(int word) {
+        return wordsStart + word * WORD_BYTES;
+    }
+}
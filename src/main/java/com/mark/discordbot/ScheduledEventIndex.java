@@ -0,0 +1,361 @@
+package com.mark.discordbot;
+
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.ScheduledEvent;
+import net.dv8tion.jda.api.events.GenericEvent;
+import net.dv8tion.jda.api.events.guild.GuildLeaveEvent;
+import net.dv8tion.jda.api.events.guild.GuildReadyEvent;
+import net.dv8tion.jda.api.events.guild.scheduledevent.ScheduledEventCreateEvent;
+import net.dv8tion.jda.api.events.guild.scheduledevent.ScheduledEventDeleteEvent;
+import net.dv8tion.jda.api.events.guild.scheduledevent.update.GenericScheduledEventUpdateEvent;
+import net.dv8tion.jda.api.events.session.ReadyEvent;
+import net.dv8tion.jda.api.hooks.ListenerAdapter;
+
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory index of each guild's Discord scheduled events.
+ * <p>
+ *     The index is seeded once per guild when the guild becomes ready, then kept current from the scheduled event
+ *     create, update, and delete gateway events. A periodic reconciliation re-fetches every guild's events and merges
+ *     them in to repair any gateway events that were missed. Queue plans read from here instead of making a REST call
+ *     on every add.
+ * </p>
+ */
+public class ScheduledEventIndex extends ListenerAdapter {
+
+    /**
+     * How often every guild's events are re-fetched from Discord.
+     */
+    private static final long RECONCILE_INTERVAL_MINUTES = 30;
+
+    /**
+     * The parts of a scheduled event needed for scheduling.
+     * @param id the event ID
+     * @param name the event name
+     * @param channelId the ID of the channel the event takes place in, or {@code 0} for external events
+     * @param start the start time
+     * @param end the end time, or {@code null} if Discord has none
+     * @param status the event status
+     * @param creatorId the ID of the user who created the event, or {@code 0} if Discord does not say
+     */
+    public record EventInfo(long id, String name, long channelId, OffsetDateTime start, OffsetDateTime end,
+                            ScheduledEvent.Status status, long creatorId) {
+
+        /**
+         * Copies the scheduling details out of a JDA scheduled event.
+         * @param event the scheduled event
+         * @return the event's details
+         */
+        public static EventInfo of(ScheduledEvent event) {
+            var channel = event.getChannel();
+            return new EventInfo(event.getIdLong(), event.getName(), channel == null ? 0 : channel.getIdLong(),
+                    event.getStartTime(), event.getEndTime(), event.getStatus(), event.getCreatorIdLong());
+        }
+    }
+
+    /**
+     * A guild's events and the bookkeeping needed to merge a fetch into them.
+     * <p>
+     *     Every local change (a gateway event, or a change the bot made itself) takes the next number in a per-guild
+     *     sequence. A fetch notes the sequence number when it starts, and when its result is merged any event changed
+     *     after that keeps its local state, since the fetch may not have seen the change. Removals are remembered the
+     *     same way, so a fetch cannot bring back an event deleted while it was in flight.
+     * </p>
+     */
+    private static final class GuildEvents {
+
+        /**
+         * Events keyed by event ID.
+         */
+        private final Map<Long, EventInfo> events = new ConcurrentHashMap<>();
+
+        /**
+         * The sequence number of each event's latest local change, keyed by event ID. Entries no running fetch can
+         * override are pruned on every merge. Guarded by {@code this}.
+         */
+        private final Map<Long, Long> changedAt = new HashMap<>();
+
+        /**
+         * Completes once the first fetch has been merged.
+         */
+        private final CompletableFuture<Void> seeded = new CompletableFuture<>();
+
+        /**
+         * The number of the latest local change. Guarded by {@code this}.
+         */
+        private long sequence;
+
+        /**
+         * The start of the latest fetch merged so far, or {@code -1} before the first. Guarded by {@code this}.
+         */
+        private long mergedAt = -1;
+
+        /**
+         * Adds or replaces an event.
+         * @param event the event
+         */
+        private synchronized void put(EventInfo event) {
+            events.put(event.id(), event);
+            changedAt.put(event.id(), ++sequence);
+        }
+
+        /**
+         * Removes an event.
+         * @param eventId the event ID
+         */
+        private synchronized void remove(long eventId) {
+            events.remove(eventId);
+            changedAt.put(eventId, ++sequence);
+        }
+
+        /**
+         * Marks the start of a fetch.
+         * @return the sequence number to pass to {@link #merge} with the fetch's result
+         */
+        private synchronized long startFetch() {
+            return sequence;
+        }
+
+        /**
+         * Merges a fetched list of events. Events changed locally since the fetch started are left alone, and a fetch
+         * that started before one already merged is ignored.
+         * @param fetchStart the value {@link #startFetch()} returned when the fetch started
+         * @param fetched the fetched events
+         */
+        private synchronized void merge(long fetchStart, List<ScheduledEvent> fetched) {
+            if (fetchStart < mergedAt) {
+                return;
+            }
+            mergedAt = fetchStart;
+
+            Map<Long, EventInfo> current = new HashMap<>();
+            for (ScheduledEvent event : fetched) {
+                if (!isFinished(event.getStatus())) {
+                    current.put(event.getIdLong(), EventInfo.of(event));
+                }
+            }
+
+            for (EventInfo event : current.values()) {
+                if (changedAt.getOrDefault(event.id(), -1L) <= fetchStart) {
+                    events.put(event.id(), event);
+                }
+            }
+            events.keySet().removeIf(id -> !current.containsKey(id) && changedAt.getOrDefault(id, -1L) <= fetchStart);
+
+            //a later fetch starts after these changes, so it will see them
+            changedAt.values().removeIf(changed -> changed <= fetchStart);
+            seeded.complete(null);
+        }
+    }
+
+    /**
+     * Events keyed by guild ID. A guild is present once its first fetch has started.
+     */
+    private final Map<Long, GuildEvents> guilds = new ConcurrentHashMap<>();
+
+    /**
+     * Timer for the periodic reconciliation.
+     */
+    private final ScheduledExecutorService reconciler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "scheduled-event-reconciler");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Returns the known events for a guild once it has been seeded.
+     * <p>
+     *     If the guild has not been seeded yet (normally only possible before its ready event is processed), its events
+     *     are fetched in the background and the future completes once they are in, so that a plan never runs against an
+     *     empty calendar and the caller never waits on Discord. The future fails if that first fetch does.
+     * </p>
+     * @param guild the Discord guild
+     * @return a future of the guild's scheduled events
+     */
+    public CompletableFuture<Collection<EventInfo>> getEvents(Guild guild) {
+        GuildEvents state = guilds.get(guild.getIdLong());
+
+        if (state == null) {
+            state = seed(guild);
+        }
+
+        GuildEvents seededState = state;
+        return state.seeded.thenApply(v -> seededState.events.values());
+    }
+
+    /**
+     * Records an event the bot has just created, so a following slot search sees it before the gateway event arrives.
+     * @param event the created event
+     */
+    public void put(ScheduledEvent event) {
+        update(event);
+    }
+
+    /**
+     * Records the new state of an event the bot has just changed, before the gateway event arrives.
+     * @param guildId the guild ID
+     * @param event the event's new details
+     */
+    public void record(long guildId, EventInfo event) {
+        GuildEvents state = guilds.get(guildId);
+        if (state != null) {
+            state.put(event);
+        }
+    }
+
+    /**
+     * Removes an event the bot has just deleted, before the gateway event arrives.
+     * @param guildId the guild ID
+     * @param eventId the event ID
+     */
+    public void forget(long guildId, long eventId) {
+        GuildEvents state = guilds.get(guildId);
+        if (state != null) {
+            state.remove(eventId);
+        }
+    }
+
+    /**
+     * Starts the periodic reconciliation once the bot is connected.
+     * @param event the ready event
+     */
+    @Override
+    public void onReady(ReadyEvent event) {
+        JDA jda = event.getJDA();
+        reconciler.scheduleWithFixedDelay(() -> reconcile(jda),
+                RECONCILE_INTERVAL_MINUTES, RECONCILE_INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Seeds a guild's events when it becomes available.
+     * @param event the guild ready event
+     */
+    @Override
+    public void onGuildReady(GuildReadyEvent event) {
+        seed(event.getGuild());
+    }
+
+    /**
+     * Forgets a guild the bot has left.
+     * @param event the guild leave event
+     */
+    @Override
+    public void onGuildLeave(GuildLeaveEvent event) {
+        guilds.remove(event.getGuild().getIdLong());
+    }
+
+    /**
+     * Adds a newly created event.
+     * @param event the create event
+     */
+    @Override
+    public void onScheduledEventCreate(ScheduledEventCreateEvent event) {
+        update(event.getScheduledEvent());
+    }
+
+    /**
+     * Refreshes an event after any of its properties change.
+     * <p>
+     *     {@link ListenerAdapter} declares the update hook with a raw event type, so updates are picked out here with a
+     *     wildcard match instead.
+     * </p>
+     * @param event any gateway event
+     */
+    @Override
+    public void onGenericEvent(GenericEvent event) {
+        if (event instanceof GenericScheduledEventUpdateEvent<?> updated) {
+            update(updated.getScheduledEvent());
+        }
+    }
+
+    /**
+     * Removes a deleted event.
+     * @param event the delete event
+     */
+    @Override
+    public void onScheduledEventDelete(ScheduledEventDeleteEvent event) {
+        GuildEvents state = guilds.get(event.getGuild().getIdLong());
+        if (state != null) {
+            state.remove(event.getScheduledEvent().getIdLong());
+        }
+    }
+
+    /**
+     * Applies the current state of one event. Completed and cancelled events are dropped since they no longer occupy a
+     * slot.
+     * @param event the scheduled event
+     */
+    private void update(ScheduledEvent event) {
+        GuildEvents state = guilds.get(event.getGuild().getIdLong());
+
+        //no fetch started yet; the first one will include this event
+        if (state == null) {
+            return;
+        }
+
+        if (isFinished(event.getStatus())) {
+            state.remove(event.getIdLong());
+        } else {
+            state.put(EventInfo.of(event));
+        }
+    }
+
+    /**
+     * Fetches a guild's events in the background and merges them into whatever the index holds for it.
+     * <p>
+     *     If the guild's first fetch fails, the guild is dropped again so the next {@link #getEvents} retries it.
+     * </p>
+     * @param guild the Discord guild
+     * @return the guild's state
+     */
+    private GuildEvents seed(Guild guild) {
+        long guildId = guild.getIdLong();
+        GuildEvents state = guilds.computeIfAbsent(guildId, id -> new GuildEvents());
+        long fetchStart = state.startFetch();
+
+        guild.retrieveScheduledEvents().queue(
+                events -> state.merge(fetchStart, events),
+                error -> {
+                    Metrics.DISCORD_REST_ERRORS.increment();
+                    System.err.println("Failed to fetch scheduled events for guild " + guild.getId());
+
+                    if (!state.seeded.isDone()) {
+                        guilds.remove(guildId, state);
+                        state.seeded.completeExceptionally(error);
+                    }
+                }
+        );
+
+        return state;
+    }
+
+    /**
+     * Re-fetches the events of every guild the bot is in.
+     * @param jda the JDA instance
+     */
+    private void reconcile(JDA jda) {
+        for (Guild guild : jda.getGuilds()) {
+            seed(guild);
+        }
+    }
+
+    /**
+     * Returns whether an event status means the event no longer occupies its time slot.
+     * @param status the event status
+     * @return {@code true} for completed or cancelled events
+     */
+    private static boolean isFinished(ScheduledEvent.Status status) {
+        return status == ScheduledEvent.Status.COMPLETED || status == ScheduledEvent.Status.CANCELED;
+    }
+}
@@ -0,0 +1,137 @@
+package com.mark.discordbot;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Generates the occurrences of the weekly movie slots over a bounded horizon.
+ * <p>
+ *     Each week's occurrences are computed directly from the week's Monday, the slot's day offset, and its local time,
+ *     rather than by stepping forward a day at a time. Local times are resolved in the calendar's zone, so a slot keeps
+ *     its wall-clock time across daylight saving changes (a time that falls in a spring-forward gap moves to just after
+ *     the gap, and an ambiguous fall-back time uses the earlier offset). Weeks are computed once and cached.
+ * </p>
+ * <p>
+ *     Searches only ever look {@code horizonWeeks} ahead, so a fully booked calendar ends the search instead of
+ *     looping forever.
+ * </p>
+ */
+public class SlotCalendar {
+
+    /**
+     * Represents a recurring weekly movie slot
+     * @param day day of the week the slot occurs
+     * @param time start time of the slot
+     * @param longAllowed whether long movies are allowed in this slot
+     */
+    public record WeeklySlot(DayOfWeek day, LocalTime time, boolean longAllowed) {}
+
+    /**
+     * One occurrence of a weekly slot.
+     * @param start when the occurrence starts
+     * @param longAllowed whether long movies are allowed in it
+     */
+    public record Slot(OffsetDateTime start, boolean longAllowed) {}
+
+    /**
+     * Time zone the slot times are in.
+     */
+    private final ZoneId zone;
+
+    /**
+     * The weekly slots, sorted by day and time so each week's occurrences come out in order.
+     */
+    private final List<WeeklySlot> slots;
+
+    /**
+     * How many weeks ahead a search may look.
+     */
+    private final int horizonWeeks;
+
+    /**
+     * Occurrences keyed by the Monday of their week. Weeks before the one being searched from are dropped when a search starts.
+     */
+    private final Map<LocalDate, List<Slot>> weeks = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a calendar.
+     * @param zone the time zone the slot times are in
+     * @param slots the weekly slots
+     * @param horizonWeeks how many weeks ahead a search may look
+     */
+    public SlotCalendar(ZoneId zone, List<WeeklySlot> slots, int horizonWeeks) {
+        if (horizonWeeks <= 0) {
+            throw new IllegalArgumentException("Horizon must be at least one week");
+        }
+
+        this.zone = zone;
+        this.horizonWeeks = horizonWeeks;
+
+        List<WeeklySlot> sorted = new ArrayList<>(slots);
+        sorted.sort(Comparator.comparing(WeeklySlot::day).thenComparing(WeeklySlot::time));
+        this.slots = List.copyOf(sorted);
+    }
+
+    /**
+     * Returns the slot occurrences from a point in time to the end of the horizon, in chronological order.
+     * <p>
+     *     The stream is lazy, so a search that stops at the first free slot only computes the weeks it reaches.
+     * </p>
+     * @param from the earliest start time to include
+     * @return the upcoming occurrences
+     */
+    public Stream<Slot> upcoming(ZonedDateTime from) {
+        ZonedDateTime local = from.withZoneSameInstant(zone);
+        LocalDate firstMonday = local.toLocalDate().with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+        OffsetDateTime earliest = local.toOffsetDateTime();
+        OffsetDateTime limit = earliest.plusWeeks(horizonWeeks);
+
+        weeks.keySet().removeIf(monday -> monday.isBefore(firstMonday));
+
+        //the first week is only partly ahead of us, so one extra week is needed to cover the full horizon
+        return IntStream.rangeClosed(0, horizonWeeks)
+                .mapToObj(i -> week(firstMonday.plusWeeks(i)))
+                .flatMap(List::stream)
+                .dropWhile(slot -> slot.start().isBefore(earliest))
+                .takeWhile(slot -> slot.start().isBefore(limit));
+    }
+
+    /**
+     * Returns the number of weeks a search may look ahead.
+     * @return the horizon in weeks
+     */
+    public int getHorizonWeeks() {
+        return horizonWeeks;
+    }
+
+    /**
+     * Returns one week's occurrences, computing them on first use.
+     * @param monday the Monday of the week
+     * @return the week's occurrences in chronological order
+     */
+    private List<Slot> week(LocalDate monday) {
+        return weeks.computeIfAbsent(monday, m -> {
+            List<Slot> occurrences = new ArrayList<>(slots.size());
+
+            for (WeeklySlot slot : slots) {
+                LocalDate date = m.plusDays(slot.day().getValue() - DayOfWeek.MONDAY.getValue());
+                ZonedDateTime start = ZonedDateTime.of(date, slot.time(), zone);
+                occurrences.add(new Slot(start.toOffsetDateTime(), slot.longAllowed()));
+            }
+
+            return List.copyOf(occurrences);
+        });
+    }
+}
@@ -0,0 +1,127 @@
+package com.mark.discordbot;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background write-behind stage for {@link MovieJournal}s.
+ * <p>
+ *     Callers hand over journal records and return immediately. Records that arrive within a short window are
+ *     coalesced and written by a single background thread as one append per journal, so a burst of adds and removes
+ *     turns into one disk write instead of many. Anything still pending is flushed by a JVM shutdown hook.
+ * </p>
+ */
+public final class StorageWriter {
+
+    /**
+     * How long to wait after the first pending record before writing, so that nearby records share one write.
+     */
+    private static final long COALESCE_WINDOW_MS = 200;
+
+    /**
+     * Records waiting to be written, grouped by journal in the order the journals were first touched.
+     */
+    private final Map<MovieJournal, List<MovieJournal.Record>> pending = new LinkedHashMap<>();
+
+    /**
+     * Whether a flush is already scheduled. Guarded by {@link #pending}.
+     */
+    private boolean flushScheduled;
+
+    /**
+     * Held while draining and writing a batch, so two flushes can never write batches out of order.
+     */
+    private final Object writeLock = new Object();
+
+    /**
+     * Background thread that runs the scheduled flushes.
+     */
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "movie-storage-writer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Constructs a writer and registers a shutdown hook that flushes pending records.
+     */
+    public StorageWriter() {
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "movie-storage-shutdown"));
+    }
+
+    /**
+     * Queues a record to be written to a journal.
+     * @param journal the journal to write to
+     * @param record the record to write
+     */
+    public void submit(MovieJournal journal, MovieJournal.Record record) {
+        synchronized (pending) {
+            pending.computeIfAbsent(journal, j -> new ArrayList<>()).add(record);
+
+            if (!flushScheduled) {
+                flushScheduled = true;
+                executor.schedule(this::flush, COALESCE_WINDOW_MS, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Writes every pending record now. Called by the background thread and the shutdown hook.
+     */
+    public void flush() {
+        synchronized (writeLock) {
+            Map<MovieJournal, List<MovieJournal.Record>> batch;
+            synchronized (pending) {
+                batch = new LinkedHashMap<>(pending);
+                pending.clear();
+                flushScheduled = false;
+            }
+
+            batch.forEach(StorageWriter::write);
+        }
+    }
+
+    /**
+     * Writes any records still pending for a journal and then closes it, on the background thread, so the caller never
+     * waits on disk. Nothing may be submitted to the journal afterwards.
+     * @param journal the journal to close
+     * @return a future completing once the journal's records are written and it is closed
+     */
+    public CompletableFuture<Void> retire(MovieJournal journal) {
+        return CompletableFuture.runAsync(() -> {
+            synchronized (writeLock) {
+                List<MovieJournal.Record> records;
+                synchronized (pending) {
+                    records = pending.remove(journal);
+                }
+                if (records != null) {
+                    write(journal, records);
+                }
+                journal.close();
+            }
+        }, executor);
+    }
+
+    /**
+     * Appends a batch of records to a journal, logging rather than throwing if it fails.
+     * @param journal the journal to write to
+     * @param records the records, in order
+     */
+    private static void write(MovieJournal journal, List<MovieJournal.Record> records) {
+        long started = System.nanoTime();
+        try {
+            journal.append(records);
+            Metrics.STORAGE_SAVE.recordSince(started);
+        } catch (RuntimeException e) {
+            Metrics.STORAGE_FAILURES.increment();
+            System.err.println("Failed to write " + records.size() + " movie storage records");
+            e.printStackTrace();
+        }
+    }
+}
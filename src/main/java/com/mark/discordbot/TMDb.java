@@ -1,23 +1,56 @@
 package com.mark.discordbot;
 
-import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
 import java.net.URI;
-import java.net.URL;
 import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
 
 /**
  * Client for interacting with The Movie Database (TMDb) API,
  * <p>
  * This class provides helper methods to search for movies, retrieve movie details, and fetch metadata such as runtime.
+ * All requests are non-blocking and complete a {@link CompletableFuture}, so callers never wait on the network.
+ * Responses are decoded by {@link TMDbJson} straight into small records holding only the fields the bot uses.
  * </p>
  */
 public class TMDb {
 
+    /**
+     * One movie from a search.
+     * @param id the TMDb movie ID
+     * @param title the movie title
+     * @param year the release year, or {@code 0} if unknown
+     * @param posterPath the poster's path on TMDb's image server, or {@code null}
+     */
+    public record SearchResult(int id, String title, int year, String posterPath) {}
+
+    /**
+     * A movie's details.
+     * @param id the TMDb movie ID
+     * @param title the movie title
+     * @param year the release year, or {@code 0} if unknown
+     * @param posterPath the poster's path on TMDb's image server, or {@code null}
+     * @param runtime the runtime in minutes, or {@code 0} if unknown
+     */
+    public record MovieDetails(int id, String title, int year, String posterPath, int runtime) {}
+
     /**
      * API key used to authenticate requests.
      */
@@ -29,96 +62,866 @@ public class TMDb {
     private static final String BASE_URL = "https://api.themoviedb.org/3";
 
     /**
-     * Timeout duration in milliseconds.
+     * File the offline title index is read from unless {@code MOVIE_TITLE_INDEX} names another.
+     */
+    public static final String DEFAULT_TITLE_INDEX_FILE = "tmdb-titles.idx";
+
+    /**
+     * Most results returned by a search answered from the offline title index, matching one page of TMDb results.
+     */
+    private static final int OFFLINE_SEARCH_LIMIT = 20;
+
+    /**
+     * Connect timeout, and the request timeout used until enough latencies have been seen to adapt it, in
+     * milliseconds.
      */
     private static final int TIMEOUT_MS = 5000;
 
     /**
-     * Constructs a new TMDb API client.
+     * Shortest adaptive request timeout in milliseconds.
+     */
+    private static final int MIN_TIMEOUT_MS = 1000;
+
+    /**
+     * The latency metrics kept for one endpoint.
+     * @param histogram every latency since startup, for reporting
+     * @param recent recent latencies, for timeouts and hedging
+     */
+    record EndpointStats(LatencyHistogram histogram, LatencyTracker recent) {
+
+        /**
+         * Records the latency of a request that got a response.
+         * @param started when the request was sent, from {@link System#nanoTime()}
+         */
+        private void record(long started) {
+            long elapsed = System.nanoTime() - started;
+            histogram.record(elapsed);
+            recent.record(elapsed);
+        }
+
+        /**
+         * Records a request that timed out, which also lengthens the timeout.
+         * @param started when the request was sent, from {@link System#nanoTime()}
+         */
+        private void recordTimeout(long started) {
+            long elapsed = System.nanoTime() - started;
+            histogram.record(elapsed);
+            recent.recordTimeout(elapsed);
+        }
+    }
+
+    /**
+     * Latencies of search requests.
+     */
+    private static final EndpointStats SEARCH_STATS =
+            new EndpointStats(Metrics.TMDB_SEARCH, new LatencyTracker(MIN_TIMEOUT_MS, TIMEOUT_MS));
+
+    /**
+     * Latencies of movie details requests.
+     */
+    private static final EndpointStats DETAILS_STATS =
+            new EndpointStats(Metrics.TMDB_DETAILS, new LatencyTracker(MIN_TIMEOUT_MS, TIMEOUT_MS));
+
+    /**
+     * Hedged requests allowed per request made, which caps the extra load hedging adds.
+     */
+    private static final double HEDGE_RATIO = 0.1;
+
+    /**
+     * Most hedges that can be saved up and sent in a burst.
+     */
+    private static final double HEDGE_BURST = 5;
+
+    /**
+     * Shared HTTP/2 client, reused by every request so connections to TMDb are pooled instead of reopened.
+     */
+    private static final HttpClient HTTP = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .connectTimeout(Duration.ofMillis(TIMEOUT_MS))
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .build();
+
+    /**
+     * Requests allowed through at once, and per second after that, across the whole process. Kept well under TMDb's
+     * limit of around 50 requests per second.
+     */
+    private static final TokenBucket RATE_LIMIT = new TokenBucket(20, 20);
+
+    /**
+     * Longest a request waits for a rate limit token before failing instead.
+     */
+    private static final long MAX_RATE_LIMIT_WAIT_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Opens after repeated failures so that requests fail fast, instead of each waiting out a timeout, while TMDb is
+     * down.
+     */
+    private static final CircuitBreaker BREAKER = new CircuitBreaker("TMDb", 5, 30_000);
+
+    /**
+     * Sends one request and hands back the response with its body still streaming.
+     * <p>
+     *     Every client in the process sends through {@link #HTTP}; tests send through a fake instead.
+     * </p>
+     */
+    @FunctionalInterface
+    interface Transport {
+
+        /**
+         * Sends a request.
+         * @param request the request, with its timeout set
+         * @return a future completing with the response, or failing if none arrived
+         */
+        CompletableFuture<HttpResponse<InputStream>> send(HttpRequest request);
+    }
+
+    /**
+     * Where requests go, and the state every request sent there shares: the rate limiter, the circuit breaker, the
+     * latency stats, and the hedge budget.
+     */
+    static final class Upstream {
+
+        /**
+         * Sends the requests.
+         */
+        private final Transport transport;
+
+        /**
+         * Limits how fast requests go out.
+         */
+        private final TokenBucket rateLimit;
+
+        /**
+         * Refuses requests while TMDb is failing.
+         */
+        private final CircuitBreaker breaker;
+
+        /**
+         * Latencies of search requests.
+         */
+        private final EndpointStats searchStats;
+
+        /**
+         * Latencies of movie details requests.
+         */
+        private final EndpointStats detailsStats;
+
+        /**
+         * Hedges currently allowed. Guarded by {@code this}.
+         */
+        private double hedgeCredits = HEDGE_BURST;
+
+        /**
+         * Constructs an upstream with a full hedge budget.
+         * @param transport sends the requests
+         * @param rateLimit limits how fast requests go out
+         * @param breaker refuses requests while TMDb is failing
+         * @param searchStats latencies of search requests
+         * @param detailsStats latencies of movie details requests
+         */
+        Upstream(Transport transport, TokenBucket rateLimit, CircuitBreaker breaker, EndpointStats searchStats,
+                 EndpointStats detailsStats) {
+            this.transport = transport;
+            this.rateLimit = rateLimit;
+            this.breaker = breaker;
+            this.searchStats = searchStats;
+            this.detailsStats = detailsStats;
+        }
+
+        /**
+         * Adds the hedge allowance earned by one request.
+         */
+        private synchronized void earnHedgeCredit() {
+            hedgeCredits = Math.min(HEDGE_BURST, hedgeCredits + HEDGE_RATIO);
+        }
+
+        /**
+         * Takes one hedge from the budget.
+         * @return whether a hedge may be sent
+         */
+        private synchronized boolean spendHedgeCredit() {
+            if (hedgeCredits < 1) {
+                return false;
+            }
+            hedgeCredits -= 1;
+            return true;
+        }
+
+        /**
+         * Returns the hedges currently allowed.
+         * @return the hedge budget, possibly fractional
+         */
+        synchronized double getHedgeCredits() {
+            return hedgeCredits;
+        }
+    }
+
+    /**
+     * TMDb itself, shared by every client in the process.
+     */
+    private static final Upstream NETWORK = new Upstream(
+            request -> HTTP.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream()),
+            RATE_LIMIT, BREAKER, SEARCH_STATS, DETAILS_STATS);
+
+    /**
+     * Retries after the first attempt for transient failures.
+     */
+    private static final int MAX_RETRIES = 2;
+
+    /**
+     * Upper bound of the first retry's random backoff, doubled for each later retry.
+     */
+    private static final long RETRY_BASE_MS = 250;
+
+    /**
+     * Longest delay before a retry, including one asked for by {@code Retry-After}. A longer delay fails instead.
+     */
+    private static final long MAX_RETRY_DELAY_MS = 3000;
+
+    /**
+     * How long search results are cached for. Kept short since search rankings change.
+     */
+    private static final Duration SEARCH_TTL = Duration.ofMinutes(30);
+
+    /**
+     * How long movie details are cached for. Details such as runtime rarely change.
+     */
+    private static final Duration DETAILS_TTL = Duration.ofDays(7);
+
+    /**
+     * Where requests are sent.
+     */
+    private final Upstream upstream;
+
+    /**
+     * Optional response cache consulted before any network request, or {@code null} if caching is disabled.
+     */
+    private final TMDbCache cache;
+
+    /**
+     * Optional offline title index searched when TMDb cannot answer, or {@code null} if none is installed.
+     */
+    private final OfflineTitleIndex titleIndex;
+
+    /**
+     * Requests currently on their way to TMDb, keyed by endpoint and query, so that identical concurrent requests share
+     * one call. Entries are removed as soon as the call finishes.
+     */
+    private final Map<String, CompletableFuture<?>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Number of search requests sent over the network (cache hits are not counted).
+     */
+    private final AtomicLong searchRequests = new AtomicLong();
+
+    /**
+     * Number of movie details requests sent over the network (cache hits are not counted).
+     */
+    private final AtomicLong detailRequests = new AtomicLong();
+
+    /**
+     * Constructs a new TMDb API client without a response cache.
      * @param apikey the TMDb API key
      */
     public TMDb(String apikey){
+        this(apikey, null);
+    }
+
+    /**
+     * Constructs a new TMDb API client backed by a response cache.
+     * @param apikey the TMDb API key
+     * @param cache the response cache, or {@code null} to always go to the network
+     */
+    public TMDb(String apikey, TMDbCache cache){
+        this(apikey, cache, null);
+    }
+
+    /**
+     * Constructs a new TMDb API client backed by a response cache and an offline title index.
+     * @param apikey the TMDb API key
+     * @param cache the response cache, or {@code null} to always go to the network
+     * @param titleIndex the offline title index to search when TMDb cannot answer, or {@code null} for none
+     */
+    public TMDb(String apikey, TMDbCache cache, OfflineTitleIndex titleIndex){
+        this(apikey, cache, titleIndex, NETWORK);
+    }
+
+    /**
+     * Constructs a TMDb client that sends its requests somewhere other than TMDb, for tests.
+     * @param apikey the TMDb API key
+     * @param cache the response cache, or {@code null} to always go to the network
+     * @param titleIndex the offline title index to search when TMDb cannot answer, or {@code null} for none
+     * @param upstream where requests are sent
+     */
+    TMDb(String apikey, TMDbCache cache, OfflineTitleIndex titleIndex, Upstream upstream){
         if (apikey == null || apikey.isBlank()) {
             throw new IllegalArgumentException("TMDb API key must not be null or blank");
         }
         this.apiKey = apikey;
+        this.cache = cache;
+        this.titleIndex = titleIndex;
+        this.upstream = upstream;
+    }
+
+    /**
+     * Executes an asynchronous GET request against the TMDb API and decodes the response.
+     * <p>
+     *     If a cache is configured the response is served from it when possible, and successful responses are stored
+     *     in it for {@code ttl}, re-encoded with only the decoded fields.
+     * </p>
+     * <p>
+     *     A request identical to one already on its way to TMDb does not go out again; it waits for the same call and
+     *     gets the same result, or the same failure.
+     * </p>
+     * <p>
+     *     Every attempt first takes a token from the process-wide rate limiter and is refused outright while the
+     *     circuit breaker is open. Rate limiting, 5xx responses, timeouts, and connection failures are retried with
+     *     jittered exponential backoff, waiting at least as long as any {@code Retry-After} header asks. If the request
+     *     still fails for one of those reasons, or the breaker is open, an expired cached response is served instead
+     *     when one is held.
+     * </p>
+     * @param endpoint the API path, such as {@code /search/movie}
+     * @param query the URL-encoded query parameters without the API key, or an empty string
+     * @param ttl how long a successful response may be cached
+     * @param codec decodes the response
+     * @param <T> the decoded type
+     * @return a future completing with the decoded response, or failing with a {@link TMDbException}
+     */
+    @SuppressWarnings("unchecked") //a key always maps to the codec of its endpoint
+    private <T> CompletableFuture<T> makeRequest(String endpoint, String query, Duration ttl, TMDbJson.Codec<T> codec) {
+        String cacheKey = endpoint + "?" + query;
+
+        if (cache != null) {
+            String cached = cache.get(cacheKey);
+            if (cached != null) {
+                try {
+                    return CompletableFuture.completedFuture(TMDbJson.decode(codec, cached));
+                } catch (IOException e) {
+                    System.err.println("Ignoring unreadable cached TMDb response: " + cacheKey); //fetch it again
+                }
+            }
+        }
+
+        CompletableFuture<T> shared = new CompletableFuture<>();
+        CompletableFuture<T> existing = (CompletableFuture<T>) inFlight.putIfAbsent(cacheKey, shared);
+        if (existing != null) {
+            Metrics.TMDB_COALESCED.increment();
+            return existing.copy(); //a caller cancelling its copy must not cancel the shared call
+        }
+
+        fetch(endpoint, query, cacheKey, ttl, codec).whenComplete((value, error) -> {
+            //removed before completing, so a request made after this point goes to the cache or makes a new call
+            inFlight.remove(cacheKey, shared);
+            if (error != null) {
+                shared.completeExceptionally(error);
+            } else {
+                shared.complete(value);
+            }
+        });
+
+        return shared.copy();
     }
 
     /**
-     * Executes a GET request against the TMDb API and parses the response as JSON.
-     * @param urlStr the full request URL
-     * @return the parsed {@link JsonObject}, or {@code null} if the request fails
+     * Fetches a response from TMDb that is not in the cache.
+     * @param endpoint the API path, such as {@code /search/movie}
+     * @param query the URL-encoded query parameters without the API key, or an empty string
+     * @param cacheKey the endpoint and query, for the cache and for messages
+     * @param ttl how long a successful response may be cached
+     * @param codec decodes the response
+     * @param <T> the decoded type
+     * @return a future completing with the decoded response, or failing with a {@link TMDbException}
      */
-    private JsonObject makeRequest(String urlStr) {
+    private <T> CompletableFuture<T> fetch(String endpoint, String query, String cacheKey, Duration ttl,
+                                           TMDbJson.Codec<T> codec) {
+        String urlStr = BASE_URL + endpoint + "?api_key=" + apiKey + (query.isEmpty() ? "" : "&" + query);
+
+        HttpRequest request;
         try {
-            URL url = URI.create(urlStr).toURL();
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("GET");
-            conn.setConnectTimeout(TIMEOUT_MS);
-            conn.setReadTimeout(TIMEOUT_MS);
+            request = HttpRequest.newBuilder(URI.create(urlStr))
+                    .header("Accept", "application/json")
+                    .GET()
+                    .build();
+        } catch (IllegalArgumentException e) {
+            Metrics.TMDB_FAILURES.increment();
+            System.err.println("TMDb request failed: " + cacheKey);
+            return CompletableFuture.failedFuture(
+                    new TMDbException(TMDbException.Kind.REJECTED, "Invalid TMDb request: " + cacheKey, 0, 0, e));
+        }
+
+        boolean search = endpoint.startsWith("/search");
+        (search ? searchRequests : detailRequests).incrementAndGet();
+        EndpointStats stats = search ? upstream.searchStats : upstream.detailsStats;
+        upstream.earnHedgeCredit();
+
+        return attempt(request, cacheKey, codec, ttl, stats, 0)
+                .exceptionallyCompose(error -> {
+                    TMDbException failure = TMDbException.from(error, "TMDb request failed: " + cacheKey);
+                    if (failure.getKind() == TMDbException.Kind.CANCELLED) {
+                        return CompletableFuture.failedFuture(failure); //nobody is waiting for it
+                    }
+                    Metrics.TMDB_FAILURES.increment();
+
+                    //TMDb is struggling rather than saying no, so an outdated answer beats none
+                    boolean outage = failure.getKind().isTransient() || failure.getKind() == TMDbException.Kind.CIRCUIT_OPEN;
+                    String stale = outage && cache != null ? cache.getStale(cacheKey) : null;
+                    if (stale != null) {
+                        try {
+                            T value = TMDbJson.decode(codec, stale);
+                            Metrics.TMDB_STALE_SERVED.increment();
+                            return CompletableFuture.completedFuture(value);
+                        } catch (IOException e) {
+                            //fall through to the failure
+                        }
+                    }
+
+                    System.err.println(failure.getMessage() + " [" + failure.getKind() + "]");
+                    return CompletableFuture.failedFuture(failure);
+                });
+    }
 
-            return JsonParser.parseReader(
-                    new InputStreamReader(conn.getInputStream())
-            ).getAsJsonObject();
+    /**
+     * Makes one attempt at a request, then retries it if it failed for a transient reason and attempts remain.
+     * @param request the request
+     * @param cacheKey the endpoint and query, for the cache and for messages
+     * @param codec decodes the response
+     * @param ttl how long a successful response may be cached
+     * @param stats the endpoint's latency metrics
+     * @param attempt the zero-based attempt number
+     * @param <T> the decoded type
+     * @return a future completing with the decoded response, or failing with a {@link TMDbException}
+     */
+    private <T> CompletableFuture<T> attempt(HttpRequest request, String cacheKey, TMDbJson.Codec<T> codec, Duration ttl,
+                                             EndpointStats stats, int attempt) {
+        long wait = upstream.rateLimit.reserve(MAX_RATE_LIMIT_WAIT_NANOS);
+        if (wait < 0) {
+            return CompletableFuture.failedFuture(
+                    new TMDbException(TMDbException.Kind.RATE_LIMITED, "TMDb rate limit reached: " + cacheKey));
+        }
+
+        CompletableFuture<T> sent = wait == 0
+                ? sendHedged(request, cacheKey, codec, ttl, stats)
+                : CompletableFuture.supplyAsync(() -> null, CompletableFuture.delayedExecutor(wait, TimeUnit.NANOSECONDS))
+                        .thenCompose(ignored -> sendHedged(request, cacheKey, codec, ttl, stats));
+
+        return sent.exceptionallyCompose(error -> {
+            TMDbException failure = TMDbException.from(error, "TMDb request failed: " + cacheKey);
+            if (!failure.getKind().isTransient() || attempt >= MAX_RETRIES) {
+                return CompletableFuture.failedFuture(failure);
+            }
+
+            //full jitter keeps retries from many commands from arriving together
+            long backoff = ThreadLocalRandom.current().nextLong(RETRY_BASE_MS << attempt) + 1;
+            long delay = Math.max(backoff, failure.getRetryAfterMillis());
+            if (delay > MAX_RETRY_DELAY_MS) {
+                return CompletableFuture.failedFuture(failure);
+            }
+
+            Metrics.TMDB_RETRIES.increment();
+            return CompletableFuture.supplyAsync(() -> null, CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS))
+                    .thenCompose(ignored -> attempt(request, cacheKey, codec, ttl, stats, attempt + 1));
+        });
+    }
 
-        } catch (Exception e) {
-            System.err.println("TMDb request failed: " + urlStr);
-            return null;
+    /**
+     * Sends a request and, if it has not answered by the endpoint's recent p95, sends a second copy and takes
+     * whichever answers first.
+     * <p>
+     *     A hedge is only sent while the circuit breaker is closed, a rate limit token is free right away, and the hedge
+     *     budget allows it, so hedging adds at most a small fraction of extra requests. As soon as one copy answers, the
+     *     other is cancelled, which abandons its exchange with TMDb.
+     * </p>
+     * @param request the request
+     * @param cacheKey the endpoint and query, for the cache and for messages
+     * @param codec decodes the response
+     * @param ttl how long a successful response may be cached
+     * @param stats the endpoint's latency metrics
+     * @param <T> the decoded type
+     * @return a future completing with the first decoded response, or failing once every copy has failed
+     */
+    private <T> CompletableFuture<T> sendHedged(HttpRequest request, String cacheKey, TMDbJson.Codec<T> codec, Duration ttl,
+                                                EndpointStats stats) {
+        CompletableFuture<T> first = send(request, cacheKey, codec, ttl, stats);
+        long hedgeDelay = stats.recent().hedgeDelayMillis();
+        if (hedgeDelay < 0) {
+            return first;
         }
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+        int[] outstanding = {1}; //guarded by result
+        List<CompletableFuture<T>> copies = new ArrayList<>(2); //guarded by result
+        copies.add(first);
+
+        BiConsumer<T, Throwable> settle = (value, error) -> {
+            List<CompletableFuture<T>> losers;
+            synchronized (result) {
+                if (error != null) {
+                    if (--outstanding[0] == 0) {
+                        result.completeExceptionally(error);
+                    }
+                    return;
+                }
+                if (!result.complete(value)) {
+                    return;
+                }
+                losers = List.copyOf(copies);
+            }
+            losers.forEach(copy -> copy.cancel(true)); //the winner is already done, so this only cancels the loser
+        };
+        first.whenComplete(settle);
+
+        CompletableFuture.delayedExecutor(hedgeDelay, TimeUnit.MILLISECONDS).execute(() -> {
+            synchronized (result) {
+                if (result.isDone() || upstream.breaker.getState() != CircuitBreaker.State.CLOSED
+                        || !upstream.spendHedgeCredit() || upstream.rateLimit.reserve(0) < 0) {
+                    return;
+                }
+                outstanding[0]++;
+            }
+
+            Metrics.TMDB_HEDGES.increment();
+            CompletableFuture<T> hedge = send(request, cacheKey, codec, ttl, stats);
+            boolean lost;
+            synchronized (result) {
+                copies.add(hedge);
+                lost = result.isDone(); //the first copy answered while this one was being sent
+            }
+            if (lost) {
+                hedge.cancel(true);
+            }
+            hedge.whenComplete(settle);
+        });
+
+        return result;
+    }
+
+    /**
+     * Sends a request once, if the circuit breaker allows it, and decodes the response. Cancelling the returned future
+     * cancels the exchange too.
+     * @param request the request, without a timeout
+     * @param cacheKey the endpoint and query, for the cache and for messages
+     * @param codec decodes the response
+     * @param ttl how long a successful response may be cached
+     * @param stats the endpoint's latency metrics, which also set the timeout
+     * @param <T> the decoded type
+     * @return a future completing with the decoded response, or failing with a {@link TMDbException}
+     */
+    private <T> CompletableFuture<T> send(HttpRequest request, String cacheKey, TMDbJson.Codec<T> codec, Duration ttl,
+                                          EndpointStats stats) {
+        if (!upstream.breaker.tryAcquire()) {
+            return CompletableFuture.failedFuture(
+                    new TMDbException(TMDbException.Kind.CIRCUIT_OPEN, "TMDb circuit open: " + cacheKey));
+        }
+
+        long timeoutMillis = stats.recent().timeoutMillis();
+        HttpRequest timed = HttpRequest.newBuilder(request, (name, value) -> true)
+                .timeout(Duration.ofMillis(timeoutMillis))
+                .build();
+        long started = System.nanoTime();
+
+        CompletableFuture<HttpResponse<InputStream>> exchange = upstream.transport.send(timed);
+
+        //the body is decoded as it streams in; this runs on the client's executor, never its selector thread
+        CompletableFuture<T> decoded = exchange
+                .handle((response, error) -> {
+                    if (error != null) {
+                        TMDbException failure = TMDbException.from(error, "TMDb request failed: " + cacheKey);
+                        switch (failure.getKind()) {
+                            case TIMEOUT -> {
+                                stats.recordTimeout(started);
+                                upstream.breaker.onFailure();
+                            }
+                            case NETWORK -> {
+                                stats.histogram().recordSince(started);
+                                upstream.breaker.onFailure();
+                            }
+                            default -> upstream.breaker.onAbandoned(); //cancelled, or a bug here; says nothing about TMDb
+                        }
+                        throw failure;
+                    }
+
+                    //the request timeout only covers the headers, so the body gets the same time again to arrive
+                    TimedBody body = new TimedBody(response.body());
+                    CompletableFuture.delayedExecutor(timeoutMillis, TimeUnit.MILLISECONDS).execute(body::expire);
+
+                    try (body) {
+                        int status = response.statusCode();
+                        if (status != 200) {
+                            stats.record(started);
+                            long retryAfter = retryAfterMillis(response);
+                            TMDbException failure = TMDbException.forStatus(status, "TMDb request failed: " + cacheKey, retryAfter);
+
+                            if (failure.getKind().isTransient()) {
+                                upstream.breaker.onFailure();
+                                if (retryAfter > 0) {
+                                    upstream.rateLimit.pause(TimeUnit.MILLISECONDS.toNanos(retryAfter));
+                                }
+                            } else {
+                                upstream.breaker.onSuccess(); //TMDb is up, it just said no
+                            }
+                            throw failure;
+                        }
+
+                        T value = TMDbJson.decode(codec, new InputStreamReader(body, StandardCharsets.UTF_8));
+                        stats.record(started);
+                        upstream.breaker.onSuccess();
+
+                        if (cache != null) {
+                            cache.put(cacheKey, TMDbJson.encode(codec, value), ttl);
+                        }
+
+                        return value;
+                    } catch (IOException e) {
+                        if (body.expired()) {
+                            stats.recordTimeout(started);
+                            upstream.breaker.onFailure();
+                            throw new TMDbException(TMDbException.Kind.TIMEOUT,
+                                    "TMDb response timed out: " + cacheKey, 200, 0, e);
+                        }
+                        if (body.broken()) {
+                            stats.histogram().recordSince(started);
+                            upstream.breaker.onFailure();
+                            throw new TMDbException(TMDbException.Kind.NETWORK,
+                                    "TMDb response was cut off: " + cacheKey, 200, 0, e);
+                        }
+
+                        stats.record(started);
+                        upstream.breaker.onSuccess();
+                        throw new TMDbException(TMDbException.Kind.MALFORMED,
+                                "TMDb response could not be read: " + cacheKey, 200, 0, e);
+                    }
+                });
+
+        decoded.whenComplete((value, error) -> {
+            if (decoded.isCancelled()) {
+                exchange.cancel(true);
+            }
+        });
+        return decoded;
+    }
+
+    /**
+     * A response body that is closed if it has not been read in full by a deadline. It remembers whether reading it
+     * failed, so a stalled or broken transfer can be told apart from a body that arrived but could not be decoded.
+     */
+    private static final class TimedBody extends FilterInputStream {
+
+        /**
+         * Whether the body has been closed by its reader. Guarded by {@code this}.
+         */
+        private boolean finished;
+
+        /**
+         * Whether the deadline passed first and closed the body. Guarded by {@code this}.
+         */
+        private boolean expired;
+
+        /**
+         * Whether a read from the underlying stream failed.
+         */
+        private volatile boolean broken;
+
+        /**
+         * Wraps a response body.
+         * @param in the body
+         */
+        TimedBody(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                return super.read();
+            } catch (IOException e) {
+                broken = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            try {
+                return super.read(b, off, len);
+            } catch (IOException e) {
+                broken = true;
+                throw e;
+            }
+        }
+
+        /**
+         * Closes the body if its reader has not finished, which wakes a read blocked waiting for more data.
+         */
+        void expire() {
+            synchronized (this) {
+                if (finished) {
+                    return;
+                }
+                expired = true;
+            }
+            try {
+                in.close();
+            } catch (IOException ignored) {
+                //the read it interrupts reports the failure
+            }
+        }
+
+        /**
+         * Returns whether the deadline closed the body.
+         * @return {@code true} if the body was closed before it had been read
+         */
+        synchronized boolean expired() {
+            return expired;
+        }
+
+        /**
+         * Returns whether reading the body failed.
+         * @return {@code true} if a read from the underlying stream threw
+         */
+        boolean broken() {
+            return broken;
+        }
+
+        @Override
+        public void close() throws IOException {
+            synchronized (this) {
+                finished = true;
+            }
+            super.close();
+        }
+    }
+
+    /**
+     * Returns the request timeouts currently in use.
+     * @return the search and details timeouts, for display
+     */
+    public static String describeTimeouts() {
+        return "search " + SEARCH_STATS.recent().timeoutMillis() + " ms, details "
+                + DETAILS_STATS.recent().timeoutMillis() + " ms";
+    }
+
+    /**
+     * Reads the {@code Retry-After} header, which TMDb sends as a number of seconds.
+     * @param response the response
+     * @return the delay in milliseconds, or {@code 0} if absent or not a number of seconds
+     */
+    private static long retryAfterMillis(HttpResponse<?> response) {
+        return response.headers().firstValue("Retry-After")
+                .map(value -> {
+                    try {
+                        return TimeUnit.SECONDS.toMillis(Long.parseLong(value.trim()));
+                    } catch (NumberFormatException e) {
+                        return 0L;
+                    }
+                })
+                .orElse(0L);
     }
 
     /**
      * Searches TMDb for movies matching a query string.
+     * <p>
+     *     When an offline title index is installed and no year is given, the index answers instead if TMDb cannot: the
+     *     circuit breaker is open, or the request fails and no cached response is held. The index only knows each
+     *     movie's original title, not translated ones, and has no release dates or posters, so it is never used while
+     *     TMDb answers. Results from the index have no year or poster.
+     * </p>
      * @param query the movie title or partial title
      * @param year optional release year filter, or {@code null}
-     * @return a {@link JsonArray} of search results, or an empty array if the request fails
+     * @return a future completing with the search results, or failing with a {@link TMDbException}
      */
-    public JsonArray searchMovies(String query, Integer year){
+    public CompletableFuture<List<SearchResult>> searchMovies(String query, Integer year){
+        //normalize so "Alien" and " alien" share a cache entry
+        String encodedQuery = URLEncoder.encode(query.trim().toLowerCase(Locale.ROOT), StandardCharsets.UTF_8);
 
-        String encodedQuery = URLEncoder.encode(query, StandardCharsets.UTF_8);
-
-        String url = BASE_URL + "/search/movie"
-                + "?api_key=" + apiKey
-                + "&query=" + encodedQuery
+        String params = "query=" + encodedQuery
                 + (year != null ? "&year=" + year : "");
 
-        JsonObject root = makeRequest(url);
+        CompletableFuture<List<SearchResult>> online = makeRequest("/search/movie", params, SEARCH_TTL, TMDbJson.SEARCH);
+        if (titleIndex == null || year != null) {
+            return online;
+        }
+
+        return online.exceptionallyCompose(error -> {
+            List<SearchResult> local = searchOffline(query);
+            return local.isEmpty() ? CompletableFuture.failedFuture(error) : CompletableFuture.completedFuture(local);
+        });
+    }
 
-        if ((root == null) || !root.has("results")){
-            return new JsonArray();
+    /**
+     * Searches the offline title index.
+     * @param query the movie title or partial title
+     * @return the matches as search results, possibly empty
+     */
+    private List<SearchResult> searchOffline(String query) {
+        long started = System.nanoTime();
+        List<SearchResult> results = new ArrayList<>();
+
+        for (OfflineTitleIndex.Hit hit : titleIndex.search(query, OFFLINE_SEARCH_LIMIT)) {
+            results.add(new SearchResult(hit.id(), hit.title(), 0, null));
         }
 
-        return root.getAsJsonArray("results");
+        Metrics.OFFLINE_SEARCH.recordSince(started);
+        return results;
     }
 
     /**
      * Retrieves full movie details from TMDb by movie ID.
+     * <p>
+     *     The details response includes the title, release date, poster path, and runtime, so one call is enough to
+     *     build a {@link Movie}.
+     * </p>
      * @param id the TMDb movie ID
-     * @return a {@link JsonObject} containing movie details, or {@code null} on failure
+     * @return a future completing with the movie's details, or failing with a {@link TMDbException}
      */
-    public JsonObject getMovieById(String id) {
-        String url = BASE_URL + "/movie/" + id
-                + "?api_key=" + apiKey;
-
-        return makeRequest(url);
+    public CompletableFuture<MovieDetails> getMovieById(String id) {
+        return makeRequest("/movie/" + URLEncoder.encode(id, StandardCharsets.UTF_8), "", DETAILS_TTL, TMDbJson.DETAILS);
     }
 
     /**
      * Retrieves the runtime of a movie in minutes.
+     * <p>
+     *     This shares its request (and cache entry) with {@link #getMovieById(String)}. Prefer reading the runtime from
+     *     details that are already in hand.
+     * </p>
      * @param movieId the TMDb movie ID
-     * @return the runtime in minutes, or {@code 0} if unavailable
+     * @return a future completing with the runtime in minutes, or {@code 0} if unavailable
      */
-    public int getRuntime(int movieId){
-        String url = BASE_URL + "/movie/" + movieId
-                + "?api_key=" + apiKey;
+    public CompletableFuture<Integer> getRuntime(int movieId){
+        return getMovieById(String.valueOf(movieId))
+                .thenApply(TMDb.MovieDetails::runtime)
+                .exceptionally(error -> 0);
+    }
 
-        JsonObject obj = makeRequest(url);
+    /**
+     * Returns the state of the circuit breaker shared by every client.
+     * @return the breaker state
+     */
+    public static CircuitBreaker.State getCircuitState() {
+        return BREAKER.getState();
+    }
 
-        if (obj != null && obj.has("runtime") && !obj.get("runtime").isJsonNull()) {
-            return obj.get("runtime").getAsInt();
-        }
+    /**
+     * Returns the number of search requests that went over the network.
+     * @return the search request count
+     */
+    public long getSearchRequestCount() {
+        return searchRequests.get();
+    }
 
-        return 0;
+    /**
+     * Returns the number of movie details requests that went over the network.
+     * @return the details request count
+     */
+    public long getDetailRequestCount() {
+        return detailRequests.get();
+    }
+
+    /**
+     * Returns the response cache in front of this client.
+     * @return the cache, or {@code null} if caching is disabled
+     */
+    public TMDbCache getCache() {
+        return cache;
     }
 
 }
@@ -0,0 +1,264 @@
+package com.mark.discordbot;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded response cache for TMDb lookups.
+ * <p>
+ *     Entries are compact JSON responses keyed by endpoint and query (never the API key). Each entry carries its
+ *     own expiry so search results and movie details can live for different lengths of time. Once the size bound is
+ *     reached the least recently used entry is evicted. The cache is periodically written to a local file and read back
+ *     on startup so a restart does not cold-start against the API.
+ * </p>
+ * <p>
+ *     Expired entries are kept for a grace period rather than dropped, so that while TMDb is unreachable
+ *     {@link #getStale(String)} can still answer with the last known response.
+ * </p>
+ */
+public final class TMDbCache {
+
+    /**
+     * Gson instance used to persist the cache. Compact output since the file is not meant to be read by hand.
+     */
+    private static final Gson GSON = new Gson();
+
+    /**
+     * How often the cache is written to disk if it has changed.
+     */
+    private static final long SAVE_INTERVAL_MINUTES = 5;
+
+    /**
+     * How long past its expiry an entry is kept for {@link #getStale(String)}.
+     */
+    private static final long STALE_GRACE_MS = TimeUnit.DAYS.toMillis(7);
+
+    /**
+     * A cached response body and the epoch millisecond after which it is no longer served.
+     * @param body the raw JSON body
+     * @param expiresAt expiry time in epoch milliseconds
+     */
+    private record Entry(String body, long expiresAt) {}
+
+    /**
+     * File the cache is persisted to.
+     */
+    private final Path file;
+
+    /**
+     * Maximum number of entries kept in memory.
+     */
+    private final int maxEntries;
+
+    /**
+     * Access-ordered map so iteration order is least recently used first.
+     */
+    private final LinkedHashMap<String, Entry> entries;
+
+    /**
+     * Number of lookups served from the cache.
+     */
+    private final AtomicLong hits = new AtomicLong();
+
+    /**
+     * Number of lookups that had to go to the network.
+     */
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Whether the cache has changed since it was last written to disk.
+     */
+    private boolean dirty;
+
+    /**
+     * Constructs a cache, loads any previously persisted entries, and starts the periodic save.
+     * @param file the file to persist the cache to
+     * @param maxEntries the maximum number of entries to keep
+     */
+    public TMDbCache(Path file, int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("TMDb cache size must be positive");
+        }
+        this.file = file;
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > TMDbCache.this.maxEntries;
+            }
+        };
+
+        load();
+
+        ScheduledExecutorService saver = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "tmdb-cache-saver");
+            t.setDaemon(true);
+            return t;
+        });
+        saver.scheduleWithFixedDelay(this::save, SAVE_INTERVAL_MINUTES, SAVE_INTERVAL_MINUTES, TimeUnit.MINUTES);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::save, "tmdb-cache-shutdown"));
+    }
+
+    /**
+     * Returns the cached body for a key if present and not expired.
+     * @param key the endpoint and query the response was cached under
+     * @return the cached JSON body, or {@code null} on a miss
+     */
+    public synchronized String get(String key) {
+        Entry entry = entries.get(key);
+
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        long now = System.currentTimeMillis();
+        if (entry.expiresAt() <= now) {
+            //kept for getStale until the grace period is over
+            if (entry.expiresAt() + STALE_GRACE_MS <= now) {
+                entries.remove(key);
+                dirty = true;
+            }
+            misses.incrementAndGet();
+            return null;
+        }
+
+        hits.incrementAndGet();
+        return entry.body();
+    }
+
+    /**
+     * Returns the cached body for a key even if it has expired, as long as it is within the grace period. Meant for
+     * when TMDb cannot be reached; does not count as a hit or miss.
+     * @param key the endpoint and query the response was cached under
+     * @return the cached JSON body, or {@code null} if none is held
+     */
+    public synchronized String getStale(String key) {
+        Entry entry = entries.get(key);
+
+        if (entry == null || entry.expiresAt() + STALE_GRACE_MS <= System.currentTimeMillis()) {
+            return null;
+        }
+
+        return entry.body();
+    }
+
+    /**
+     * Stores a response body, evicting the least recently used entry if the cache is full.
+     * @param key the endpoint and query to cache under
+     * @param body the raw JSON body
+     * @param ttl how long the entry may be served
+     */
+    public synchronized void put(String key, String body, Duration ttl) {
+        entries.put(key, new Entry(body, System.currentTimeMillis() + ttl.toMillis()));
+        dirty = true;
+    }
+
+    /**
+     * Returns the number of lookups served from the cache.
+     * @return the hit count
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of lookups that missed the cache.
+     * @return the miss count
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the number of entries currently held.
+     * @return the cache size
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Loads persisted entries from disk, dropping any past their grace period.
+     * <p>
+     *     A missing or unreadable file simply results in an empty cache.
+     * </p>
+     */
+    private synchronized void load() {
+        if (!Files.exists(file)) {
+            return;
+        }
+
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            Type mapType = new TypeToken<LinkedHashMap<String, Entry>>(){}.getType();
+            Map<String, Entry> loaded = GSON.fromJson(reader, mapType);
+
+            if (loaded == null) {
+                return;
+            }
+
+            long now = System.currentTimeMillis();
+            loaded.forEach((key, entry) -> {
+                if (entry != null && entry.body() != null && entry.expiresAt() + STALE_GRACE_MS > now) {
+                    entries.put(key, entry);
+                }
+            });
+
+            System.out.println("Loaded " + entries.size() + " cached TMDb responses");
+        } catch (Exception e) {
+            System.err.println("Could not load TMDb cache from " + file);
+        }
+    }
+
+    /**
+     * Writes the cache to disk if it has changed since the last save.
+     * <p>
+     *     The cache is written to a temporary file and flushed to disk first, then moved over the old one, so a crash
+     *     never leaves a half-written cache behind.
+     * </p>
+     */
+    public void save() {
+        Map<String, Entry> copy;
+        synchronized (this) {
+            if (!dirty) {
+                return;
+            }
+            copy = new LinkedHashMap<>(entries);
+            dirty = false;
+        }
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                GSON.toJson(copy, writer);
+            }
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            //moved only once the file is closed, which Windows needs for the rename
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Could not save TMDb cache to " + file);
+            synchronized (this) {
+                dirty = true; //retry on the next save
+            }
+        }
+    }
+}
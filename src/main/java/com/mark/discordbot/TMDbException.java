@@ -0,0 +1,181 @@
+package com.mark.discordbot;
+
+import java.io.IOException;
+import java.net.http.HttpTimeoutException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * A failed TMDb request.
+ * <p>
+ *     {@link TMDb} completes its futures exceptionally with this instead of with {@code null}, so callers can tell an
+ *     outage from a movie that does not exist.
+ * </p>
+ */
+public class TMDbException extends RuntimeException {
+
+    /**
+     * Serialization version, since exceptions are serializable.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * What went wrong.
+     */
+    public enum Kind {
+        /** TMDb answered 429, or the local rate limit would have made the request wait too long. */
+        RATE_LIMITED(true),
+        /** TMDb answered with a 5xx status. */
+        UNAVAILABLE(true),
+        /** No response arrived in time. */
+        TIMEOUT(true),
+        /** The connection failed, or the response could not be received. */
+        NETWORK(true),
+        /** TMDb has been failing, so the request was not sent. */
+        CIRCUIT_OPEN(false),
+        /** TMDb answered 404. */
+        NOT_FOUND(false),
+        /** TMDb answered with another 4xx status, or the request could not be built. */
+        REJECTED(false),
+        /** TMDb answered, but the response could not be read. */
+        MALFORMED(false),
+        /** The request was abandoned before it finished, such as a prefetch nobody wanted or a hedge that lost. */
+        CANCELLED(false),
+        /** The client failed while making the request or handling its response, not TMDb. */
+        INTERNAL(false);
+
+        /**
+         * Whether the same request may succeed if tried again shortly.
+         */
+        private final boolean transientFailure;
+
+        /**
+         * Constructs a kind.
+         * @param transientFailure whether a retry may succeed
+         */
+        Kind(boolean transientFailure) {
+            this.transientFailure = transientFailure;
+        }
+
+        /**
+         * Returns whether the same request may succeed if tried again shortly.
+         * @return whether the failure is transient
+         */
+        public boolean isTransient() {
+            return transientFailure;
+        }
+    }
+
+    /**
+     * What went wrong.
+     */
+    private final Kind kind;
+
+    /**
+     * The HTTP status, or {@code 0} if no response arrived.
+     */
+    private final int status;
+
+    /**
+     * How long TMDb asked the client to wait before retrying, in milliseconds, or {@code 0} if it did not say.
+     */
+    private final long retryAfterMillis;
+
+    /**
+     * Constructs an exception.
+     * @param kind what went wrong
+     * @param message a description including the endpoint
+     * @param status the HTTP status, or {@code 0} if no response arrived
+     * @param retryAfterMillis how long TMDb asked to wait, or {@code 0}
+     * @param cause the underlying error, or {@code null}
+     */
+    public TMDbException(Kind kind, String message, int status, long retryAfterMillis, Throwable cause) {
+        super(message, cause);
+        this.kind = kind;
+        this.status = status;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    /**
+     * Constructs an exception without a response or cause.
+     * @param kind what went wrong
+     * @param message a description including the endpoint
+     */
+    public TMDbException(Kind kind, String message) {
+        this(kind, message, 0, 0, null);
+    }
+
+    /**
+     * Classifies an HTTP status that is not 200.
+     * @param status the status
+     * @param message a description including the endpoint
+     * @param retryAfterMillis the {@code Retry-After} delay in milliseconds, or {@code 0}
+     * @return the exception
+     */
+    public static TMDbException forStatus(int status, String message, long retryAfterMillis) {
+        Kind kind;
+        if (status == 429) {
+            kind = Kind.RATE_LIMITED;
+        } else if (status >= 500) {
+            kind = Kind.UNAVAILABLE;
+        } else if (status == 404) {
+            kind = Kind.NOT_FOUND;
+        } else {
+            kind = Kind.REJECTED;
+        }
+        return new TMDbException(kind, message + " (" + status + ")", status, retryAfterMillis, null);
+    }
+
+    /**
+     * Finds the TMDb failure behind an error from a future, classifying anything else by its type: timeouts and other
+     * I/O errors as transient, and cancellations and everything else, such as a bug in the client, as not.
+     * @param error the error, possibly wrapped in a {@link CompletionException}
+     * @param message a description used if the error has to be classified
+     * @return the failure
+     */
+    public static TMDbException from(Throwable error, String message) {
+        Throwable cause = error;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+
+        if (cause instanceof TMDbException failure) {
+            return failure;
+        }
+        if (cause instanceof HttpTimeoutException) {
+            return new TMDbException(Kind.TIMEOUT, message, 0, 0, cause);
+        }
+        if (cause instanceof IOException) {
+            return new TMDbException(Kind.NETWORK, message, 0, 0, cause);
+        }
+        if (cause instanceof CancellationException) {
+            return new TMDbException(Kind.CANCELLED, message, 0, 0, cause);
+        }
+        return new TMDbException(Kind.INTERNAL, message, 0, 0, cause);
+    }
+
+    /**
+     * Returns what went wrong.
+     * @return the kind
+     */
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Returns the HTTP status.
+     * @return the status, or {@code 0} if no response arrived
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * Returns how long TMDb asked the client to wait before retrying.
+     * @return the delay in milliseconds, or {@code 0} if it did not say
+     */
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
@@ -0,0 +1,276 @@
+package com.mark.discordbot;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming decoders for the TMDb responses the bot reads.
+ * <p>
+ *     A search or details response carries far more than the bot uses: overviews, genres, production companies, and so
+ *     on. Rather than building a whole {@code JsonObject} tree, these decoders walk the response with a
+ *     {@link JsonReader}, copy out the handful of fields that are needed, and skip everything else without
+ *     materializing it.
+ * </p>
+ * <p>
+ *     Each decoder also writes its result back out as JSON in the same shape, holding only the kept fields. That is what
+ *     goes into the {@link TMDbCache}, so cached entries are a fraction of the size of the original response and read
+ *     back with the same decoder.
+ * </p>
+ */
+public final class TMDbJson {
+
+    /**
+     * Reads and writes one kind of response.
+     * @param <T> the decoded type
+     */
+    public interface Codec<T> {
+
+        /**
+         * Decodes a response.
+         * @param reader positioned at the start of the response
+         * @return the decoded value
+         * @throws IOException if the JSON is malformed or cannot be read
+         */
+        T read(JsonReader reader) throws IOException;
+
+        /**
+         * Encodes a value as a compact response.
+         * @param writer the writer
+         * @param value the value
+         * @throws IOException if the JSON cannot be written
+         */
+        void write(JsonWriter writer, T value) throws IOException;
+    }
+
+    /**
+     * Search responses: the {@code results} array, each entry reduced to a {@link TMDb.SearchResult}.
+     */
+    public static final Codec<List<TMDb.SearchResult>> SEARCH = new Codec<>() {
+        @Override
+        public List<TMDb.SearchResult> read(JsonReader reader) throws IOException {
+            List<TMDb.SearchResult> results = new ArrayList<>();
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (!reader.nextName().equals("results") || reader.peek() != JsonToken.BEGIN_ARRAY) {
+                    reader.skipValue();
+                    continue;
+                }
+
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    TMDb.SearchResult result = readSearchResult(reader);
+                    if (result != null) {
+                        results.add(result);
+                    }
+                }
+                reader.endArray();
+            }
+            reader.endObject();
+
+            return results;
+        }
+
+        @Override
+        public void write(JsonWriter writer, List<TMDb.SearchResult> results) throws IOException {
+            writer.beginObject().name("results").beginArray();
+            for (TMDb.SearchResult result : results) {
+                writer.beginObject();
+                writer.name("id").value(result.id());
+                writer.name("title").value(result.title());
+                writeYear(writer, result.year());
+                writer.name("poster_path").value(result.posterPath());
+                writer.endObject();
+            }
+            writer.endArray().endObject();
+        }
+    };
+
+    /**
+     * Movie details responses, reduced to a {@link TMDb.MovieDetails}.
+     */
+    public static final Codec<TMDb.MovieDetails> DETAILS = new Codec<>() {
+        @Override
+        public TMDb.MovieDetails read(JsonReader reader) throws IOException {
+            int id = 0;
+            String title = null;
+            int year = 0;
+            String poster = null;
+            int runtime = 0;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "id" -> id = nextInt(reader);
+                    case "title" -> title = nextString(reader);
+                    case "release_date" -> year = parseYear(nextString(reader));
+                    case "poster_path" -> poster = nextString(reader);
+                    case "runtime" -> runtime = nextInt(reader);
+                    default -> reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            if (id == 0 || title == null) {
+                throw new IOException("Movie details without an id or title");
+            }
+            return new TMDb.MovieDetails(id, title, year, poster, runtime);
+        }
+
+        @Override
+        public void write(JsonWriter writer, TMDb.MovieDetails details) throws IOException {
+            writer.beginObject();
+            writer.name("id").value(details.id());
+            writer.name("title").value(details.title());
+            writeYear(writer, details.year());
+            writer.name("poster_path").value(details.posterPath());
+            writer.name("runtime").value(details.runtime());
+            writer.endObject();
+        }
+    };
+
+    /**
+     * Not instantiable; all members are static.
+     */
+    private TMDbJson() {
+    }
+
+    /**
+     * Decodes a response and closes the reader, whether or not decoding succeeds.
+     * @param codec the response's codec
+     * @param source the response body
+     * @param <T> the decoded type
+     * @return the decoded value
+     * @throws IOException if the JSON is malformed or cannot be read
+     */
+    public static <T> T decode(Codec<T> codec, Reader source) throws IOException {
+        try (JsonReader reader = new JsonReader(source)) {
+            return codec.read(reader);
+        } catch (IllegalStateException | NumberFormatException e) {
+            //thrown by JsonReader when a field has an unexpected type
+            throw new IOException("Unexpected TMDb response shape", e);
+        }
+    }
+
+    /**
+     * Decodes a response held in a string, such as a cached one.
+     * @param codec the response's codec
+     * @param json the response body
+     * @param <T> the decoded type
+     * @return the decoded value
+     * @throws IOException if the JSON is malformed
+     */
+    public static <T> T decode(Codec<T> codec, String json) throws IOException {
+        return decode(codec, new StringReader(json));
+    }
+
+    /**
+     * Encodes a value as compact JSON.
+     * @param codec the value's codec
+     * @param value the value
+     * @param <T> the value type
+     * @return the JSON text
+     */
+    public static <T> String encode(Codec<T> codec, T value) {
+        StringWriter out = new StringWriter(256);
+        try (JsonWriter writer = new JsonWriter(out)) {
+            writer.setSerializeNulls(false);
+            codec.write(writer, value);
+        } catch (IOException e) {
+            throw new IllegalStateException("Writing to a string cannot fail", e);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Reads one entry of a search response's {@code results} array.
+     * @param reader positioned at the entry
+     * @return the result, or {@code null} if it has no ID or title
+     * @throws IOException if the JSON is malformed
+     */
+    private static TMDb.SearchResult readSearchResult(JsonReader reader) throws IOException {
+        int id = 0;
+        String title = null;
+        int year = 0;
+        String poster = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "id" -> id = nextInt(reader);
+                case "title" -> title = nextString(reader);
+                case "release_date" -> year = parseYear(nextString(reader));
+                case "poster_path" -> poster = nextString(reader);
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return id == 0 || title == null ? null : new TMDb.SearchResult(id, title, year, poster);
+    }
+
+    /**
+     * Reads a string that may be {@code null}.
+     * @param reader positioned at the value
+     * @return the string, or {@code null}
+     * @throws IOException if the JSON is malformed
+     */
+    private static String nextString(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+
+    /**
+     * Reads an integer that may be {@code null}.
+     * @param reader positioned at the value
+     * @return the integer, or {@code 0} if {@code null}
+     * @throws IOException if the JSON is malformed
+     */
+    private static int nextInt(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return 0;
+        }
+        return reader.nextInt();
+    }
+
+    /**
+     * Reads the year from a release date such as {@code 1979-05-25}.
+     * @param releaseDate the release date, possibly empty or {@code null}
+     * @return the year, or {@code 0} if unknown
+     */
+    private static int parseYear(String releaseDate) {
+        if (releaseDate == null || releaseDate.length() < 4) {
+            return 0;
+        }
+
+        try {
+            return Integer.parseInt(releaseDate, 0, 4, 10);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Writes a year as a release date the decoders read back to the same year.
+     * @param writer the writer
+     * @param year the year, or {@code 0} if unknown
+     * @throws IOException if the JSON cannot be written
+     */
+    private static void writeYear(JsonWriter writer, int year) throws IOException {
+        if (year > 0) {
+            writer.name("release_date").value(String.format("%04d", year));
+        }
+    }
+}
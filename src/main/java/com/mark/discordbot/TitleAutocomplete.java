@@ -0,0 +1,247 @@
+package com.mark.discordbot;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Title suggestions for the /addmovie {@code name} option.
+ * <p>
+ *     Suggestions are cached by the typed prefix, so going back over a title, or several users typing the same title,
+ *     is answered from memory. On a cache miss the TMDb search waits for a short pause in typing, and a newer keystroke
+ *     from the same user cancels the older search before it is sent. Every lookup has a hard time budget; if TMDb has
+ *     not answered by then, the suggestions cached for the longest shorter prefix are filtered and used instead, and the
+ *     late TMDb answer is still cached for the next keystroke.
+ * </p>
+ */
+public class TitleAutocomplete {
+
+    /**
+     * Prefixes shorter than this get no suggestions, since they match too much to be useful.
+     */
+    private static final int MIN_PREFIX_LENGTH = 2;
+
+    /**
+     * How long typing must pause before a TMDb search is sent.
+     */
+    private static final long DEBOUNCE_MS = 150;
+
+    /**
+     * Longest a lookup may take before cached suggestions are used instead, well inside Discord's 3 second window.
+     */
+    private static final long BUDGET_MS = 1500;
+
+    /**
+     * Maximum number of choices Discord accepts.
+     */
+    private static final int MAX_SUGGESTIONS = 25;
+
+    /**
+     * Maximum number of prefixes kept in the cache.
+     */
+    private static final int MAX_CACHED_PREFIXES = 2000;
+
+    /**
+     * How long a cached prefix stays usable.
+     */
+    private static final long CACHE_TTL_MS = TimeUnit.MINUTES.toMillis(30);
+
+    /**
+     * One suggested movie.
+     * @param id the TMDb movie ID
+     * @param title the movie title
+     * @param year the release year, or {@code 0} if unknown
+     */
+    public record Suggestion(String id, String title, int year) {}
+
+    /**
+     * Cached suggestions for a prefix.
+     * @param suggestions the suggestions
+     * @param expiresAt expiry time in epoch milliseconds
+     */
+    private record Cached(List<Suggestion> suggestions, long expiresAt) {}
+
+    /**
+     * A user's lookup that is waiting for TMDb.
+     * @param timer the debounce timer that will send the search
+     * @param result the future handed out for the lookup
+     */
+    private record Pending(ScheduledFuture<?> timer, CompletableFuture<List<Suggestion>> result) {}
+
+    /**
+     * Client used to search.
+     */
+    private final TMDb tmdb;
+
+    /**
+     * Suggestions keyed by normalized prefix, least recently used first. Guarded by {@code this}.
+     */
+    private final LinkedHashMap<String, Cached> cache = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+            return size() > MAX_CACHED_PREFIXES;
+        }
+    };
+
+    /**
+     * Each user's latest lookup still waiting for TMDb.
+     */
+    private final Map<Long, Pending> pending = new ConcurrentHashMap<>();
+
+    /**
+     * Timer for the typing pause.
+     */
+    private final ScheduledExecutorService debouncer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "title-autocomplete");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Constructs an autocomplete backed by a TMDb client.
+     * @param tmdb the client to search with
+     */
+    public TitleAutocomplete(TMDb tmdb) {
+        this.tmdb = tmdb;
+    }
+
+    /**
+     * Returns suggestions for what a user has typed so far.
+     * <p>
+     *     The returned future never fails; it completes within the time budget, with cached suggestions if TMDb was too
+     *     slow. It is cancelled if the same user types again before it completes.
+     * </p>
+     * @param userId the user typing
+     * @param input the text typed so far
+     * @return the suggestions, best match first
+     */
+    public CompletableFuture<List<Suggestion>> suggest(long userId, String input) {
+        String prefix = normalize(input);
+
+        //any older lookup from this user is now stale, so never send it
+        Pending previous = pending.remove(userId);
+        if (previous != null) {
+            previous.timer().cancel(false);
+            previous.result().cancel(false);
+        }
+
+        if (prefix.length() < MIN_PREFIX_LENGTH) {
+            return CompletableFuture.completedFuture(List.of());
+        }
+
+        List<Suggestion> cached = lookup(prefix);
+        if (cached != null) {
+            Metrics.AUTOCOMPLETE_HITS.increment();
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        Metrics.AUTOCOMPLETE_MISSES.increment();
+        CompletableFuture<List<Suggestion>> result = new CompletableFuture<>();
+
+        ScheduledFuture<?> timer = debouncer.schedule(() -> {
+            tmdb.searchMovies(prefix, null).whenComplete((results, error) -> {
+                if (error != null) {
+                    result.complete(fallback(prefix)); //no point waiting out the budget
+                    return;
+                }
+
+                List<Suggestion> suggestions = toSuggestions(results);
+                store(prefix, suggestions); //kept even if this lookup already timed out
+                result.complete(suggestions);
+            });
+        }, DEBOUNCE_MS, TimeUnit.MILLISECONDS);
+
+        Pending lookup = new Pending(timer, result);
+        pending.put(userId, lookup);
+        result.whenComplete((suggestions, error) -> pending.remove(userId, lookup));
+
+        //out of time: answer from the cache instead
+        debouncer.schedule(() -> {
+            if (!result.isDone()) {
+                result.complete(fallback(prefix));
+            }
+        }, BUDGET_MS, TimeUnit.MILLISECONDS);
+
+        return result;
+    }
+
+    /**
+     * Returns the cached suggestions for a prefix.
+     * @param prefix the normalized prefix
+     * @return the suggestions, or {@code null} if not cached or expired
+     */
+    private synchronized List<Suggestion> lookup(String prefix) {
+        Cached cached = cache.get(prefix);
+        if (cached == null) {
+            return null;
+        }
+
+        if (cached.expiresAt() < System.currentTimeMillis()) {
+            cache.remove(prefix);
+            return null;
+        }
+
+        return cached.suggestions();
+    }
+
+    /**
+     * Caches the suggestions for a prefix.
+     * @param prefix the normalized prefix
+     * @param suggestions the suggestions
+     */
+    private synchronized void store(String prefix, List<Suggestion> suggestions) {
+        cache.put(prefix, new Cached(suggestions, System.currentTimeMillis() + CACHE_TTL_MS));
+    }
+
+    /**
+     * Builds the best answer available from the cache alone: the suggestions for the longest cached shorter prefix,
+     * narrowed to titles that still contain the full prefix.
+     * @param prefix the normalized prefix
+     * @return the fallback suggestions, possibly empty
+     */
+    private List<Suggestion> fallback(String prefix) {
+        for (int length = prefix.length() - 1; length >= MIN_PREFIX_LENGTH; length--) {
+            List<Suggestion> shorter = lookup(prefix.substring(0, length));
+            if (shorter != null) {
+                Metrics.AUTOCOMPLETE_FALLBACKS.increment();
+                return shorter.stream()
+                        .filter(s -> s.title().toLowerCase(Locale.ROOT).contains(prefix))
+                        .toList();
+            }
+        }
+
+        return List.of();
+    }
+
+    /**
+     * Converts TMDb search results to suggestions.
+     * @param results the search results
+     * @return up to {@link #MAX_SUGGESTIONS} suggestions
+     */
+    private static List<Suggestion> toSuggestions(List<TMDb.SearchResult> results) {
+        List<Suggestion> suggestions = new ArrayList<>(Math.min(results.size(), MAX_SUGGESTIONS));
+
+        for (TMDb.SearchResult movie : results.subList(0, Math.min(results.size(), MAX_SUGGESTIONS))) {
+            suggestions.add(new Suggestion(String.valueOf(movie.id()), movie.title(), movie.year()));
+        }
+
+        return List.copyOf(suggestions);
+    }
+
+    /**
+     * Normalizes typed text so that case and spacing differences share a cache entry.
+     * @param input the typed text
+     * @return the normalized prefix
+     */
+    private static String normalize(String input) {
+        return input.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,270 @@
+package com.mark.discordbot;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Builds an {@link OfflineTitleIndex} file from TMDb's daily movie ID export.
+ * <p>
+ *     The export ({@code movie_ids_MM_DD_YYYY.json.gz} from {@code files.tmdb.org/p/exports}) is a gzipped file with one
+ *     JSON object per line, holding a movie's ID, original title, popularity, and adult and video flags. Adult titles and
+ *     video releases are left out, since the bot never schedules them.
+ * </p>
+ * <p>
+ *     Run with {@code java -cp movie-bot.jar com.mark.discordbot.TitleExportImporter <export.json.gz> [index file]}. The
+ *     index is written to a temporary file and moved into place, so a running bot never sees a partial file.
+ * </p>
+ */
+public class TitleExportImporter {
+
+    /**
+     * One movie read from the export.
+     * @param id the TMDb movie ID
+     * @param title the original title
+     * @param popularity the popularity score
+     */
+    private record ExportedMovie(int id, String title, float popularity) {}
+
+    /**
+     * Growable list of movie positions for one word.
+     */
+    private static final class Postings {
+
+        /**
+         * The positions, in ascending order.
+         */
+        private int[] movies = new int[4];
+
+        /**
+         * Number of positions in use.
+         */
+        private int size;
+
+        /**
+         * Appends a position.
+         * @param movie the movie's position
+         */
+        private void add(int movie) {
+            if (size == movies.length) {
+                movies = Arrays.copyOf(movies, size * 2);
+            }
+            movies[size++] = movie;
+        }
+    }
+
+    /**
+     * Not instantiable; all methods are static.
+     */
+    private TitleExportImporter() {
+    }
+
+    /**
+     * Imports an export file.
+     * @param args the export file, and optionally the index file to write
+     * @throws IOException if the export cannot be read or the index cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: TitleExportImporter <movie_ids export .json.gz> [index file]");
+            return;
+        }
+
+        Path export = Path.of(args[0]);
+        Path index = Path.of(args.length > 1 ? args[1] : TMDb.DEFAULT_TITLE_INDEX_FILE);
+
+        long started = System.nanoTime();
+        List<ExportedMovie> movies = read(export);
+        write(movies, index);
+
+        System.out.println("Indexed " + movies.size() + " movies into " + index + " in "
+                + (System.nanoTime() - started) / 1_000_000 + " ms");
+    }
+
+    /**
+     * Reads the movies from an export file, most popular first.
+     * @param export the gzipped export
+     * @return the movies
+     * @throws IOException if the export cannot be read
+     */
+    private static List<ExportedMovie> read(Path export) throws IOException {
+        List<ExportedMovie> movies = new ArrayList<>();
+        int skipped = 0;
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(export), 1 << 16), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+
+                ExportedMovie movie = readLine(line);
+                if (movie == null) {
+                    skipped++;
+                } else {
+                    movies.add(movie);
+                }
+            }
+        }
+
+        if (skipped > 0) {
+            System.out.println("Skipped " + skipped + " adult, video, or unreadable entries");
+        }
+
+        movies.sort(Comparator.comparingDouble(ExportedMovie::popularity).reversed()
+                .thenComparingInt(ExportedMovie::id));
+        return movies;
+    }
+
+    /**
+     * Writes the index file in the layout {@link OfflineTitleIndex} reads.
+     * @param movies the movies, most popular first
+     * @param index the index file
+     * @throws IOException if the file cannot be written
+     */
+    private static void write(List<ExportedMovie> movies, Path index) throws IOException {
+        //movie positions are appended in order, so every posting list comes out sorted
+        Map<String, Postings> words = new HashMap<>();
+        for (int i = 0; i < movies.size(); i++) {
+            Set<String> titleWords = new LinkedHashSet<>(Arrays.asList(TitleIndex.normalize(movies.get(i).title()).split(" ")));
+            for (String word : titleWords) {
+                if (!word.isEmpty()) {
+                    words.computeIfAbsent(word, w -> new Postings()).add(i);
+                }
+            }
+        }
+
+        List<byte[]> sortedWords = new ArrayList<>(words.size());
+        for (String word : words.keySet()) {
+            sortedWords.add(word.getBytes(StandardCharsets.UTF_8));
+        }
+        sortedWords.sort(Arrays::compareUnsigned);
+
+        List<byte[]> titles = new ArrayList<>(movies.size());
+        long stringBytes = 0;
+        long postingCount = 0;
+        for (ExportedMovie movie : movies) {
+            byte[] title = movie.title().getBytes(StandardCharsets.UTF_8);
+            titles.add(title);
+            stringBytes += title.length;
+        }
+        for (byte[] word : sortedWords) {
+            stringBytes += word.length;
+            postingCount += words.get(new String(word, StandardCharsets.UTF_8)).size;
+        }
+
+        long total = OfflineTitleIndex.HEADER_BYTES
+                + (long) movies.size() * OfflineTitleIndex.MOVIE_BYTES
+                + (long) sortedWords.size() * OfflineTitleIndex.WORD_BYTES
+                + postingCount * 4
+                + stringBytes;
+        if (total > Integer.MAX_VALUE) {
+            throw new IOException("Title index would be too large: " + total + " bytes");
+        }
+
+        Path tmp = index.resolveSibling(index.getFileName() + ".tmp");
+        try (OutputStream file = Files.newOutputStream(tmp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+            out.writeInt(OfflineTitleIndex.MAGIC);
+            out.writeInt(OfflineTitleIndex.FORMAT_VERSION);
+            out.writeInt(movies.size());
+            out.writeInt(sortedWords.size());
+            out.writeInt((int) postingCount);
+            out.writeInt((int) stringBytes);
+
+            //strings go titles first, then words, in the same order as their records
+            int stringOffset = 0;
+            for (int i = 0; i < movies.size(); i++) {
+                out.writeInt(movies.get(i).id());
+                out.writeFloat(movies.get(i).popularity());
+                out.writeInt(stringOffset);
+                out.writeInt(titles.get(i).length);
+                stringOffset += titles.get(i).length;
+            }
+
+            int firstPosting = 0;
+            for (byte[] word : sortedWords) {
+                int count = words.get(new String(word, StandardCharsets.UTF_8)).size;
+                out.writeInt(stringOffset);
+                out.writeInt(word.length);
+                out.writeInt(firstPosting);
+                out.writeInt(count);
+                stringOffset += word.length;
+                firstPosting += count;
+            }
+
+            for (byte[] word : sortedWords) {
+                Postings postings = words.get(new String(word, StandardCharsets.UTF_8));
+                for (int i = 0; i < postings.size; i++) {
+                    out.writeInt(postings.movies[i]);
+                }
+            }
+
+            for (byte[] title : titles) {
+                out.write(title);
+            }
+            for (byte[] word : sortedWords) {
+                out.write(word);
+            }
+        }
+
+        Files.move(tmp, index, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads one line of the export, pulling out only the fields the index needs.
+     * @param line the line
+     * @return the movie, or {@code null} if it is adult, a video, missing its ID or title, or unreadable
+     */
+    private static ExportedMovie readLine(String line) {
+        int id = 0;
+        String title = null;
+        float popularity = 0f;
+        boolean excluded = false;
+
+        try (JsonReader reader = new JsonReader(new StringReader(line))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (reader.peek() == JsonToken.NULL) {
+                    reader.nextNull();
+                    continue;
+                }
+
+                switch (name) {
+                    case "id" -> id = reader.nextInt();
+                    case "original_title" -> title = reader.nextString();
+                    case "popularity" -> popularity = (float) reader.nextDouble();
+                    case "adult", "video" -> excluded |= reader.nextBoolean();
+                    default -> reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
+            return null; //a bad line should not sink the whole import
+        }
+
+        return excluded || id == 0 || title == null ? null : new ExportedMovie(id, title, popularity);
+    }
+}
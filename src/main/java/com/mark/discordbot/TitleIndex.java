@@ -0,0 +1,184 @@
+package com.mark.discordbot;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Fuzzy title index over one guild's movie list.
+ * <p>
+ *     Each title is normalized once (case, accents, and punctuation removed) and split into trigrams, and each trigram
+ *     points at the movies containing it. A search only touches the movies that share a trigram with the query, so it
+ *     tolerates typos and ranks results without rescanning or re-lowercasing the whole list. Adds, removes, and updates
+ *     change only the entries for the movie involved.
+ * </p>
+ * <p>
+ *     Not thread-safe; {@link MovieStorage} only uses it while holding the lock of the guild it belongs to.
+ * </p>
+ */
+public final class TitleIndex {
+
+    /**
+     * Lowest similarity for a fuzzy match that does not contain the query outright.
+     */
+    private static final double MIN_SCORE = 0.3;
+
+    /**
+     * One match.
+     * @param movie the matching movie
+     * @param exact whether the normalized title equals the normalized query
+     * @param contains whether the normalized title contains the normalized query
+     * @param score trigram similarity between the title and query, from 0 to 1
+     */
+    public record Match(Movie movie, boolean exact, boolean contains, double score) {}
+
+    /**
+     * An indexed movie.
+     * @param movie the movie
+     * @param title the normalized title
+     * @param trigrams the title's trigrams
+     */
+    private record Entry(Movie movie, String title, Set<String> trigrams) {}
+
+    /**
+     * Indexed movies, keyed by identity so that two copies of a title are kept apart.
+     */
+    private final Map<Movie, Entry> entries = new IdentityHashMap<>();
+
+    /**
+     * Movies containing each trigram.
+     */
+    private final Map<String, List<Entry>> postings = new HashMap<>();
+
+    /**
+     * Constructs an index over a list.
+     * @param movies the movies to index
+     */
+    public TitleIndex(List<Movie> movies) {
+        for (Movie movie : movies) {
+            add(movie);
+        }
+    }
+
+    /**
+     * Adds a movie.
+     * @param movie the movie
+     */
+    public void add(Movie movie) {
+        String title = normalize(movie.getTitle());
+        Entry entry = new Entry(movie, title, trigrams(title));
+
+        entries.put(movie, entry);
+        for (String trigram : entry.trigrams()) {
+            postings.computeIfAbsent(trigram, t -> new ArrayList<>(2)).add(entry);
+        }
+    }
+
+    /**
+     * Removes a movie.
+     * @param movie the movie, as stored
+     */
+    public void remove(Movie movie) {
+        Entry entry = entries.remove(movie);
+        if (entry == null) {
+            return;
+        }
+
+        for (String trigram : entry.trigrams()) {
+            List<Entry> list = postings.get(trigram);
+            list.remove(entry);
+            if (list.isEmpty()) {
+                postings.remove(trigram);
+            }
+        }
+    }
+
+    /**
+     * Replaces a stored movie with its updated copy.
+     * @param current the movie as stored
+     * @param updated the replacement
+     */
+    public void replace(Movie current, Movie updated) {
+        remove(current);
+        add(updated);
+    }
+
+    /**
+     * Finds the movies best matching a query.
+     * <p>
+     *     Exact title matches rank first, then titles containing the query, then the rest by trigram similarity. Titles
+     *     that neither contain the query nor reach a minimum similarity are left out.
+     * </p>
+     * @param query the text to match
+     * @param limit the maximum number of matches
+     * @return the matches, best first
+     */
+    public List<Match> search(String query, int limit) {
+        String normalized = normalize(query);
+        if (normalized.isEmpty()) {
+            return List.of();
+        }
+
+        Set<String> queryTrigrams = trigrams(normalized);
+        Map<Entry, Integer> shared = new IdentityHashMap<>();
+
+        for (String trigram : queryTrigrams) {
+            List<Entry> list = postings.get(trigram);
+            if (list != null) {
+                for (Entry entry : list) {
+                    shared.merge(entry, 1, Integer::sum);
+                }
+            }
+        }
+
+        List<Match> matches = new ArrayList<>();
+        for (Map.Entry<Entry, Integer> candidate : shared.entrySet()) {
+            Entry entry = candidate.getKey();
+            double score = 2.0 * candidate.getValue() / (queryTrigrams.size() + entry.trigrams().size());
+            boolean contains = entry.title().contains(normalized);
+
+            if (contains || score >= MIN_SCORE) {
+                matches.add(new Match(entry.movie(), entry.title().equals(normalized), contains, score));
+            }
+        }
+
+        matches.sort(Comparator.comparing(Match::exact)
+                .thenComparing(Match::contains)
+                .thenComparingDouble(Match::score)
+                .reversed());
+
+        return matches.size() > limit ? List.copyOf(matches.subList(0, limit)) : matches;
+    }
+
+    /**
+     * Normalizes a title or query: lower case, accents removed, and anything other than letters and digits turned into
+     * single spaces.
+     * @param text the text
+     * @return the normalized text
+     */
+    public static String normalize(String text) {
+        String stripped = Normalizer.normalize(text, Normalizer.Form.NFD).replaceAll("\\p{M}", "");
+        return stripped.toLowerCase(Locale.ROOT).replaceAll("[^\\p{L}\\p{N}]+", " ").trim();
+    }
+
+    /**
+     * Splits normalized text into trigrams, padded so that short words and word starts still produce some.
+     * @param text the normalized text
+     * @return the trigrams
+     */
+    private static Set<String> trigrams(String text) {
+        String padded = "  " + text + " ";
+        Set<String> trigrams = new LinkedHashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            trigrams.add(padded.substring(i, i + 3));
+        }
+        return trigrams;
+    }
+}
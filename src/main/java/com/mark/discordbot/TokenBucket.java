@@ -0,0 +1,90 @@
+package com.mark.discordbot;
+
+/**
+ * Token bucket rate limiter that hands out reservations instead of blocking.
+ * <p>
+ *     The bucket refills at a steady rate up to its capacity, so short bursts go straight through and longer ones are
+ *     spread out. A caller that finds the bucket empty is told how long to wait for its token; the token is reserved
+ *     for it, so later callers queue behind it. A caller that would have to wait longer than it is willing to gets
+ *     nothing and can fail fast. The bucket can also be paused, for when the server itself asks clients to back off.
+ * </p>
+ */
+public class TokenBucket {
+
+    /**
+     * Most tokens held at once, which is the largest burst let straight through.
+     */
+    private final double capacity;
+
+    /**
+     * Tokens added per nanosecond.
+     */
+    private final double tokensPerNano;
+
+    /**
+     * Tokens currently available; negative when reservations are queued. Guarded by {@code this}.
+     */
+    private double tokens;
+
+    /**
+     * When {@link #tokens} was last refilled, in {@link System#nanoTime()} units. Guarded by {@code this}.
+     */
+    private long refilledAt = System.nanoTime();
+
+    /**
+     * No token is usable before this time, in {@link System#nanoTime()} units. Guarded by {@code this}.
+     */
+    private long pausedUntil = refilledAt;
+
+    /**
+     * Constructs a full bucket.
+     * @param capacity the largest burst
+     * @param perSecond the sustained rate
+     */
+    public TokenBucket(int capacity, int perSecond) {
+        if (capacity <= 0 || perSecond <= 0) {
+            throw new IllegalArgumentException("Token bucket capacity and rate must be positive");
+        }
+        this.capacity = capacity;
+        this.tokensPerNano = perSecond / 1e9;
+        this.tokens = capacity;
+    }
+
+    /**
+     * Reserves a token.
+     * @param maxWaitNanos the longest the caller is willing to wait
+     * @return how long to wait before using the token in nanoseconds, or {@code -1} if that would be longer than
+     * {@code maxWaitNanos}, in which case nothing is reserved
+     */
+    public synchronized long reserve(long maxWaitNanos) {
+        long now = System.nanoTime();
+        refill(now);
+
+        long wait = tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / tokensPerNano);
+        wait = Math.max(wait, pausedUntil - now);
+
+        if (wait > maxWaitNanos) {
+            return -1;
+        }
+
+        tokens -= 1;
+        return wait;
+    }
+
+    /**
+     * Stops handing out usable tokens for a while.
+     * @param nanos how long to pause for
+     */
+    public synchronized void pause(long nanos) {
+        pausedUntil = Math.max(pausedUntil, System.nanoTime() + nanos);
+    }
+
+    /**
+     * Adds the tokens earned since the last refill.
+     * @param now the current time in {@link System#nanoTime()} units
+     */
+    private void refill(long now) {
+        tokens = Math.min(capacity, tokens + (now - refilledAt) * tokensPerNano);
+        refilledAt = now;
+    }
+}
@@ -0,0 +1,95 @@
+package com.mark.discordbot;
+
+/**
+ * Tests for {@link CircuitBreaker} state changes.
+ */
+public class CircuitBreakerTest {
+
+    /**
+     * Cool-down used by the tests, in milliseconds.
+     */
+    private static final long COOL_DOWN_MILLIS = 50;
+
+    /**
+     * The breaker opens after the threshold of consecutive failures, and a success in between resets the count.
+     */
+    public void testOpensAfterConsecutiveFailures() {
+        CircuitBreaker breaker = new CircuitBreaker("test", 3, COOL_DOWN_MILLIS);
+
+        breaker.onFailure();
+        breaker.onFailure();
+        breaker.onSuccess();
+        breaker.onFailure();
+        breaker.onFailure();
+        assert breaker.getState() == CircuitBreaker.State.CLOSED;
+        assert breaker.tryAcquire();
+
+        breaker.onFailure();
+        assert breaker.getState() == CircuitBreaker.State.OPEN;
+        assert !breaker.tryAcquire() : "an open breaker refuses requests";
+    }
+
+    /**
+     * After the cool-down one trial request goes out; its success closes the breaker.
+     */
+    public void testTrialSuccessCloses() throws InterruptedException {
+        CircuitBreaker breaker = open();
+        Thread.sleep(COOL_DOWN_MILLIS + 20);
+
+        assert breaker.tryAcquire() : "the trial request should be let through";
+        assert breaker.getState() == CircuitBreaker.State.HALF_OPEN;
+        assert !breaker.tryAcquire() : "only one trial request at a time";
+
+        breaker.onSuccess();
+        assert breaker.getState() == CircuitBreaker.State.CLOSED;
+        assert breaker.tryAcquire();
+    }
+
+    /**
+     * A failed trial request opens the breaker again for another cool-down.
+     */
+    public void testTrialFailureReopens() throws InterruptedException {
+        CircuitBreaker breaker = open();
+        Thread.sleep(COOL_DOWN_MILLIS + 20);
+
+        assert breaker.tryAcquire();
+        breaker.onFailure();
+        assert breaker.getState() == CircuitBreaker.State.OPEN;
+        assert !breaker.tryAcquire();
+    }
+
+    /**
+     * An abandoned trial request neither closes nor re-opens the breaker; the next request becomes the trial.
+     */
+    public void testAbandonedTrialHandsOver() throws InterruptedException {
+        CircuitBreaker breaker = open();
+        Thread.sleep(COOL_DOWN_MILLIS + 20);
+
+        assert breaker.tryAcquire();
+        breaker.onAbandoned();
+        assert breaker.tryAcquire() : "the next request should become the trial";
+        assert breaker.getState() == CircuitBreaker.State.HALF_OPEN;
+    }
+
+    /**
+     * Abandoned requests do not count towards opening a closed breaker.
+     */
+    public void testAbandonedIsNotAFailure() {
+        CircuitBreaker breaker = new CircuitBreaker("test", 1, COOL_DOWN_MILLIS);
+
+        breaker.onAbandoned();
+        assert breaker.getState() == CircuitBreaker.State.CLOSED;
+        assert breaker.tryAcquire();
+    }
+
+    /**
+     * Builds a breaker and opens it.
+     * @return the open breaker
+     */
+    private static CircuitBreaker open() {
+        CircuitBreaker breaker = new CircuitBreaker("test", 1, COOL_DOWN_MILLIS);
+        breaker.onFailure();
+        assert breaker.getState() == CircuitBreaker.State.OPEN;
+        return breaker;
+    }
+}
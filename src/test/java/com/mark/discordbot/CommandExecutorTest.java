@@ -0,0 +1,44 @@
+package com.mark.discordbot;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for {@link CommandExecutor} ordering and timeouts.
+ */
+public class CommandExecutorTest {
+
+    /**
+     * A command whose future never completes is timed out, its user is told, and the guild's next command runs.
+     */
+    public void testHungCommandReleasesGuild() throws InterruptedException {
+        CommandExecutor commands = new CommandExecutor(1, 100);
+        CountDownLatch timedOut = new CountDownLatch(1);
+        CompletableFuture<Void> next = new CompletableFuture<>();
+
+        commands.executeAsync(1, CompletableFuture::new, timedOut::countDown);
+        commands.execute(1, () -> next.complete(null), () -> { });
+
+        assert timedOut.await(2, TimeUnit.SECONDS) : "the hung command was never timed out";
+        next.orTimeout(2, TimeUnit.SECONDS).join();
+    }
+
+    /**
+     * Commands for the same guild run one after another, in the order they arrived.
+     */
+    public void testSameGuildRunsInOrder() {
+        CommandExecutor commands = new CommandExecutor(4, 5_000);
+        StringBuffer order = new StringBuffer();
+        CompletableFuture<Void> first = new CompletableFuture<>();
+        CompletableFuture<Void> last = new CompletableFuture<>();
+
+        commands.executeAsync(1, () -> first.thenRun(() -> order.append('a')), () -> { });
+        commands.execute(1, () -> order.append('b'), () -> { });
+        commands.execute(1, () -> last.complete(null), () -> { });
+
+        first.complete(null);
+        last.orTimeout(2, TimeUnit.SECONDS).join();
+        assert order.toString().equals("ab") : order;
+    }
+}
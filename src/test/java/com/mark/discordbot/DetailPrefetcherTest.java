@@ -0,0 +1,75 @@
+package com.mark.discordbot;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for {@link DetailPrefetcher} menus, run against a fake TMDb transport.
+ */
+public class DetailPrefetcherTest {
+
+    /**
+     * A details response for one movie.
+     */
+    private static final String ALIEN = "{\"id\":348,\"title\":\"Alien\",\"release_date\":\"1979-05-25\",\"runtime\":117}";
+
+    /**
+     * Two menus showing the same movie each keep their prefetch when the other is abandoned.
+     */
+    public void testAbandoningOneMenuKeepsAnothersPrefetch() {
+        TMDbTest.FakeTransport transport = new TMDbTest.FakeTransport();
+        DetailPrefetcher prefetcher = new DetailPrefetcher(new TMDb("key", null, null, TMDbTest.upstream(transport)));
+
+        prefetcher.prefetch("menu-1", 1, List.of("348"));
+        prefetcher.prefetch("menu-2", 2, List.of("348"));
+        assert transport.calls() == 1 : "both menus should share one request, not " + transport.calls();
+
+        //the first user picks another movie, which closes their menu
+        prefetcher.take("menu-1", 1, "679");
+        transport.respond(0, 200, ALIEN);
+
+        TMDb.MovieDetails details = prefetcher.take("menu-2", 2, "348").join();
+        assert details.id() == 348 && details.runtime() == 117 : details;
+        assert transport.calls() == 2 : "the second menu's prefetch should have been used, not " + transport.calls();
+    }
+
+    /**
+     * A movie picked from a menu that never prefetched it is fetched then.
+     */
+    public void testUnprefetchedPickIsFetched() {
+        TMDbTest.FakeTransport transport = new TMDbTest.FakeTransport();
+        DetailPrefetcher prefetcher = new DetailPrefetcher(new TMDb("key", null, null, TMDbTest.upstream(transport)));
+
+        prefetcher.prefetch("menu-1", 1, List.of("348"));
+        transport.respond(0, 200, ALIEN);
+
+        //another menu's prefetch is not handed out
+        prefetcher.take("menu-2", 2, "348");
+        assert transport.calls() == 2 : transport.calls() + " calls";
+    }
+
+    /**
+     * A movie picked while its prefetch is still waiting for a slot is fetched then, rather than waiting on a prefetch
+     * that the closed menu will never start.
+     */
+    public void testPickStillQueuedIsFetched() {
+        TMDbTest.FakeTransport transport = new TMDbTest.FakeTransport();
+        DetailPrefetcher prefetcher = new DetailPrefetcher(new TMDb("key", null, null, TMDbTest.upstream(transport)));
+
+        //other users' menus take every slot and never get an answer
+        for (int user = 1; user <= 8; user++) {
+            prefetcher.prefetch("menu-" + user, user, List.of(String.valueOf(user)));
+        }
+        assert transport.calls() == 8 : transport.calls() + " calls";
+
+        prefetcher.prefetch("menu-9", 9, List.of("348"));
+        assert transport.calls() == 8 : "the prefetch should have been queued, not sent";
+
+        CompletableFuture<TMDb.MovieDetails> details = prefetcher.take("menu-9", 9, "348");
+        assert transport.calls() == 9 : transport.calls() + " calls";
+        transport.respond(8, 200, ALIEN);
+
+        assert details.orTimeout(2, TimeUnit.SECONDS).join().id() == 348;
+    }
+}
@@ -0,0 +1,83 @@
+package com.mark.discordbot;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+
+/**
+ * Tests for {@link EventCalendar} merging and overlap checks.
+ */
+public class EventCalendarTest {
+
+    /**
+     * A base time for the events.
+     */
+    private static final OffsetDateTime T = OffsetDateTime.parse("2026-03-03T18:00-05:00");
+
+    /**
+     * Overlapping events merge into one block named after the earliest event.
+     */
+    public void testOverlappingEventsMerge() {
+        EventCalendar calendar = new EventCalendar(List.of(
+                event("Late", T.plusHours(1), T.plusHours(3)),
+                event("Early", T, T.plusHours(2))), 3);
+
+        assert "Early".equals(calendar.findOverlap(T.plusMinutes(150), T.plusMinutes(170)));
+        assert calendar.findOverlap(T.plusHours(4), T.plusHours(5)) == null;
+    }
+
+    /**
+     * Touching ranges count as overlapping, both when merging and when checking.
+     */
+    public void testTouchingRangesOverlap() {
+        EventCalendar calendar = new EventCalendar(List.of(
+                event("First", T, T.plusHours(1)),
+                event("Second", T.plusHours(1), T.plusHours(2))), 3);
+
+        assert "First".equals(calendar.findOverlap(T.plusMinutes(110), T.plusMinutes(115)))
+                : "touching events should form one block";
+        assert "First".equals(calendar.findOverlap(T.plusHours(2), T.plusHours(3)));
+        assert "First".equals(calendar.findOverlap(T.minusHours(1), T));
+        assert calendar.findOverlap(T.minusHours(1), T.minusMinutes(1)) == null;
+    }
+
+    /**
+     * A range that covers a whole block is still found, and separate blocks stay separate.
+     */
+    public void testSeparateBlocks() {
+        EventCalendar calendar = new EventCalendar(List.of(
+                event("Monday", T.minusDays(1), T.minusDays(1).plusHours(2)),
+                event("Tuesday", T, T.plusHours(2))), 3);
+
+        assert "Tuesday".equals(calendar.findOverlap(T.minusHours(2), T.plusHours(4)));
+        assert "Monday".equals(calendar.findOverlap(T.minusDays(1).plusHours(1), T.minusHours(12)));
+        assert calendar.findOverlap(T.minusHours(12), T.minusHours(1)) == null;
+    }
+
+    /**
+     * Events without an end time last the default duration.
+     */
+    public void testDefaultDuration() {
+        EventCalendar calendar = new EventCalendar(List.of(event("Open ended", T, null)), 3);
+
+        assert "Open ended".equals(calendar.findOverlap(T.plusMinutes(170), T.plusHours(4)));
+        assert calendar.findOverlap(T.plusMinutes(181), T.plusHours(4)) == null;
+    }
+
+    /**
+     * A calendar with no events never reports an overlap.
+     */
+    public void testEmptyCalendar() {
+        assert new EventCalendar(List.of(), 3).findOverlap(T, T.plusHours(1)) == null;
+    }
+
+    /**
+     * Builds an event.
+     * @param name the event name
+     * @param start the start time
+     * @param end the end time, or {@code null}
+     * @return the event
+     */
+    private static ScheduledEventIndex.EventInfo event(String name, OffsetDateTime start, OffsetDateTime end) {
+        return new ScheduledEventIndex.EventInfo(name.hashCode(), name, 1, start, end, null, 0);
+    }
+}
@@ -0,0 +1,80 @@
+package com.mark.discordbot;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for {@link LatencyTracker} timeouts and hedge delays.
+ */
+public class LatencyTrackerTest {
+
+    /**
+     * Until enough samples arrive the maximum timeout is used and nothing is hedged.
+     */
+    public void testDefaultsUntilEnoughSamples() {
+        LatencyTracker tracker = new LatencyTracker(1000, 5000);
+        record(tracker, 10, 100);
+
+        assert tracker.timeoutMillis() == 5000 : "timeout " + tracker.timeoutMillis();
+        assert tracker.hedgeDelayMillis() == -1 : "hedge delay " + tracker.hedgeDelayMillis();
+    }
+
+    /**
+     * The timeout is three times the p99 within the bounds, and the hedge delay is the p95.
+     */
+    public void testTimeoutAndHedgeFollowPercentiles() {
+        LatencyTracker tracker = new LatencyTracker(1000, 5000);
+        record(tracker, 32, 150);
+        assert tracker.timeoutMillis() == 1000 : "fast requests should clamp to the minimum, was " + tracker.timeoutMillis();
+        assert tracker.hedgeDelayMillis() == 150 : "hedge delay " + tracker.hedgeDelayMillis();
+
+        record(tracker, 256, 600);
+        assert tracker.timeoutMillis() == 1800 : "timeout " + tracker.timeoutMillis();
+        assert tracker.hedgeDelayMillis() == 600 : "hedge delay " + tracker.hedgeDelayMillis();
+
+        record(tracker, 256, 4000);
+        assert tracker.timeoutMillis() == 5000 : "slow requests should clamp to the maximum, was " + tracker.timeoutMillis();
+    }
+
+    /**
+     * A service that slows past the timeout still raises it, even though no request gets a response.
+     */
+    public void testTimeoutsRaiseTheTimeout() {
+        LatencyTracker tracker = new LatencyTracker(1000, 5000);
+        record(tracker, 32, 150);
+        assert tracker.timeoutMillis() == 1000;
+
+        tracker.recordTimeout(TimeUnit.MILLISECONDS.toNanos(1000));
+        assert tracker.timeoutMillis() == 2000 : "timeout " + tracker.timeoutMillis();
+        tracker.recordTimeout(TimeUnit.MILLISECONDS.toNanos(2000));
+        tracker.recordTimeout(TimeUnit.MILLISECONDS.toNanos(4000));
+        assert tracker.timeoutMillis() == 5000 : "timeout " + tracker.timeoutMillis();
+
+        //a recompute with the timed-out samples in the window keeps the timeout up
+        record(tracker, 13, 1200);
+        assert tracker.timeoutMillis() == 5000 : "timeout " + tracker.timeoutMillis();
+    }
+
+    /**
+     * The bounds must be positive and ordered.
+     */
+    public void testRejectsBadBounds() {
+        try {
+            new LatencyTracker(2000, 1000);
+            assert false : "expected an exception";
+        } catch (IllegalArgumentException expected) {
+            //expected
+        }
+    }
+
+    /**
+     * Records the same latency several times.
+     * @param tracker the tracker
+     * @param count how many samples
+     * @param millis the latency in milliseconds
+     */
+    private static void record(LatencyTracker tracker, int count, long millis) {
+        for (int i = 0; i < count; i++) {
+            tracker.record(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.mark.discordbot;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Tests for {@link MovieJournal} replay, torn records, and crashes during compaction.
+ * <p>
+ *     Run by Surefire as a plain test class: each public {@code test} method is a test, and failures are reported
+ *     through {@code assert}, which Surefire enables.
+ * </p>
+ */
+public class MovieJournalTest {
+
+    /**
+     * Changes appended to the journal are there after a reload.
+     */
+    public void testReloadReplaysAppendedRecords() throws IOException {
+        Path dir = Files.createTempDirectory("journal-test");
+        try {
+            Path file = dir.resolve("movies.json");
+            MovieJournal journal = new MovieJournal(file);
+            journal.load();
+            journal.append(List.of(add("Alien"), add("Heat"), add("Ran")));
+            journal.append(List.of(new MovieJournal.Record(MovieJournal.Op.REMOVE, 1, null)));
+            journal.append(List.of(new MovieJournal.Record(MovieJournal.Op.UPDATE, 1, movie("Ran (4K)"))));
+            journal.close();
+
+            assertTitles(new MovieJournal(file).load(), "Alien", "Ran (4K)");
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /**
+     * A record cut off mid-write is dropped and the complete records before it are kept.
+     */
+    public void testTornLastRecordIsDiscarded() throws IOException {
+        Path dir = Files.createTempDirectory("journal-test");
+        try {
+            Path file = dir.resolve("movies.json");
+            MovieJournal journal = new MovieJournal(file);
+            journal.load();
+            journal.append(List.of(add("Alien"), add("Heat")));
+            journal.close();
+
+            Path journalFile = dir.resolve("movies.json.journal");
+            Files.writeString(journalFile, "{\"op\":\"ADD\",\"index\":0,\"movie\":{\"tit",
+                    StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+            assertTitles(new MovieJournal(file).load(), "Alien", "Heat");
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /**
+     * A journal left over from before the last compaction, as after a crash between the snapshot rename and the journal
+     * reset, is not applied a second time.
+     */
+    public void testJournalFromOlderGenerationIsSkipped() throws IOException {
+        Path dir = Files.createTempDirectory("journal-test");
+        try {
+            Path file = dir.resolve("movies.json");
+            Path journalFile = dir.resolve("movies.json.journal");
+
+            MovieJournal journal = new MovieJournal(file);
+            journal.load();
+            journal.append(List.of(add("Alien"), add("Heat"), add("Ran")));
+            journal.append(List.of(new MovieJournal.Record(MovieJournal.Op.REMOVE, 0, null)));
+            byte[] staleJournal = Files.readAllBytes(journalFile);
+
+            journal.compact();
+            journal.close();
+
+            //put the pre-compaction journal back, as if the process died before truncating it
+            Files.write(journalFile, staleJournal);
+
+            assertTitles(new MovieJournal(file).load(), "Heat", "Ran");
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /**
+     * Enough appends to trigger compactions keep every record.
+     */
+    public void testRecordsSurviveCompaction() throws IOException {
+        Path dir = Files.createTempDirectory("journal-test");
+        try {
+            Path file = dir.resolve("movies.json");
+            MovieJournal journal = new MovieJournal(file);
+            journal.load();
+
+            List<String> expected = new ArrayList<>();
+            for (int i = 0; i < 120; i++) {
+                journal.append(List.of(add("Movie " + i)));
+                expected.add("Movie " + i);
+            }
+            journal.close();
+
+            assertTitles(new MovieJournal(file).load(), expected.toArray(String[]::new));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /**
+     * Loading a list that has never been written creates no files; the first change does.
+     */
+    public void testLoadingMissingListWritesNothing() throws IOException {
+        Path dir = Files.createTempDirectory("journal-test");
+        try {
+            Path file = dir.resolve("movies.json");
+            MovieJournal journal = new MovieJournal(file);
+            assert journal.load().isEmpty();
+            assert !Files.exists(file) && !Files.exists(dir.resolve("movies.json.journal")) : "nothing should be written";
+
+            journal.append(List.of(add("Alien")));
+            journal.close();
+            assertTitles(new MovieJournal(file).load(), "Alien");
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /**
+     * Loading a list whose journal is empty leaves its files alone, and changes are appended to that journal as usual.
+     */
+    public void testLoadingCleanListWritesNothing() throws IOException {
+        Path dir = Files.createTempDirectory("journal-test");
+        try {
+            Path file = dir.resolve("movies.json");
+            Path journalFile = dir.resolve("movies.json.journal");
+            MovieJournal journal = new MovieJournal(file);
+            journal.load();
+            journal.append(List.of(add("Alien")));
+            journal.close();
+
+            //replaying the record compacts it into the snapshot, leaving an empty journal
+            new MovieJournal(file).load();
+
+            FileTime old = FileTime.fromMillis(0);
+            Files.setLastModifiedTime(file, old);
+            Files.setLastModifiedTime(journalFile, old);
+
+            MovieJournal clean = new MovieJournal(file);
+            assertTitles(clean.load(), "Alien");
+            assert Files.getLastModifiedTime(file).equals(old) : "the snapshot should not be rewritten";
+            assert Files.getLastModifiedTime(journalFile).equals(old) : "the journal should not be rewritten";
+
+            clean.append(List.of(add("Heat")));
+            clean.close();
+            assert Files.getLastModifiedTime(file).equals(old) : "the change should go to the journal";
+            assertTitles(new MovieJournal(file).load(), "Alien", "Heat");
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /**
+     * Builds a movie with a title.
+     * @param title the title
+     * @return the movie
+     */
+    private static Movie movie(String title) {
+        return new Movie(title, 2000, null, 100);
+    }
+
+    /**
+     * Builds an add record.
+     * @param title the added movie's title
+     * @return the record
+     */
+    private static MovieJournal.Record add(String title) {
+        return new MovieJournal.Record(MovieJournal.Op.ADD, 0, movie(title));
+    }
+
+    /**
+     * Checks a list's titles.
+     * @param movies the list
+     * @param titles the expected titles, in order
+     */
+    private static void assertTitles(List<Movie> movies, String... titles) {
+        List<String> actual = movies.stream().map(Movie::getTitle).toList();
+        assert actual.equals(List.of(titles)) : "expected " + List.of(titles) + " but was " + actual;
+    }
+
+    /**
+     * Deletes a temporary directory and everything in it.
+     * @param dir the directory
+     * @throws IOException if a file cannot be deleted
+     */
+    static void delete(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+}
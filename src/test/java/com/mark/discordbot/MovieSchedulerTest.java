@@ -0,0 +1,209 @@
+package com.mark.discordbot;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for the actions {@link MovieScheduler#planQueue} produces.
+ * <p>
+ *     Plans start on Monday 2 March 2026 at noon in Toronto, so the first slots are Tuesday 3 March and Thursday 5 March
+ *     at 19:45 (short movies only) and Sunday 8 March at 18:30, the first slot after the switch to daylight time.
+ * </p>
+ */
+public class MovieSchedulerTest {
+
+    /**
+     * The time every plan starts from.
+     */
+    private static final ZonedDateTime NOW = ZonedDateTime.of(2026, 3, 2, 12, 0, 0, 0, ZoneId.of("America/Toronto"));
+
+    /**
+     * Tuesday's slot.
+     */
+    private static final OffsetDateTime TUESDAY = OffsetDateTime.parse("2026-03-03T19:45-05:00");
+
+    /**
+     * Thursday's slot.
+     */
+    private static final OffsetDateTime THURSDAY = OffsetDateTime.parse("2026-03-05T19:45-05:00");
+
+    /**
+     * Sunday's long movie slot, after the clocks go forward.
+     */
+    private static final OffsetDateTime SUNDAY = OffsetDateTime.parse("2026-03-08T18:30-04:00");
+
+    /**
+     * The bot's user ID, which creates the events built by {@link #event}.
+     */
+    private static final long BOT = 1;
+
+    /**
+     * The scheduler under test.
+     */
+    private final MovieScheduler scheduler = new MovieScheduler(new ScheduledEventIndex(), 4);
+
+    /**
+     * Movies without events get events in queue order, one after another.
+     */
+    public void testCreatesEventsInQueueOrder() {
+        Movie first = new Movie("Alien", 1979, null, 117);
+        Movie second = new Movie("Heat", 1995, null, 100);
+
+        List<MovieScheduler.ScheduleAction> actions = scheduler.planQueue(List.of(first, second), List.of(), BOT, NOW);
+
+        assert actions.size() == 2 : actions;
+        assertAction(actions.get(0), MovieScheduler.ActionKind.CREATE, first, TUESDAY);
+        assert actions.get(0).end().equals(TUESDAY.plusMinutes(117 + 15)) : actions.get(0);
+        assertAction(actions.get(1), MovieScheduler.ActionKind.CREATE, second, THURSDAY);
+    }
+
+    /**
+     * A movie too long for a weeknight waits for the Sunday slot that allows it.
+     */
+    public void testLongMovieWaitsForSunday() {
+        Movie movie = new Movie("Ran", 1985, null, 162);
+
+        List<MovieScheduler.ScheduleAction> actions = scheduler.planQueue(List.of(movie), List.of(), BOT, NOW);
+
+        assert actions.size() == 1 : actions;
+        assertAction(actions.getFirst(), MovieScheduler.ActionKind.CREATE, movie, SUNDAY);
+    }
+
+    /**
+     * Events that are not movie nights are worked around.
+     */
+    public void testOtherEventsBlockSlots() {
+        Movie movie = new Movie("Alien", 1979, null, 117);
+        ScheduledEventIndex.EventInfo gameNight = event(5, "Game Night", TUESDAY.minusHours(1), TUESDAY.plusHours(2));
+
+        List<MovieScheduler.ScheduleAction> actions = scheduler.planQueue(List.of(movie), List.of(gameNight), BOT, NOW);
+
+        assert actions.size() == 1 : actions;
+        assertAction(actions.getFirst(), MovieScheduler.ActionKind.CREATE, movie, THURSDAY);
+    }
+
+    /**
+     * A movie's event in the wrong slot is moved rather than recreated.
+     */
+    public void testMovesEventToItsNewSlot() {
+        Movie movie = new Movie("Alien", 1979, null, 117, 42L);
+        ScheduledEventIndex.EventInfo existing = event(42, "Movie Night - Alien", THURSDAY, THURSDAY.plusMinutes(132));
+
+        List<MovieScheduler.ScheduleAction> actions = scheduler.planQueue(List.of(movie), List.of(existing), BOT, NOW);
+
+        assert actions.size() == 1 : actions;
+        assertAction(actions.getFirst(), MovieScheduler.ActionKind.MODIFY, movie, TUESDAY);
+        assert actions.getFirst().eventId() == 42 : actions;
+    }
+
+    /**
+     * An event already in the right slot is left alone, and only linked if the movie does not know its ID yet.
+     */
+    public void testLinksMatchingEventByName() {
+        ScheduledEventIndex.EventInfo existing = event(42, "Movie Night - Alien", TUESDAY, TUESDAY.plusMinutes(132));
+
+        Movie unlinked = new Movie("Alien", 1979, null, 117);
+        List<MovieScheduler.ScheduleAction> actions =
+                scheduler.planQueue(List.of(unlinked), List.of(existing), BOT, NOW);
+        assert actions.size() == 1 : actions;
+        assertAction(actions.getFirst(), MovieScheduler.ActionKind.LINK, unlinked, TUESDAY);
+        assert actions.getFirst().eventId() == 42 : actions;
+
+        Movie linked = unlinked.withScheduledEventId(42L);
+        assert scheduler.planQueue(List.of(linked), List.of(existing), BOT, NOW).isEmpty();
+    }
+
+    /**
+     * A movie queued twice is matched by name to two events of that name, one each, rather than both to the first.
+     */
+    public void testEventsMatchedByNameAreClaimedOnce() {
+        Movie first = new Movie("Alien", 1979, null, 117);
+        Movie second = new Movie("Alien", 1979, null, 117);
+        List<ScheduledEventIndex.EventInfo> events = List.of(
+                event(42, "Movie Night - Alien", TUESDAY, TUESDAY.plusMinutes(132)),
+                event(43, "Movie Night - Alien", THURSDAY, THURSDAY.plusMinutes(132)));
+
+        List<MovieScheduler.ScheduleAction> actions = scheduler.planQueue(List.of(first, second), events, BOT, NOW);
+
+        assert actions.size() == 2 : actions;
+        assertAction(actions.get(0), MovieScheduler.ActionKind.LINK, first, TUESDAY);
+        assert actions.get(0).eventId() == 42 : actions;
+        assertAction(actions.get(1), MovieScheduler.ActionKind.LINK, second, THURSDAY);
+        assert actions.get(1).eventId() == 43 : actions;
+    }
+
+    /**
+     * Movie nights for movies no longer in the queue are deleted, and later movies move up into the freed slot.
+     */
+    public void testDeletesOrphanedEventsAndMovesLaterMoviesUp() {
+        Movie kept = new Movie("Heat", 1995, null, 100, 43L);
+        List<ScheduledEventIndex.EventInfo> events = new ArrayList<>();
+        events.add(event(42, "Movie Night - Alien", TUESDAY, TUESDAY.plusMinutes(132)));
+        events.add(event(43, "Movie Night - Heat", THURSDAY, THURSDAY.plusMinutes(115)));
+
+        List<MovieScheduler.ScheduleAction> actions = scheduler.planQueue(List.of(kept), events, BOT, NOW);
+
+        assert actions.size() == 2 : actions;
+        assertAction(actions.get(0), MovieScheduler.ActionKind.MODIFY, kept, TUESDAY);
+        assert actions.get(1).kind() == MovieScheduler.ActionKind.DELETE && actions.get(1).eventId() == 42 : actions;
+    }
+
+    /**
+     * A movie night someone else made is never deleted, even when no queued movie matches it, and its time stays busy.
+     */
+    public void testKeepsMovieNightsMadeByOthers() {
+        Movie queued = new Movie("Heat", 1995, null, 100);
+        ScheduledEventIndex.EventInfo handMade = new ScheduledEventIndex.EventInfo(42, "Movie Night - Alien", 1,
+                TUESDAY, TUESDAY.plusMinutes(132), null, 99);
+
+        List<MovieScheduler.ScheduleAction> actions = scheduler.planQueue(List.of(queued), List.of(handMade), BOT, NOW);
+
+        assert actions.size() == 1 : actions;
+        assertAction(actions.getFirst(), MovieScheduler.ActionKind.CREATE, queued, THURSDAY);
+    }
+
+    /**
+     * An event that has already started stays where it is, and the next movie is planned after it ends.
+     */
+    public void testStartedEventsStayPut() {
+        OffsetDateTime started = NOW.toOffsetDateTime().minusHours(1);
+        Movie running = new Movie("Alien", 1979, null, 117, 42L);
+        Movie next = new Movie("Heat", 1995, null, 100);
+        ScheduledEventIndex.EventInfo current = event(42, "Movie Night - Alien", started, TUESDAY.plusHours(1));
+
+        List<MovieScheduler.ScheduleAction> actions =
+                scheduler.planQueue(List.of(running, next), List.of(current), BOT, NOW);
+
+        assert actions.size() == 1 : actions;
+        assertAction(actions.getFirst(), MovieScheduler.ActionKind.CREATE, next, THURSDAY);
+    }
+
+    /**
+     * Builds an event the bot created in the movie channel.
+     * @param id the event ID
+     * @param name the event name
+     * @param start the start time
+     * @param end the end time
+     * @return the event
+     */
+    private static ScheduledEventIndex.EventInfo event(long id, String name, OffsetDateTime start, OffsetDateTime end) {
+        return new ScheduledEventIndex.EventInfo(id, name, 1, start, end, null, BOT);
+    }
+
+    /**
+     * Checks an action's kind, movie, and start.
+     * @param action the action
+     * @param kind the expected kind
+     * @param movie the expected movie
+     * @param start the expected start
+     */
+    private static void assertAction(MovieScheduler.ScheduleAction action, MovieScheduler.ActionKind kind, Movie movie,
+                                     OffsetDateTime start) {
+        assert action.kind() == kind : "expected " + kind + " but was " + action;
+        assert action.movie() == movie : "expected " + movie.getTitle() + " but was " + action;
+        assert action.start().isEqual(start) : "expected a start of " + start + " but was " + action;
+    }
+}
@@ -0,0 +1,118 @@
+package com.mark.discordbot;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Tests for {@link MovieStorage} partitions: eviction, reloading, and finding entries to change.
+ */
+public class MovieStorageTest {
+
+    /**
+     * A list dropped while its changes are still waiting to be written is read back with those changes.
+     */
+    public void testReloadAfterEvictionKeepsPendingChanges() throws IOException {
+        Path dir = Files.createTempDirectory("storage-test");
+        try {
+            MovieStorage storage = new MovieStorage(dir, 1);
+            storage.addMovie(1, movie("Alien"));
+            storage.addMovie(1, movie("Heat"));
+
+            //loading a second guild drops the first before the writer's coalescing window has passed
+            storage.getMovies(2);
+            assert storage.residentGuildCount() == 1;
+
+            assertTitles(storage.getMovies(1), "Alien", "Heat");
+        } finally {
+            MovieJournalTest.delete(dir);
+        }
+    }
+
+    /**
+     * Reading a guild that has no list yet writes nothing to disk.
+     */
+    public void testReadingEmptyGuildWritesNothing() throws IOException {
+        Path dir = Files.createTempDirectory("storage-test");
+        try {
+            MovieStorage storage = new MovieStorage(dir, 10);
+            assert storage.getMovies(7).isEmpty();
+            assert storage.searchTitles(7, "alien", 5).matches().isEmpty();
+
+            try (Stream<Path> files = Files.list(dir)) {
+                List<Path> written = files.toList();
+                assert written.isEmpty() : "wrote " + written;
+            }
+        } finally {
+            MovieJournalTest.delete(dir);
+        }
+    }
+
+    /**
+     * A movie read from an older snapshot changes its own entry, not an earlier one with the same title and year.
+     */
+    public void testStaleMovieMatchesOnlyItsOwnEntry() throws IOException {
+        Path dir = Files.createTempDirectory("storage-test");
+        try {
+            MovieStorage storage = new MovieStorage(dir, 10);
+            storage.addMovie(1, movie("Alien"));
+            storage.addMovie(1, movie("Heat"));
+            Movie second = storage.addMovie(1, movie("Alien"));
+
+            //the entry is updated after it was read, so the reference no longer matches by identity
+            assert storage.updateMovie(1, second, second.withScheduledEventId(42L));
+            assert storage.removeMovie(1, second);
+
+            List<Movie> movies = storage.getMovies(1);
+            assertTitles(movies, "Alien", "Heat");
+            assert movies.getFirst().getScheduledEventId() == null;
+
+            //already gone, and never falls back to the other entry with its title
+            assert !storage.removeMovie(1, second);
+            assert !storage.updateMovie(1, second, second.withScheduledEventId(7L));
+            assertTitles(storage.getMovies(1), "Alien", "Heat");
+        } finally {
+            MovieJournalTest.delete(dir);
+        }
+    }
+
+    /**
+     * Entry IDs survive being written to disk and read back.
+     */
+    public void testEntryIdsSurviveReload() throws IOException {
+        Path dir = Files.createTempDirectory("storage-test");
+        try {
+            MovieStorage storage = new MovieStorage(dir, 1);
+            Movie added = storage.addMovie(1, movie("Alien"));
+            assert added.getEntryId() != 0;
+
+            //loading a second guild drops the first, which is then read back from disk
+            storage.getMovies(2);
+            Movie reloaded = storage.getMovies(1).getFirst();
+            assert reloaded.getEntryId() == added.getEntryId();
+        } finally {
+            MovieJournalTest.delete(dir);
+        }
+    }
+
+    /**
+     * Builds a movie with a title.
+     * @param title the title
+     * @return the movie
+     */
+    private static Movie movie(String title) {
+        return new Movie(title, 2000, null, 100);
+    }
+
+    /**
+     * Checks a list's titles.
+     * @param movies the list
+     * @param titles the expected titles, in order
+     */
+    private static void assertTitles(List<Movie> movies, String... titles) {
+        List<String> actual = movies.stream().map(Movie::getTitle).toList();
+        assert actual.equals(List.of(titles)) : "expected " + List.of(titles) + " but was " + actual;
+    }
+}
@@ -0,0 +1,93 @@
+package com.mark.discordbot;
+
+import java.time.DayOfWeek;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+/**
+ * Tests for {@link SlotCalendar} occurrences, including across daylight saving changes.
+ */
+public class SlotCalendarTest {
+
+    /**
+     * The zone the slots are in.
+     */
+    private static final ZoneId TORONTO = ZoneId.of("America/Toronto");
+
+    /**
+     * A slot keeps its wall-clock time when the clocks go forward and back.
+     */
+    public void testSlotsKeepWallClockTimeAcrossDst() {
+        SlotCalendar calendar = calendar(LocalTime.of(18, 30), 2);
+
+        List<OffsetDateTime> spring = starts(calendar, ZonedDateTime.of(2026, 3, 1, 12, 0, 0, 0, TORONTO));
+        assert spring.equals(List.of(
+                OffsetDateTime.parse("2026-03-01T18:30-05:00"),
+                OffsetDateTime.parse("2026-03-08T18:30-04:00"))) : spring;
+
+        List<OffsetDateTime> fall = starts(calendar, ZonedDateTime.of(2026, 10, 26, 12, 0, 0, 0, TORONTO));
+        assert fall.equals(List.of(
+                OffsetDateTime.parse("2026-11-01T18:30-05:00"),
+                OffsetDateTime.parse("2026-11-08T18:30-05:00"))) : fall;
+    }
+
+    /**
+     * A time that does not exist on the day the clocks go forward moves to just after the gap.
+     */
+    public void testSpringForwardGap() {
+        SlotCalendar calendar = calendar(LocalTime.of(2, 30), 1);
+
+        List<OffsetDateTime> starts = starts(calendar, ZonedDateTime.of(2026, 3, 7, 12, 0, 0, 0, TORONTO));
+        assert starts.getFirst().equals(OffsetDateTime.parse("2026-03-08T03:30-04:00")) : starts;
+    }
+
+    /**
+     * A time that happens twice on the day the clocks go back uses the earlier offset.
+     */
+    public void testFallBackOverlap() {
+        SlotCalendar calendar = calendar(LocalTime.of(1, 30), 1);
+
+        List<OffsetDateTime> starts = starts(calendar, ZonedDateTime.of(2026, 10, 31, 12, 0, 0, 0, TORONTO));
+        assert starts.getFirst().equals(OffsetDateTime.parse("2026-11-01T01:30-04:00")) : starts;
+    }
+
+    /**
+     * Occurrences come out in order, skip slots already past, and stop at the horizon.
+     */
+    public void testOrderAndHorizon() {
+        SlotCalendar calendar = new SlotCalendar(TORONTO, List.of(
+                new SlotCalendar.WeeklySlot(DayOfWeek.THURSDAY, LocalTime.of(19, 45), false),
+                new SlotCalendar.WeeklySlot(DayOfWeek.TUESDAY, LocalTime.of(19, 45), false)), 2);
+
+        //Tuesday evening, after that day's slot
+        List<OffsetDateTime> starts = starts(calendar, ZonedDateTime.of(2026, 3, 3, 20, 0, 0, 0, TORONTO));
+        assert starts.equals(List.of(
+                OffsetDateTime.parse("2026-03-05T19:45-05:00"),
+                OffsetDateTime.parse("2026-03-10T19:45-04:00"),
+                OffsetDateTime.parse("2026-03-12T19:45-04:00"),
+                OffsetDateTime.parse("2026-03-17T19:45-04:00"))) : starts;
+    }
+
+    /**
+     * Builds a calendar with one Sunday slot.
+     * @param time the slot's time
+     * @param horizonWeeks the horizon
+     * @return the calendar
+     */
+    private static SlotCalendar calendar(LocalTime time, int horizonWeeks) {
+        return new SlotCalendar(TORONTO, List.of(new SlotCalendar.WeeklySlot(DayOfWeek.SUNDAY, time, true)), horizonWeeks);
+    }
+
+    /**
+     * Lists the start times of a calendar's upcoming occurrences.
+     * @param calendar the calendar
+     * @param from the time to search from
+     * @return the start times
+     */
+    private static List<OffsetDateTime> starts(SlotCalendar calendar, ZonedDateTime from) {
+        return calendar.upcoming(from).map(SlotCalendar.Slot::start).toList();
+    }
+}
@@ -0,0 +1,472 @@
+package com.mark.discordbot;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.SequenceInputStream;
+import java.io.Writer;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+import javax.net.ssl.SSLSession;
+
+/**
+ * Tests for {@link TMDb} request handling, run against a fake transport so that nothing leaves the process.
+ */
+public class TMDbTest {
+
+    /**
+     * A search response holding one movie.
+     */
+    private static final String ALIEN = "{\"results\":[{\"id\":348,\"title\":\"Alien\",\"release_date\":\"1979-05-25\"}]}";
+
+    /**
+     * The recent search latency the hedging tests teach the tracker, and so the hedge delay, in milliseconds.
+     */
+    private static final long HEDGE_DELAY_MS = 200;
+
+    /**
+     * Identical requests made while one is on its way share its call and its result.
+     */
+    public void testConcurrentIdenticalRequestsShareOneCall() {
+        FakeTransport transport = new FakeTransport();
+        TMDb tmdb = new TMDb("key", null, null, upstream(transport));
+
+        List<CompletableFuture<List<TMDb.SearchResult>>> waiters = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            waiters.add(tmdb.searchMovies(i % 2 == 0 ? "Alien" : " ALIEN ", null));
+        }
+        assert transport.calls() == 1 : transport.calls() + " calls";
+
+        //one caller giving up must not cancel the call the others are waiting on
+        waiters.remove(0).cancel(true);
+
+        transport.respond(0, 200, ALIEN);
+        for (CompletableFuture<List<TMDb.SearchResult>> waiter : waiters) {
+            assert waiter.join().equals(List.of(new TMDb.SearchResult(348, "Alien", 1979, null))) : waiter.join();
+        }
+        assert tmdb.getSearchRequestCount() == 1;
+
+        //once the call has finished, the next request makes its own
+        tmdb.searchMovies("Alien", null);
+        assert transport.calls() == 2 : transport.calls() + " calls";
+    }
+
+    /**
+     * A failed call fails every request that was waiting on it.
+     */
+    public void testFailureReachesEveryWaiter() {
+        FakeTransport transport = new FakeTransport();
+        TMDb tmdb = new TMDb("key", null, null, upstream(transport));
+
+        List<CompletableFuture<TMDb.MovieDetails>> waiters = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            waiters.add(tmdb.getMovieById("348"));
+        }
+        assert transport.calls() == 1 : transport.calls() + " calls";
+
+        transport.respond(0, 404, "{}");
+        for (CompletableFuture<TMDb.MovieDetails> waiter : waiters) {
+            assert failure(waiter).getKind() == TMDbException.Kind.NOT_FOUND;
+        }
+        assert transport.calls() == 1 : "a 404 should not be retried";
+    }
+
+    /**
+     * A body cut off part way is a network failure that the circuit breaker counts, not a malformed response.
+     */
+    public void testBodyCutOffCountsAsFailure() {
+        FakeTransport transport = new FakeTransport();
+        CircuitBreaker breaker = new CircuitBreaker("test", 1, 30_000);
+        TMDb tmdb = new TMDb("key", null, null, upstream(transport, breaker, new LatencyTracker(1000, 5000)));
+
+        CompletableFuture<List<TMDb.SearchResult>> result = tmdb.searchMovies("Alien", null);
+        InputStream cutOff = new SequenceInputStream(
+                new ByteArrayInputStream("{\"results\":[".getBytes(StandardCharsets.UTF_8)),
+                new InputStream() {
+                    @Override
+                    public int read() throws IOException {
+                        throw new IOException("connection reset");
+                    }
+                });
+        transport.respond(0, 200, cutOff);
+
+        TMDbException.Kind kind = failure(result).getKind();
+        assert kind == TMDbException.Kind.NETWORK || kind == TMDbException.Kind.CIRCUIT_OPEN : kind;
+        assert breaker.getState() == CircuitBreaker.State.OPEN : breaker.getState();
+    }
+
+    /**
+     * A body that stops arriving is given up on once the request timeout has passed again, as a timeout.
+     */
+    public void testStalledBodyTimesOut() {
+        FakeTransport transport = new FakeTransport();
+        CircuitBreaker breaker = new CircuitBreaker("test", 1, 30_000);
+        TMDb tmdb = new TMDb("key", null, null, upstream(transport, breaker, new LatencyTracker(100, 100)));
+
+        CompletableFuture<List<TMDb.SearchResult>> result = tmdb.searchMovies("Alien", null);
+        CountDownLatch closed = new CountDownLatch(1);
+        transport.respond(0, 200, new InputStream() {
+            @Override
+            public int read() throws IOException {
+                try {
+                    closed.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new IOException("closed");
+            }
+
+            @Override
+            public void close() {
+                closed.countDown();
+            }
+        });
+
+        TMDbException.Kind kind = failure(result.orTimeout(5, TimeUnit.SECONDS)).getKind();
+        assert kind == TMDbException.Kind.TIMEOUT || kind == TMDbException.Kind.CIRCUIT_OPEN : kind;
+        assert breaker.getState() == CircuitBreaker.State.OPEN : breaker.getState();
+    }
+
+    /**
+     * A request still unanswered at the recent p95 is sent again; the first answer wins and the other copy is
+     * cancelled. The hedge spends a credit, and later requests earn it back.
+     */
+    public void testSlowRequestIsHedged() throws InterruptedException {
+        FakeTransport transport = new FakeTransport();
+        TMDb.Upstream upstream = upstream(transport, hedgingTracker());
+        TMDb tmdb = new TMDb("key", null, null, upstream);
+
+        CompletableFuture<List<TMDb.SearchResult>> result = tmdb.searchMovies("Alien", null);
+        assert transport.calls() == 1 : "the hedge should wait for the delay";
+
+        awaitCalls(transport, 2);
+        long waited = TimeUnit.NANOSECONDS.toMillis(transport.sentAt(1) - transport.sentAt(0));
+        assert waited >= HEDGE_DELAY_MS : "hedged after " + waited + " ms";
+        assert upstream.getHedgeCredits() == 4 : "credits " + upstream.getHedgeCredits();
+
+        transport.respond(1, 200, ALIEN);
+        assert result.join().equals(List.of(new TMDb.SearchResult(348, "Alien", 1979, null))) : result.join();
+        assert transport.response(0).isCancelled() : "the slower copy should be cancelled";
+        assert upstream.getHedgeCredits() == 4 : "the cancelled copy must not earn or cost anything";
+
+        //every request earns a tenth of a hedge, up to the burst
+        for (int i = 0; i < 10; i++) {
+            tmdb.getMovieById(String.valueOf(i));
+        }
+        assert Math.abs(upstream.getHedgeCredits() - 5) < 1e-9 : "credits " + upstream.getHedgeCredits();
+    }
+
+    /**
+     * A request answered before the hedge delay is never sent twice.
+     */
+    public void testFastRequestIsNotHedged() throws InterruptedException {
+        FakeTransport transport = new FakeTransport();
+        TMDb.Upstream upstream = upstream(transport, hedgingTracker());
+        TMDb tmdb = new TMDb("key", null, null, upstream);
+
+        CompletableFuture<List<TMDb.SearchResult>> result = tmdb.searchMovies("Alien", null);
+        transport.respond(0, 200, ALIEN);
+        assert result.join().size() == 1;
+
+        Thread.sleep(HEDGE_DELAY_MS * 2);
+        assert transport.calls() == 1 : transport.calls() + " calls";
+        assert upstream.getHedgeCredits() == 5 : "credits " + upstream.getHedgeCredits();
+    }
+
+    /**
+     * A query the offline index has a hit for still goes to TMDb, which also knows movies by titles the index does not.
+     */
+    public void testOfflineHitDoesNotHideTmdbResults() throws IOException {
+        Path dir = Files.createTempDirectory("tmdb-test");
+        try {
+            FakeTransport transport = new FakeTransport();
+            TMDb tmdb = new TMDb("key", null, offlineIndex(dir), upstream(transport));
+
+            CompletableFuture<List<TMDb.SearchResult>> result = tmdb.searchMovies("The Host", null);
+            assert transport.calls() == 1 : "the search should go to TMDb";
+
+            //TMDb knows the 2006 film by its English title; the index only has its original, Korean one
+            transport.respond(0, 200, "{\"results\":["
+                    + "{\"id\":1255,\"title\":\"The Host\",\"release_date\":\"2006-07-27\"},"
+                    + "{\"id\":72710,\"title\":\"The Host\",\"release_date\":\"2013-03-22\"}]}");
+            assert result.join().equals(List.of(new TMDb.SearchResult(1255, "The Host", 2006, null),
+                    new TMDb.SearchResult(72710, "The Host", 2013, null))) : result.join();
+        } finally {
+            MovieJournalTest.delete(dir);
+        }
+    }
+
+    /**
+     * The offline index answers when TMDb fails.
+     */
+    public void testOfflineIndexAnswersWhenTmdbFails() throws IOException {
+        Path dir = Files.createTempDirectory("tmdb-test");
+        try {
+            FakeTransport transport = new FakeTransport();
+            TMDb tmdb = new TMDb("key", null, offlineIndex(dir), upstream(transport));
+
+            CompletableFuture<List<TMDb.SearchResult>> result = tmdb.searchMovies("The Host", null);
+            transport.respond(0, 401, "{}");
+            assert result.join().equals(List.of(new TMDb.SearchResult(72710, "The Host", 0, null))) : result.join();
+
+            //with nothing in the index, the failure comes through
+            CompletableFuture<List<TMDb.SearchResult>> missing = tmdb.searchMovies("Heat", null);
+            transport.respond(1, 401, "{}");
+            assert failure(missing).getKind() == TMDbException.Kind.REJECTED;
+        } finally {
+            MovieJournalTest.delete(dir);
+        }
+    }
+
+    /**
+     * The offline index answers without a request while the circuit breaker is open, but not for a search with a year.
+     */
+    public void testOfflineIndexAnswersWhileCircuitOpen() throws IOException {
+        Path dir = Files.createTempDirectory("tmdb-test");
+        try {
+            FakeTransport transport = new FakeTransport();
+            CircuitBreaker breaker = new CircuitBreaker("test", 1, 30_000);
+            breaker.onFailure();
+            TMDb tmdb = new TMDb("key", null, offlineIndex(dir),
+                    upstream(transport, breaker, new LatencyTracker(1000, 5000)));
+
+            List<TMDb.SearchResult> results = tmdb.searchMovies("the host", null).join();
+            assert results.equals(List.of(new TMDb.SearchResult(72710, "The Host", 0, null))) : results;
+            assert failure(tmdb.searchMovies("the host", 2013)).getKind() == TMDbException.Kind.CIRCUIT_OPEN;
+            assert transport.calls() == 0 : transport.calls() + " calls";
+        } finally {
+            MovieJournalTest.delete(dir);
+        }
+    }
+
+    /**
+     * Builds an upstream of its own around a transport, so that tests do not share a breaker, stats, or hedge budget.
+     * @param transport the transport
+     * @return the upstream
+     */
+    static TMDb.Upstream upstream(TMDb.Transport transport) {
+        return upstream(transport, new LatencyTracker(1000, 5000));
+    }
+
+    /**
+     * Builds an upstream of its own around a transport, with the given recent search latencies.
+     * @param transport the transport
+     * @param searchLatencies recent search latencies, which set the search hedge delay
+     * @return the upstream
+     */
+    static TMDb.Upstream upstream(TMDb.Transport transport, LatencyTracker searchLatencies) {
+        return upstream(transport, new CircuitBreaker("test", 5, 30_000), searchLatencies);
+    }
+
+    /**
+     * Builds an upstream of its own around a transport, with the given breaker and recent search latencies.
+     * @param transport the transport
+     * @param breaker the circuit breaker
+     * @param searchLatencies recent search latencies, which set the search hedge delay
+     * @return the upstream
+     */
+    static TMDb.Upstream upstream(TMDb.Transport transport, CircuitBreaker breaker, LatencyTracker searchLatencies) {
+        return new TMDb.Upstream(transport, new TokenBucket(100, 100), breaker,
+                new TMDb.EndpointStats(new LatencyHistogram("test", ""), searchLatencies),
+                new TMDb.EndpointStats(new LatencyHistogram("test", ""), new LatencyTracker(1000, 5000)));
+    }
+
+    /**
+     * Builds an offline title index from a small export. Like TMDb's, it holds original titles, so Bong Joon-ho's
+     * "The Host" is only there as "괴물".
+     * @param dir the directory to build it in
+     * @return the index
+     * @throws IOException if the index cannot be built
+     */
+    private static OfflineTitleIndex offlineIndex(Path dir) throws IOException {
+        Path export = dir.resolve("movie_ids.json.gz");
+        try (Writer out = new OutputStreamWriter(new GZIPOutputStream(Files.newOutputStream(export)), StandardCharsets.UTF_8)) {
+            out.write("{\"adult\":false,\"id\":1255,\"original_title\":\"괴물\",\"popularity\":20.5,\"video\":false}\n");
+            out.write("{\"adult\":false,\"id\":72710,\"original_title\":\"The Host\",\"popularity\":30.1,\"video\":false}\n");
+        }
+
+        Path index = dir.resolve("titles.idx");
+        TitleExportImporter.main(new String[] {export.toString(), index.toString()});
+        return new OfflineTitleIndex(index);
+    }
+
+    /**
+     * Builds a latency tracker that has seen enough searches to hedge them after {@link #HEDGE_DELAY_MS}.
+     * @return the tracker
+     */
+    private static LatencyTracker hedgingTracker() {
+        LatencyTracker tracker = new LatencyTracker(1000, 5000);
+        for (int i = 0; i < 32; i++) {
+            tracker.record(TimeUnit.MILLISECONDS.toNanos(HEDGE_DELAY_MS));
+        }
+        assert tracker.hedgeDelayMillis() == HEDGE_DELAY_MS;
+        return tracker;
+    }
+
+    /**
+     * Waits up to two seconds for a transport to have been sent a number of requests.
+     * @param transport the transport
+     * @param calls the number of requests
+     */
+    private static void awaitCalls(FakeTransport transport, int calls) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (transport.calls() < calls && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assert transport.calls() == calls : transport.calls() + " calls";
+    }
+
+    /**
+     * Waits for a future that should fail.
+     * @param future the future
+     * @return the TMDb failure it failed with
+     */
+    private static TMDbException failure(CompletableFuture<?> future) {
+        try {
+            future.join();
+        } catch (CompletionException e) {
+            assert e.getCause() instanceof TMDbException : e;
+            return (TMDbException) e.getCause();
+        }
+        throw new AssertionError("expected a failure");
+    }
+
+    /**
+     * Transport that records each request and leaves its response for the test to give.
+     */
+    static final class FakeTransport implements TMDb.Transport {
+
+        /**
+         * The responses not yet given, in the order the requests arrived.
+         */
+        private final List<CompletableFuture<HttpResponse<InputStream>>> responses = new CopyOnWriteArrayList<>();
+
+        /**
+         * When each request arrived, from {@link System#nanoTime()}.
+         */
+        private final List<Long> sentAt = new CopyOnWriteArrayList<>();
+
+        @Override
+        public CompletableFuture<HttpResponse<InputStream>> send(HttpRequest request) {
+            CompletableFuture<HttpResponse<InputStream>> response = new CompletableFuture<>();
+            sentAt.add(System.nanoTime());
+            responses.add(response);
+            return response;
+        }
+
+        /**
+         * Returns how many requests have been sent.
+         * @return the request count
+         */
+        int calls() {
+            return responses.size();
+        }
+
+        /**
+         * Returns the response to a request, for the test to complete or inspect.
+         * @param call the zero-based request number
+         * @return the response future
+         */
+        CompletableFuture<HttpResponse<InputStream>> response(int call) {
+            return responses.get(call);
+        }
+
+        /**
+         * Returns when a request arrived.
+         * @param call the zero-based request number
+         * @return the time, from {@link System#nanoTime()}
+         */
+        long sentAt(int call) {
+            return sentAt.get(call);
+        }
+
+        /**
+         * Answers a request.
+         * @param call the zero-based request number
+         * @param status the HTTP status
+         * @param body the response body
+         */
+        void respond(int call, int status, String body) {
+            responses.get(call).complete(new FakeResponse(status, body));
+        }
+
+        /**
+         * Answers a request with a body given as a stream.
+         * @param call the zero-based request number
+         * @param status the HTTP status
+         * @param body the response body
+         */
+        void respond(int call, int status, InputStream body) {
+            responses.get(call).complete(new FakeResponse(status, body));
+        }
+    }
+
+    /**
+     * A response with a status and a body, and nothing else.
+     * @param status the HTTP status
+     * @param body the response body
+     */
+    private record FakeResponse(int status, InputStream body) implements HttpResponse<InputStream> {
+
+        /**
+         * A response whose body is the given text.
+         * @param status the HTTP status
+         * @param text the response body
+         */
+        FakeResponse(int status, String text) {
+            this(status, new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)));
+        }
+
+        @Override
+        public int statusCode() {
+            return status;
+        }
+
+        @Override
+        public HttpRequest request() {
+            return HttpRequest.newBuilder(uri()).build();
+        }
+
+        @Override
+        public Optional<HttpResponse<InputStream>> previousResponse() {
+            return Optional.empty();
+        }
+
+        @Override
+        public HttpHeaders headers() {
+            return HttpHeaders.of(Map.of(), (name, value) -> true);
+        }
+
+        @Override
+        public Optional<SSLSession> sslSession() {
+            return Optional.empty();
+        }
+
+        @Override
+        public URI uri() {
+            return URI.create("https://api.themoviedb.org/3");
+        }
+
+        @Override
+        public HttpClient.Version version() {
+            return HttpClient.Version.HTTP_2;
+        }
+    }
+}
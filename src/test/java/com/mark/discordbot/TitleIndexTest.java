@@ -0,0 +1,85 @@
+package com.mark.discordbot;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for {@link TitleIndex} ranking and updates.
+ */
+public class TitleIndexTest {
+
+    /**
+     * An exact title ranks first, then titles containing the query; unrelated titles are left out.
+     */
+    public void testExactThenContainingThenOthers() {
+        Movie alien = movie("Alien");
+        Movie aliens = movie("Aliens");
+        Movie romulus = movie("Alien: Romulus");
+        Movie heat = movie("Heat");
+        TitleIndex index = new TitleIndex(List.of(romulus, heat, aliens, alien));
+
+        List<TitleIndex.Match> matches = index.search("alien", 10);
+
+        assert matches.getFirst().movie() == alien && matches.getFirst().exact() : matches;
+        assert titles(matches).subList(1, 3).containsAll(List.of("Aliens", "Alien: Romulus")) : matches;
+        assert matches.stream().skip(1).allMatch(TitleIndex.Match::contains) : matches;
+        assert !titles(matches).contains("Heat") : matches;
+    }
+
+    /**
+     * Typos, case, and accents still find the title.
+     */
+    public void testToleratesTyposAndAccents() {
+        TitleIndex index = new TitleIndex(List.of(movie("Amélie"), movie("Alien"), movie("Heat")));
+
+        assert titles(index.search("alein", 5)).getFirst().equals("Alien") : index.search("alein", 5);
+        assert titles(index.search("AMELIE", 5)).getFirst().equals("Amélie") : index.search("AMELIE", 5);
+    }
+
+    /**
+     * Added, removed, and replaced movies are reflected in searches.
+     */
+    public void testUpdates() {
+        Movie alien = movie("Alien");
+        TitleIndex index = new TitleIndex(new ArrayList<>(List.of(alien)));
+
+        Movie heat = movie("Heat");
+        index.add(heat);
+        assert titles(index.search("heat", 5)).equals(List.of("Heat"));
+
+        index.remove(heat);
+        assert index.search("heat", 5).isEmpty();
+
+        Movie renamed = movie("Alien (Director's Cut)");
+        index.replace(alien, renamed);
+        assert index.search("alien", 5).getFirst().movie() == renamed;
+    }
+
+    /**
+     * The limit caps the number of matches, and an empty query matches nothing.
+     */
+    public void testLimitAndEmptyQuery() {
+        TitleIndex index = new TitleIndex(List.of(movie("Alien"), movie("Aliens"), movie("Alien 3")));
+
+        assert index.search("alien", 2).size() == 2;
+        assert index.search("  !! ", 5).isEmpty();
+    }
+
+    /**
+     * Builds a movie with a title.
+     * @param title the title
+     * @return the movie
+     */
+    private static Movie movie(String title) {
+        return new Movie(title, 2000, null, 100);
+    }
+
+    /**
+     * Lists the titles of some matches.
+     * @param matches the matches
+     * @return their titles, in order
+     */
+    private static List<String> titles(List<TitleIndex.Match> matches) {
+        return matches.stream().map(m -> m.movie().getTitle()).toList();
+    }
+}
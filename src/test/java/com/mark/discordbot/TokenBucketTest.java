@@ -0,0 +1,51 @@
+package com.mark.discordbot;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for {@link TokenBucket} reservations.
+ */
+public class TokenBucketTest {
+
+    /**
+     * A full bucket lets a burst of its capacity straight through, then makes callers wait or turns them away.
+     */
+    public void testBurstThenWait() {
+        TokenBucket bucket = new TokenBucket(2, 10);
+
+        assert bucket.reserve(0) == 0;
+        assert bucket.reserve(0) == 0;
+        assert bucket.reserve(0) == -1 : "an empty bucket should refuse a caller that will not wait";
+
+        long wait = bucket.reserve(TimeUnit.SECONDS.toNanos(1));
+        assert wait > 0 && wait <= TimeUnit.MILLISECONDS.toNanos(100) : "wait " + wait;
+
+        //the next token is queued behind the one just reserved
+        long next = bucket.reserve(TimeUnit.SECONDS.toNanos(1));
+        assert next > wait : "wait " + next + " after " + wait;
+    }
+
+    /**
+     * A paused bucket hands out no usable token until the pause ends.
+     */
+    public void testPause() {
+        TokenBucket bucket = new TokenBucket(5, 10);
+        bucket.pause(TimeUnit.SECONDS.toNanos(2));
+
+        assert bucket.reserve(TimeUnit.SECONDS.toNanos(1)) == -1;
+        long wait = bucket.reserve(TimeUnit.SECONDS.toNanos(3));
+        assert wait > TimeUnit.SECONDS.toNanos(1) : "wait " + wait;
+    }
+
+    /**
+     * The capacity and rate must be positive.
+     */
+    public void testRejectsBadSettings() {
+        try {
+            new TokenBucket(0, 10);
+            assert false : "expected an exception";
+        } catch (IllegalArgumentException expected) {
+            //expected
+        }
+    }
+}